@@ -0,0 +1,603 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sun.tools.jconsole;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+//
+// Plotter storage benchmark:
+//
+// Compares three stores of the Plotter samples, time stamps and one
+// sequence of values, on a series of heap usage like values:
+//
+// - legacy: the baseline, time stamps split into offsets and int times,
+//   found by a scan of the offsets, and values in a primitive array
+//   widened and read through java.lang.reflect.Array.
+// - primitive: reflection-free columns in the narrowest primitive array,
+//   with time stamps as int offsets from a single base time.
+// - compressed: the current SampleColumns, chunks of values delta encoded
+//   and chunks of time stamps packed in a fixed number of bits.
+//
+// The operations are
+//
+// - append: stores the series, one sample at a time.
+// - scan: reads all the samples in order, as a paint of the full range.
+// - time: reads 1024 time stamps at random indices.
+// - find: looks up the index of 1024 time stamps, as a paint of a range.
+//
+// JMH is only on the classpath of the jmh profile. Run with
+//   mvn -Pjmh test-compile exec:java -Dexec.classpathScope=test
+//       -Dexec.mainClass=sun.tools.jconsole.PlotterStorageBenchmark
+//
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlotterStorageBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    @Param({ "1000000" })
+    int points;
+
+    // The series, heap usage like values sampled every second
+    private long[] times;
+    private long[] values;
+    private int[] indices;
+    private long[] targets;
+
+    private LegacyTimeStamps legacyTimes;
+    private LegacySequence legacyValues;
+    private PrimitiveTimeStamps primitiveTimes;
+    private PrimitiveColumn primitiveValues;
+    private SampleColumn.View compressedTimes;
+    private SampleColumn.View compressedValues;
+
+    private long[] buffer;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        times = new long[points];
+        values = new long[points];
+        long t = 1300000000000L;
+        long v = 64L << 20;
+        for (int i = 0; i < points; i++) {
+            t += 1000 + random.nextInt(20);
+            v = Math.max(v + random.nextInt(1 << 20) - (1 << 19), 0);
+            if (random.nextInt(1000) == 0) {
+                // A garbage collection
+                v /= 4;
+            }
+            times[i] = t;
+            values[i] = v;
+        }
+        indices = new int[LOOKUPS];
+        targets = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            indices[i] = random.nextInt(points);
+            targets[i] = times[random.nextInt(points)];
+        }
+        legacyTimes = new LegacyTimeStamps(points);
+        legacyValues = new LegacySequence(points);
+        primitiveTimes = new PrimitiveTimeStamps(points);
+        primitiveValues = new PrimitiveColumn(points);
+        SampleColumn ct = new SampleColumn(points, true);
+        SampleColumn cv = new SampleColumn(points, false);
+        for (int i = 0; i < points; i++) {
+            legacyTimes.add(times[i]);
+            legacyValues.add(values[i]);
+            primitiveTimes.add(times[i]);
+            primitiveValues.add(values[i]);
+            ct.add(times[i]);
+            cv.add(values[i]);
+        }
+        compressedTimes = ct.view();
+        compressedValues = cv.view();
+        buffer = new long[points];
+    }
+
+    @Benchmark
+    public Object appendLegacy() {
+        LegacyTimeStamps ts = new LegacyTimeStamps(points);
+        LegacySequence seq = new LegacySequence(points);
+        for (int i = 0; i < points; i++) {
+            ts.add(times[i]);
+            seq.add(values[i]);
+        }
+        return seq;
+    }
+
+    @Benchmark
+    public Object appendPrimitive() {
+        PrimitiveTimeStamps ts = new PrimitiveTimeStamps(points);
+        PrimitiveColumn seq = new PrimitiveColumn(points);
+        for (int i = 0; i < points; i++) {
+            ts.add(times[i]);
+            seq.add(values[i]);
+        }
+        return seq;
+    }
+
+    @Benchmark
+    public Object appendCompressed() {
+        SampleColumn ts = new SampleColumn(points, true);
+        SampleColumn seq = new SampleColumn(points, false);
+        for (int i = 0; i < points; i++) {
+            ts.add(times[i]);
+            seq.add(values[i]);
+        }
+        return seq.view();
+    }
+
+    @Benchmark
+    public long scanLegacy() {
+        long sum = 0;
+        for (int i = 0; i < legacyTimes.size; i++) {
+            sum += legacyTimes.time(i) ^ legacyValues.value(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long scanPrimitive() {
+        int n = primitiveTimes.size();
+        primitiveTimes.get(0, n, buffer, 0);
+        long sum = sum(buffer, n);
+        primitiveValues.get(0, n, buffer, 0);
+        return sum ^ sum(buffer, n);
+    }
+
+    @Benchmark
+    public long scanCompressed() {
+        int n = compressedTimes.size();
+        compressedTimes.get(0, n, buffer, 0);
+        long sum = sum(buffer, n);
+        compressedValues.get(0, n, buffer, 0);
+        return sum ^ sum(buffer, n);
+    }
+
+    private static long sum(long[] a, int n) {
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += a[i];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long timeLegacy() {
+        long sum = 0;
+        for (int i : indices) {
+            sum += legacyTimes.time(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long timePrimitive() {
+        long sum = 0;
+        for (int i : indices) {
+            sum += primitiveTimes.time(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long timeCompressed() {
+        long sum = 0;
+        for (int i : indices) {
+            sum += compressedTimes.get(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long findLegacy() {
+        long sum = 0;
+        for (long target : targets) {
+            int lo = 0;
+            int hi = legacyTimes.size - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (legacyTimes.time(mid) < target) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            sum += lo;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long findPrimitive() {
+        long sum = 0;
+        for (long target : targets) {
+            int lo = 0;
+            int hi = primitiveTimes.size() - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (primitiveTimes.time(mid) < target) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            sum += lo;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long findCompressed() {
+        long sum = 0;
+        for (long target : targets) {
+            sum += compressedTimes.find(target);
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(PlotterStorageBenchmark.class.getSimpleName())
+            .build();
+        new Runner(options).run();
+    }
+
+    // The baseline storage, with the capacity as a parameter and without
+    // the random initial length of the values.
+
+    private static Object extendArray(Object a1, int capacity) {
+        int n = Array.getLength(a1);
+        Object a2 =
+            Array.newInstance(a1.getClass().getComponentType(),
+                              Math.min(n + Plotter.ARRAY_SIZE_INCREMENT, capacity));
+        System.arraycopy(a1, 0, a2, 0, n);
+        return a2;
+    }
+
+    private static int ringIndex(int start, int i, int length) {
+        int j = start + i;
+        return (j >= length) ? j - length : j;
+    }
+
+    private static class LegacyTimeStamps {
+        final int capacity;
+        long[] offsets = new long[0];
+        long[] indices = new long[0];
+        int[] rtimes = new int[Plotter.ARRAY_SIZE_INCREMENT];
+        int start = 0;
+        long first = 0;
+        int size = 0;
+
+        LegacyTimeStamps(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public long time(int i) {
+            long n = first + i;
+            long offset = 0;
+            for (int j = indices.length - 1; j >= 0; j--) {
+                if (n >= indices[j]) {
+                    offset = offsets[j];
+                    break;
+                }
+            }
+            return offset + rtimes[ringIndex(start, i, rtimes.length)];
+        }
+
+        public void add(long time) {
+            int n = offsets.length;
+            if (n == 0 || time - offsets[n - 1] > Integer.MAX_VALUE) {
+                offsets = Arrays.copyOf(offsets, n + 1);
+                offsets[n] = time;
+                indices = Arrays.copyOf(indices, n + 1);
+                indices[n] = first + size;
+            }
+            if (size == capacity) {
+                start = ringIndex(start, 1, rtimes.length);
+                first++;
+                size--;
+                if (indices.length > 1 && indices[1] <= first) {
+                    offsets = Arrays.copyOfRange(offsets, 1, offsets.length);
+                    indices = Arrays.copyOfRange(indices, 1, indices.length);
+                }
+            } else if (rtimes.length == size) {
+                rtimes = (int[])extendArray(rtimes, capacity);
+            }
+            rtimes[ringIndex(start, size, rtimes.length)] =
+                (int)(time - offsets[offsets.length - 1]);
+            size++;
+        }
+    }
+
+    private static class LegacySequence {
+        final int capacity;
+        Object values;
+        int start = 0;
+        int size = 0;
+
+        LegacySequence(int capacity) {
+            this.capacity = capacity;
+            values = new byte[Math.min(Plotter.ARRAY_SIZE_INCREMENT, capacity)];
+        }
+
+        public long value(int i) {
+            return Array.getLong(values, ringIndex(start, i, Array.getLength(values)));
+        }
+
+        public void add(long value) {
+            int length = Array.getLength(values);
+            if ((values instanceof byte[] ||
+                 values instanceof short[] ||
+                 values instanceof int[]) &&
+                       value > Integer.MAX_VALUE) {
+                long[] la = new long[length];
+                for (int i = 0; i < length; i++) {
+                    la[i] = Array.getLong(values, i);
+                }
+                values = la;
+            } else if ((values instanceof byte[] ||
+                        values instanceof short[]) &&
+                       value > Short.MAX_VALUE) {
+                int[] ia = new int[length];
+                for (int i = 0; i < length; i++) {
+                    ia[i] = Array.getInt(values, i);
+                }
+                values = ia;
+            } else if (values instanceof byte[] &&
+                       value > Byte.MAX_VALUE) {
+                short[] sa = new short[length];
+                for (int i = 0; i < length; i++) {
+                    sa[i] = Array.getShort(values, i);
+                }
+                values = sa;
+            }
+            if (size == capacity) {
+                start = ringIndex(start, 1, length);
+                size--;
+            } else if (length == size) {
+                values = extendArray(values, capacity);
+            }
+            int i = ringIndex(start, size, Array.getLength(values));
+            if (values instanceof long[]) {
+                ((long[])values)[i] = value;
+            } else if (values instanceof int[]) {
+                ((int[])values)[i] = (int)value;
+            } else if (values instanceof short[]) {
+                ((short[])values)[i] = (short)value;
+            } else {
+                ((byte[])values)[i] = (byte)value;
+            }
+            size++;
+        }
+    }
+
+    // The reflection-free storage that replaced the baseline, with the
+    // capacity as a parameter.
+
+    private static class PrimitiveColumn {
+        final int capacity;
+        byte[] bytes;
+        short[] shorts;
+        int[] ints;
+        long[] longs;
+        int width = 1;
+        int length;
+        int start = 0;
+        int size = 0;
+
+        PrimitiveColumn(int capacity) {
+            this.capacity = capacity;
+            this.length = Math.min(Plotter.ARRAY_SIZE_INCREMENT, capacity);
+            bytes = new byte[length];
+        }
+
+        public long get(int i) {
+            int j = ringIndex(start, i, length);
+            switch (width) {
+                case 1:
+                    byte b = bytes[j];
+                    return (b == Byte.MIN_VALUE) ? Long.MIN_VALUE : b;
+                case 2:
+                    short s = shorts[j];
+                    return (s == Short.MIN_VALUE) ? Long.MIN_VALUE : s;
+                case 4:
+                    int n = ints[j];
+                    return (n == Integer.MIN_VALUE) ? Long.MIN_VALUE : n;
+                default:
+                    return longs[j];
+            }
+        }
+
+        public void get(int from, int to, long[] dst, int off) {
+            int n = to - from;
+            int j = ringIndex(start, from, length);
+            int n1 = Math.min(n, length - j);
+            copy(j, dst, off, n1);
+            copy(0, dst, off + n1, n - n1);
+        }
+
+        private void copy(int j, long[] dst, int off, int n) {
+            switch (width) {
+                case 1:
+                    for (int k = 0; k < n; k++) {
+                        byte b = bytes[j + k];
+                        dst[off + k] = (b == Byte.MIN_VALUE) ? Long.MIN_VALUE : b;
+                    }
+                    break;
+                case 2:
+                    for (int k = 0; k < n; k++) {
+                        short s = shorts[j + k];
+                        dst[off + k] = (s == Short.MIN_VALUE) ? Long.MIN_VALUE : s;
+                    }
+                    break;
+                case 4:
+                    for (int k = 0; k < n; k++) {
+                        int v = ints[j + k];
+                        dst[off + k] = (v == Integer.MIN_VALUE) ? Long.MIN_VALUE : v;
+                    }
+                    break;
+                default:
+                    System.arraycopy(longs, j, dst, off, n);
+            }
+        }
+
+        public void add(long value) {
+            int w = widthOf(value);
+            if (w > width) {
+                convert(w, length);
+            }
+            if (size == capacity) {
+                start = ringIndex(start, 1, length);
+                size--;
+            } else if (size == length) {
+                convert(width, Math.min(length + Plotter.ARRAY_SIZE_INCREMENT, capacity));
+            }
+            set(ringIndex(start, size, length), value);
+            size++;
+        }
+
+        public void shift(long d) {
+            for (int i = 0; i < size; i++) {
+                int j = ringIndex(start, i, length);
+                long value = get(i) - d;
+                int w = widthOf(value);
+                if (w > width) {
+                    convert(w, length);
+                }
+                set(j, value);
+            }
+        }
+
+        static int widthOf(long value) {
+            if (value == Long.MIN_VALUE ||
+                (value > Byte.MIN_VALUE && value <= Byte.MAX_VALUE)) {
+                return 1;
+            } else if (value > Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                return 2;
+            } else if (value > Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return 4;
+            } else {
+                return 8;
+            }
+        }
+
+        private void set(int j, long value) {
+            switch (width) {
+                case 1:
+                    bytes[j] = (value == Long.MIN_VALUE) ? Byte.MIN_VALUE : (byte)value;
+                    break;
+                case 2:
+                    shorts[j] = (value == Long.MIN_VALUE) ? Short.MIN_VALUE : (short)value;
+                    break;
+                case 4:
+                    ints[j] = (value == Long.MIN_VALUE) ? Integer.MIN_VALUE : (int)value;
+                    break;
+                default:
+                    longs[j] = value;
+            }
+        }
+
+        private void convert(int newWidth, int newLength) {
+            long[] old = new long[length];
+            copy(0, old, 0, length);
+            bytes = null;
+            shorts = null;
+            ints = null;
+            longs = null;
+            switch (newWidth) {
+                case 1: bytes = new byte[newLength]; break;
+                case 2: shorts = new short[newLength]; break;
+                case 4: ints = new int[newLength]; break;
+                default: longs = new long[newLength];
+            }
+            width = newWidth;
+            length = newLength;
+            for (int j = 0; j < old.length; j++) {
+                set(j, old[j]);
+            }
+        }
+    }
+
+    private static class PrimitiveTimeStamps {
+        long base = 0;
+        final PrimitiveColumn rtimes;
+
+        PrimitiveTimeStamps(int capacity) {
+            rtimes = new PrimitiveColumn(capacity);
+        }
+
+        public int size() {
+            return rtimes.size;
+        }
+
+        public long time(int i) {
+            return base + rtimes.get(i);
+        }
+
+        public void get(int from, int to, long[] dst, int off) {
+            rtimes.get(from, to, dst, off);
+            for (int k = off; k < off + to - from; k++) {
+                dst[k] += base;
+            }
+        }
+
+        public void add(long time) {
+            if (rtimes.size == 0) {
+                base = time;
+            } else if (PrimitiveColumn.widthOf(time - base) > 4) {
+                long newBase = time(0);
+                rtimes.shift(newBase - base);
+                base = newBase;
+            }
+            rtimes.add(time - base);
+        }
+    }
+}
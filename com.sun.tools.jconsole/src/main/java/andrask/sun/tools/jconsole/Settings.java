@@ -68,4 +68,30 @@ public class Settings {
 
 	public static final String KEY_MBEANS_VIEW_WIDTH = "myjconsole.mbeansview.width"; 
 	public static final String KEY_THREADS_PLOT_SPLITTERPOSITION = "myjconsole.threadsview.splitterposition"; 
+	/** Update interval of hidden tabs and iconified windows in ms, 0 updates them at the full rate */
+	public static final String KEY_BACKGROUND_UPDATE_INTERVAL = "myjconsole.background.updateinterval";
+	public static final String KEY_SCHEDULER_THREADS = "myjconsole.scheduler.threads";
+	public static final String KEY_SCHEDULER_VIRTUAL_THREADS = "myjconsole.scheduler.virtualthreads";
+	/** Maximum number of update tasks of one connection running at once */
+	public static final String KEY_SCHEDULER_LANE_TASKS = "myjconsole.scheduler.lanetasks";
+	/** Maximum number of MBeans whose attribute values are cached per connection */
+	public static final String KEY_SNAPSHOT_MAX_SIZE = "myjconsole.snapshot.maxsize";
+	/** Number of background reconnect attempts after a connection is lost, 0 asks the user right away */
+	public static final String KEY_RECONNECT_ATTEMPTS = "myjconsole.reconnect.attempts";
+	/** Size limit of the on-disk MBeanInfo cache in KB, 0 disables it */
+	public static final String KEY_MBEANINFO_CACHE_SIZE = "myjconsole.mbeaninfocache.maxsize";
+	/** Maximum number of MBeanInfo requests in flight per connection */
+	public static final String KEY_PREFETCH_IN_FLIGHT = "myjconsole.prefetch.inflight";
+	/** Number of raw samples kept per chart, older samples are kept as per minute and per hour min/max/avg */
+	public static final String KEY_PLOTTER_SAMPLES = "myjconsole.plotter.samples";
+	/** Number of segments of 65536 samples kept on disk per chart, 0 disables the plot history */
+	public static final String KEY_PLOTTER_HISTORY_SEGMENTS = "myjconsole.plotter.history.segments";
+	/** Maximum number of times per second the charts are repainted as new samples arrive */
+	public static final String KEY_PLOTTER_FPS = "myjconsole.plotter.fps";
+	/** Regular expression of the pool of a thread in its name, its first group if it has one; threads are pooled by name without trailing numbers by default */
+	public static final String KEY_THREAD_POOL_PATTERN = "myjconsole.threads.poolpattern";
+	/** Default interval between the thread dumps of the sampling profiler in ms */
+	public static final String KEY_PROFILER_INTERVAL = "myjconsole.profiler.interval";
+	/** Number of frames the sampling profiler reads per stack */
+	public static final String KEY_PROFILER_DEPTH = "myjconsole.profiler.depth";
 }
@@ -170,6 +170,12 @@ class ClassTab extends Tab implements ActionListener {
 
         if (!plotterListening) {
             proxyClient.addWeakPropertyChangeListener(loadedClassesMeter.plotter);
+            workerAdd(new Runnable() {
+                public void run() {
+                    loadedClassesMeter.plotter.setHistory(
+                        vmPanel.getPlotHistory(), "classes");
+                }
+            });
             plotterListening = true;
         }
 
@@ -181,12 +187,12 @@ class ClassTab extends Tab implements ActionListener {
 
             public Boolean doInBackground() {
                 try {
-                    ClassLoadingMXBean classLoadingMBean = proxyClient.getClassLoadingMXBean();
+                    PlatformSnapshot snapshot = proxyClient.getPlatformSnapshot();
 
-                    clCount = classLoadingMBean.getLoadedClassCount();
-                    cuCount = classLoadingMBean.getUnloadedClassCount();
-                    ctCount = classLoadingMBean.getTotalLoadedClassCount();
-                    isVerbose = classLoadingMBean.isVerbose();
+                    clCount = snapshot.getLoadedClassCount();
+                    cuCount = snapshot.getUnloadedClassCount();
+                    ctCount = snapshot.getTotalLoadedClassCount();
+                    isVerbose = snapshot.isClassLoadingVerbose();
                     detailsStr = formatDetails();
                     timeStamp = System.currentTimeMillis();
 
@@ -237,6 +243,13 @@ class ClassTab extends Tab implements ActionListener {
     }
 
 
+    @Override
+    List<Plotter> getPlotters() {
+        List<Plotter> plotters = super.getPlotters();
+        plotters.add(0, loadedClassesMeter.plotter);
+        return plotters;
+    }
+
     OverviewPanel[] getOverviewPanels() {
         if (overviewPanel == null) {
             overviewPanel = new ClassOverviewPanel();
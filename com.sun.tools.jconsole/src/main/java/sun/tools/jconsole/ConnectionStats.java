@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sun.tools.jconsole;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.management.*;
+
+//
+// Connection statistics:
+//
+// Round-trip statistics of the MBeanServerConnection of a ProxyClient.
+// The connection is wrapped in a timing proxy that records, for every
+// operation type (getAttributes, invoke, queryNames, ...) and for every
+// ObjectName involved, the number of calls and failures, a latency
+// histogram and an estimate of the payload size.
+//
+// Only the calls that reach the wrapped connection are recorded: values
+// answered from the snapshot cache cost nothing and are not counted.
+//
+// The payload size is estimated by serializing the arguments and the
+// result of one call out of PAYLOAD_SAMPLING, as this costs about as much
+// as the serialization done by the connector itself. The serialization is
+// done by a single low priority thread shared by all the connections, not
+// by the caller, and a sample is dropped when PAYLOAD_QUEUE samples are
+// already waiting.
+//
+public class ConnectionStats {
+
+    // Upper bounds of the latency histogram buckets, in microseconds.
+    // The last bucket has no upper bound.
+    static final long[] BUCKET_BOUNDS = {
+        250, 500, 1000, 2000, 4000, 8000, 16000, 32000, 64000, 128000,
+        256000, 512000, 1024000, 2048000, 4096000, 8192000
+    };
+
+    private static final int PAYLOAD_SAMPLING = 64;
+    private static final int PAYLOAD_QUEUE = 16;
+
+    private static final ThreadPoolExecutor payloadSizer;
+    static {
+        payloadSizer = new ThreadPoolExecutor(
+            1, 1, 5, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(PAYLOAD_QUEUE),
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ConnectionStats-payload");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            },
+            new ThreadPoolExecutor.DiscardPolicy());
+        payloadSizer.allowCoreThreadTimeOut(true);
+    }
+
+    // Bound on the number of ObjectNames tracked individually, the calls
+    // on any further ObjectName are recorded under OTHER_NAMES.
+    private static final int MAX_NAMES = 5000;
+    static final String OTHER_NAMES = "(other)";
+
+    private final ConcurrentMap<String, Stat> byOperation =
+        new ConcurrentHashMap<String, Stat>();
+    private final ConcurrentMap<String, Stat> byName =
+        new ConcurrentHashMap<String, Stat>();
+    private volatile long since = System.currentTimeMillis();
+
+    /**
+     * Statistics of one operation type or ObjectName.
+     */
+    public static class Stat {
+        private final String name;
+        private long calls;
+        private long errors;
+        private long totalNanos;
+        private long maxNanos;
+        private long payloadSamples;
+        private long payloadBytes;
+        private final long[] buckets = new long[BUCKET_BOUNDS.length + 1];
+
+        Stat(String name) {
+            this.name = name;
+        }
+
+        private Stat(Stat s) {
+            synchronized (s) {
+                name = s.name;
+                calls = s.calls;
+                errors = s.errors;
+                totalNanos = s.totalNanos;
+                maxNanos = s.maxNanos;
+                payloadSamples = s.payloadSamples;
+                payloadBytes = s.payloadBytes;
+                System.arraycopy(s.buckets, 0, buckets, 0, buckets.length);
+            }
+        }
+
+        synchronized void record(long nanos, boolean failed) {
+            calls++;
+            if (failed) {
+                errors++;
+            }
+            totalNanos += nanos;
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+            long micros = nanos / 1000;
+            int i = 0;
+            while (i < BUCKET_BOUNDS.length && micros >= BUCKET_BOUNDS[i]) {
+                i++;
+            }
+            buckets[i]++;
+        }
+
+        synchronized void recordPayload(long bytes) {
+            payloadSamples++;
+            payloadBytes += bytes;
+        }
+
+        synchronized boolean samplePayload() {
+            return calls % PAYLOAD_SAMPLING == 0;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getTotalMillis() {
+            return totalNanos / 1e6;
+        }
+
+        public double getAverageMillis() {
+            return (calls > 0) ? totalNanos / 1e6 / calls : 0.0;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        /**
+         * Returns the upper bound, in milliseconds, of the histogram bucket
+         * holding the given percentile, or the maximum for the last bucket.
+         */
+        public double getPercentileMillis(double percentile) {
+            long threshold = (long) Math.ceil(calls * percentile / 100.0);
+            long count = 0;
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                count += buckets[i];
+                if (count >= threshold && count > 0) {
+                    return Math.min(BUCKET_BOUNDS[i] / 1000.0, getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+
+        /**
+         * Returns the average payload size of the sampled calls, in bytes,
+         * or -1 if no call has been sampled.
+         */
+        public long getAveragePayload() {
+            return (payloadSamples > 0) ? payloadBytes / payloadSamples : -1L;
+        }
+
+        public long[] getHistogram() {
+            return buckets.clone();
+        }
+    }
+
+    /**
+     * Wraps a connection so that the calls made through it are recorded.
+     */
+    MBeanServerConnection wrap(final MBeanServerConnection conn) {
+        return (MBeanServerConnection) Proxy.newProxyInstance(
+            ConnectionStats.class.getClassLoader(),
+            new Class<?>[] {MBeanServerConnection.class},
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                        throws Throwable {
+                    return timedInvoke(conn, method, args);
+                }
+            });
+    }
+
+    private Object timedInvoke(MBeanServerConnection conn, Method method,
+                               Object[] args) throws Throwable {
+        String op = method.getName();
+        if (method.getDeclaringClass() == Object.class) {
+            try {
+                return method.invoke(conn, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+        Stat opStat = getStat(byOperation, op);
+        Stat nameStat = null;
+        if (args != null && args.length > 0 && args[0] instanceof ObjectName) {
+            nameStat = getNameStat(((ObjectName) args[0]).getCanonicalName());
+        }
+        boolean failed = true;
+        Object result = null;
+        long start = System.nanoTime();
+        try {
+            result = method.invoke(conn, args);
+            failed = false;
+            return result;
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            long nanos = System.nanoTime() - start;
+            opStat.record(nanos, failed);
+            if (nameStat != null) {
+                nameStat.record(nanos, failed);
+            }
+            if (!failed && opStat.samplePayload()) {
+                samplePayload(opStat, nameStat, args, result);
+            }
+        }
+    }
+
+    // Records the serialized size of a call on the payload thread. The
+    // arguments and results are not modified once the call has returned.
+    private static void samplePayload(final Stat opStat, final Stat nameStat,
+                                      final Object[] args, final Object result) {
+        payloadSizer.execute(new Runnable() {
+            public void run() {
+                long argsBytes = sizeOf(args);
+                long resultBytes = sizeOf(result);
+                if (argsBytes >= 0 && resultBytes >= 0) {
+                    long bytes = argsBytes + resultBytes;
+                    opStat.recordPayload(bytes);
+                    if (nameStat != null) {
+                        nameStat.recordPayload(bytes);
+                    }
+                }
+            }
+        });
+    }
+
+    private Stat getNameStat(String name) {
+        Stat stat = byName.get(name);
+        if (stat == null && byName.size() >= MAX_NAMES) {
+            name = OTHER_NAMES;
+        }
+        return getStat(byName, name);
+    }
+
+    private static Stat getStat(ConcurrentMap<String, Stat> map, String name) {
+        Stat stat = map.get(name);
+        if (stat == null) {
+            Stat newStat = new Stat(name);
+            stat = map.putIfAbsent(name, newStat);
+            if (stat == null) {
+                stat = newStat;
+            }
+        }
+        return stat;
+    }
+
+    // Serialized size of an object, or -1 if it cannot be serialized
+    private static long sizeOf(Object o) {
+        if (o == null) {
+            return 0L;
+        }
+        CountingOutputStream count = new CountingOutputStream();
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(count);
+            out.writeObject(o);
+            out.close();
+        } catch (IOException e) {
+            return -1L;
+        } catch (RuntimeException e) {
+            // Such as a collection modified while serialized
+            return -1L;
+        }
+        return count.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count = 0L;
+
+        public void write(int b) {
+            count++;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * Returns a copy of the statistics per operation type.
+     */
+    public List<Stat> getOperationStats() {
+        return copy(byOperation);
+    }
+
+    /**
+     * Returns a copy of the statistics per ObjectName.
+     */
+    public List<Stat> getObjectNameStats() {
+        return copy(byName);
+    }
+
+    private static List<Stat> copy(ConcurrentMap<String, Stat> map) {
+        List<Stat> list = new ArrayList<Stat>(map.size());
+        for (Stat s : map.values()) {
+            list.add(new Stat(s));
+        }
+        Collections.sort(list, new Comparator<Stat>() {
+            public int compare(Stat s1, Stat s2) {
+                return Double.compare(s2.getTotalMillis(), s1.getTotalMillis());
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Returns the time at which the statistics were last reset.
+     */
+    public long getSince() {
+        return since;
+    }
+
+    public void reset() {
+        byOperation.clear();
+        byName.clear();
+        since = System.currentTimeMillis();
+    }
+
+    /**
+     * Writes the statistics as CSV, one line per operation type and per
+     * ObjectName, with the latency histogram as the last columns.
+     */
+    public void writeCSV(Writer w) throws IOException {
+        PrintWriter out = new PrintWriter(w);
+        out.print("Kind,Name,Calls,Errors,Total ms,Avg ms,Max ms,P50 ms,P90 ms,P99 ms,Avg payload bytes");
+        for (long bound : BUCKET_BOUNDS) {
+            out.print(",<" + bound + "us");
+        }
+        out.println(",>=" + BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1] + "us");
+        writeCSV(out, "operation", getOperationStats());
+        writeCSV(out, "mbean", getObjectNameStats());
+        out.flush();
+        if (out.checkError()) {
+            throw new IOException("Error writing CSV");
+        }
+    }
+
+    private static void writeCSV(PrintWriter out, String kind, List<Stat> stats) {
+        for (Stat s : stats) {
+            out.print(kind);
+            out.print(",\"" + s.getName().replace("\"", "\"\"") + "\"");
+            out.print("," + s.getCalls() + "," + s.getErrors());
+            out.print(String.format(Locale.ENGLISH, ",%.3f,%.3f,%.3f,%.3f,%.3f,%.3f",
+                                    s.getTotalMillis(), s.getAverageMillis(),
+                                    s.getMaxMillis(), s.getPercentileMillis(50),
+                                    s.getPercentileMillis(90),
+                                    s.getPercentileMillis(99)));
+            out.print("," + s.getAveragePayload());
+            for (long b : s.getHistogram()) {
+                out.print("," + b);
+            }
+            out.println();
+        }
+    }
+}
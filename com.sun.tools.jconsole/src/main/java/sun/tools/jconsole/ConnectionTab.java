@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sun.tools.jconsole;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.io.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+
+import javax.swing.*;
+import javax.swing.border.*;
+import javax.swing.table.*;
+
+import static sun.tools.jconsole.Formatter.*;
+import static sun.tools.jconsole.Resources.*;
+import static sun.tools.jconsole.Utilities.*;
+
+/**
+ * Diagnostics of the cost of the console for the monitored VM: the
+ * round-trip statistics of the connection per operation type and per
+ * MBean, and the state of the console-wide update scheduler.
+ */
+@SuppressWarnings("serial")
+class ConnectionTab extends Tab implements ActionListener {
+    private JLabel summaryLabel;
+    private JLabel schedulerLabel;
+    private JLabel cacheLabel;
+    private JButton resetButton;
+    private JButton saveButton;
+    private JFileChooser saveFC;
+    private StatTableModel operationModel;
+    private StatTableModel mbeanModel;
+
+    /*
+      Hierarchy of panels and layouts for this tab:
+
+        ConnectionTab (BorderLayout)
+
+            North:  topPanel (BorderLayout)
+
+                        Center: labelPanel (GridLayout)
+                                    summaryLabel
+                                    schedulerLabel
+                                    cacheLabel
+
+                        East:   buttonPanel (FlowLayout)
+                                    resetButton
+                                    saveButton
+
+            Center: splitPane (JSplitPane)
+
+                        Top:    operation table
+                        Bottom: MBean table
+    */
+
+    public static String getTabName() {
+        return getText("ConnectionTab.tabName");
+    }
+
+    public ConnectionTab(VMPanel vmPanel) {
+        super(vmPanel, getTabName());
+
+        setLayout(new BorderLayout(0, 0));
+        setBorder(new EmptyBorder(4, 4, 3, 4));
+
+        JPanel topPanel = new JPanel(new BorderLayout());
+        JPanel labelPanel = new JPanel(new GridLayout(3, 1));
+        labelPanel.setBorder(new EmptyBorder(4, 4, 4, 4));
+        summaryLabel = new JLabel(" ");
+        schedulerLabel = new JLabel(" ");
+        cacheLabel = new JLabel(" ");
+        labelPanel.add(summaryLabel);
+        labelPanel.add(schedulerLabel);
+        labelPanel.add(cacheLabel);
+        topPanel.add(labelPanel, BorderLayout.CENTER);
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        resetButton = new JButton(getText("ConnectionTab.resetButton"));
+        resetButton.setMnemonic(getMnemonicInt("ConnectionTab.resetButton"));
+        resetButton.setToolTipText(getText("ConnectionTab.resetButton.toolTip"));
+        resetButton.addActionListener(this);
+        saveButton = new JButton(getText("ConnectionTab.saveButton"));
+        saveButton.setMnemonic(getMnemonicInt("ConnectionTab.saveButton"));
+        saveButton.setToolTipText(getText("ConnectionTab.saveButton.toolTip"));
+        saveButton.addActionListener(this);
+        buttonPanel.add(resetButton);
+        buttonPanel.add(saveButton);
+        topPanel.add(buttonPanel, BorderLayout.EAST);
+        add(topPanel, BorderLayout.NORTH);
+
+        operationModel = new StatTableModel(getText("Operation"));
+        mbeanModel = new StatTableModel(getText("Name"));
+        JSplitPane splitPane =
+            new JSplitPane(JSplitPane.VERTICAL_SPLIT,
+                           newTablePanel(operationModel, "ConnectionTab.byOperation"),
+                           newTablePanel(mbeanModel, "ConnectionTab.byMBean"));
+        splitPane.setResizeWeight(0.3);
+        splitPane.setBorder(null);
+        add(splitPane, BorderLayout.CENTER);
+    }
+
+    private static JComponent newTablePanel(StatTableModel model, String titleKey) {
+        JTable table = new JTable(model);
+        table.setAutoCreateRowSorter(true);
+        table.getColumnModel().getColumn(0).setPreferredWidth(300);
+        setAccessibleName(table, getText(titleKey));
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setBorder(new TitledBorder(getText(titleKey)));
+        return scrollPane;
+    }
+
+    public void actionPerformed(ActionEvent ev) {
+        Object src = ev.getSource();
+        final ConnectionStats stats =
+            vmPanel.getProxyClient(false).getConnectionStats();
+        if (src == resetButton) {
+            stats.reset();
+            UpdateScheduler.getInstance().resetStatistics();
+            operationModel.setStats(new ArrayList<ConnectionStats.Stat>());
+            mbeanModel.setStats(new ArrayList<ConnectionStats.Stat>());
+        } else if (src == saveButton) {
+            if (saveFC == null) {
+                saveFC = new Plotter.SaveDataFileChooser();
+            }
+            if (saveFC.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+                final File file = saveFC.getSelectedFile();
+                workerAdd(new Runnable() {
+                    public void run() {
+                        saveToFile(stats, file);
+                    }
+                });
+            }
+        }
+    }
+
+    private void saveToFile(ConnectionStats stats, final File file) {
+        IOException failure = null;
+        try {
+            Writer w = new BufferedWriter(new FileWriter(file));
+            try {
+                stats.writeCSV(w);
+            } finally {
+                w.close();
+            }
+        } catch (IOException ex) {
+            failure = ex;
+        }
+        final IOException ex = failure;
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                if (ex == null) {
+                    JOptionPane.showMessageDialog(ConnectionTab.this,
+                        getText("FileChooser.savedFile",
+                                file.getAbsolutePath(), file.length()));
+                } else {
+                    JOptionPane.showMessageDialog(ConnectionTab.this,
+                        getText("FileChooser.saveFailed.message",
+                                file.getAbsolutePath(), ex.getLocalizedMessage()),
+                        getText("FileChooser.saveFailed.title"),
+                        JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        });
+    }
+
+    public SwingWorker<?, ?> newSwingWorker() {
+        final ProxyClient proxyClient = vmPanel.getProxyClient();
+
+        return new SwingWorker<Boolean, Object>() {
+            private List<ConnectionStats.Stat> operations;
+            private List<ConnectionStats.Stat> mbeans;
+            private String summary;
+            private String scheduler;
+            private String cache = " ";
+
+            public Boolean doInBackground() {
+                ConnectionStats stats = proxyClient.getConnectionStats();
+                operations = stats.getOperationStats();
+                mbeans = stats.getObjectNameStats();
+                long calls = 0L;
+                double millis = 0.0;
+                for (ConnectionStats.Stat s : operations) {
+                    calls += s.getCalls();
+                    millis += s.getTotalMillis();
+                }
+                summary = getText("ConnectionTab.summary", calls,
+                                  String.format("%.1f", millis),
+                                  formatDateTime(stats.getSince()));
+                UpdateScheduler us = UpdateScheduler.getInstance();
+                scheduler = getText("ConnectionTab.scheduler",
+                                    us.getPoolSize(), us.getQueueDepth(),
+                                    us.getLastTickLag(), us.getMaxTickLag(),
+                                    us.getMissedTickCount());
+                ProxyClient.SnapshotStatistics ss =
+                    proxyClient.getSnapshotStatistics();
+                if (ss != null) {
+                    cache = getText("ConnectionTab.cache", ss.hits, ss.misses,
+                                    ss.collapsedMisses, ss.evictions, ss.size);
+                }
+                return true;
+            }
+
+            protected void done() {
+                try {
+                    if (get()) {
+                        summaryLabel.setText(summary);
+                        schedulerLabel.setText(scheduler);
+                        cacheLabel.setText(cache);
+                        operationModel.setStats(operations);
+                        mbeanModel.setStats(mbeans);
+                    }
+                } catch (InterruptedException ex) {
+                } catch (ExecutionException ex) {
+                    if (JConsole.isDebug()) {
+                        ex.printStackTrace();
+                    }
+                }
+            }
+        };
+    }
+
+    private static class StatTableModel extends AbstractTableModel {
+        private static final String[] columnKeys = {
+            null,
+            "ConnectionTab.column.calls",
+            "ConnectionTab.column.errors",
+            "ConnectionTab.column.total",
+            "ConnectionTab.column.avg",
+            "ConnectionTab.column.max",
+            "ConnectionTab.column.p50",
+            "ConnectionTab.column.p90",
+            "ConnectionTab.column.p99",
+            "ConnectionTab.column.payload",
+        };
+        private final String nameColumn;
+        private List<ConnectionStats.Stat> stats =
+            new ArrayList<ConnectionStats.Stat>();
+
+        StatTableModel(String nameColumn) {
+            this.nameColumn = nameColumn;
+        }
+
+        void setStats(List<ConnectionStats.Stat> stats) {
+            this.stats = stats;
+            fireTableDataChanged();
+        }
+
+        public int getRowCount() {
+            return stats.size();
+        }
+
+        public int getColumnCount() {
+            return columnKeys.length;
+        }
+
+        public String getColumnName(int column) {
+            return (column == 0) ? nameColumn : getText(columnKeys[column]);
+        }
+
+        public Class<?> getColumnClass(int column) {
+            switch (column) {
+                case 0:
+                    return String.class;
+                case 1:
+                case 2:
+                case 9:
+                    return Long.class;
+                default:
+                    return Double.class;
+            }
+        }
+
+        public Object getValueAt(int row, int column) {
+            ConnectionStats.Stat s = stats.get(row);
+            switch (column) {
+                case 0: return s.getName();
+                case 1: return s.getCalls();
+                case 2: return s.getErrors();
+                case 3: return round(s.getTotalMillis());
+                case 4: return round(s.getAverageMillis());
+                case 5: return round(s.getMaxMillis());
+                case 6: return round(s.getPercentileMillis(50));
+                case 7: return round(s.getPercentileMillis(90));
+                case 8: return round(s.getPercentileMillis(99));
+                case 9: return s.getAveragePayload();
+                default: return null;
+            }
+        }
+
+        private static Double round(double millis) {
+            return Math.round(millis * 1000.0) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package sun.tools.jconsole;
+
+import static sun.tools.jconsole.Resources.getText;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+import javax.swing.JComponent;
+import javax.swing.ToolTipManager;
+
+//
+// Flame graph:
+//
+// Draws a StackProfiler.Tree as an icicle graph: the root at the top, the
+// callees of a frame below it, each as wide as its share of the samples.
+// Clicking a frame zooms into it, clicking the top frame zooms out.
+//
+@SuppressWarnings("serial")
+class FlameGraph extends JComponent {
+
+    private static final int ROW_HEIGHT = 16;
+
+    private StackProfiler.Tree tree = null;
+    // The node drawn at the top
+    private int zoom = StackProfiler.ROOT;
+
+    FlameGraph() {
+        setOpaque(true);
+        setBackground(Color.white);
+        ToolTipManager.sharedInstance().registerComponent(this);
+        addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                int node = getNodeAt(e.getX(), e.getY());
+                if (node < 0) {
+                    return;
+                }
+                if (node == zoom) {
+                    zoom = Math.max(StackProfiler.ROOT, tree.getParent(node));
+                } else {
+                    zoom = node;
+                }
+                revalidate();
+                repaint();
+            }
+        });
+    }
+
+    /**
+     * Shows a tree, on the event dispatch thread. The zoom is kept unless
+     * the tree has fewer nodes, i.e. the profiler has been reset.
+     */
+    public void setTree(StackProfiler.Tree tree) {
+        if (tree == null || zoom >= tree.size) {
+            zoom = StackProfiler.ROOT;
+        }
+        this.tree = tree;
+        revalidate();
+        repaint();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        int rows = (tree != null) ? tree.maxDepth - tree.getDepth(zoom) + 1 : 1;
+        return new Dimension(400, rows * ROW_HEIGHT);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        if (tree == null || tree.getTotal(zoom) == 0) {
+            return;
+        }
+        paintNode(g, g.getFontMetrics(), zoom, 0, getWidth(), 0);
+    }
+
+    private void paintNode(Graphics g, FontMetrics fm, int node,
+                           double x, double width, int row) {
+        int x0 = (int)x;
+        int w = (int)(x + width) - x0;
+        int y = row * ROW_HEIGHT;
+        String frame = tree.getFrame(node);
+        g.setColor(getColor(frame));
+        g.fillRect(x0, y, Math.max(1, w - 1), ROW_HEIGHT - 1);
+        if (w > 20) {
+            String label = (frame != null) ? frame : getText("FlameGraph.all");
+            if (fm.stringWidth(label) > w - 4) {
+                // Keep the method, the end of the frame
+                int n = label.length();
+                while (n > 0 && fm.stringWidth(".." + label.substring(label.length() - n)) > w - 4) {
+                    n--;
+                }
+                label = (n > 0) ? ".." + label.substring(label.length() - n) : "";
+            }
+            g.setColor(Color.black);
+            g.drawString(label, x0 + 2, y + ROW_HEIGHT - 1 - fm.getDescent() - 1);
+        }
+
+        // Children narrower than a pixel are not drawn, nor their callees
+        double scale = width / tree.getTotal(node);
+        double cx = x;
+        for (int i = 0; i < tree.getChildCount(node); i++) {
+            int child = tree.getChild(node, i);
+            double cw = tree.getTotal(child) * scale;
+            if (cw >= 1.0) {
+                paintNode(g, fm, child, cx, cw, row + 1);
+            }
+            cx += cw;
+        }
+    }
+
+    // Warm colors, the same for a frame from one repaint to the next
+    private static Color getColor(String frame) {
+        if (frame == null) {
+            return new Color(0xE0E0E0);
+        }
+        int h = frame.hashCode();
+        return Color.getHSBColor(0.12f * ((h & 0xFF) / 255.0f),
+                                 0.5f + 0.3f * (((h >> 8) & 0xFF) / 255.0f),
+                                 0.95f);
+    }
+
+    // The node drawn at a point, or -1
+    private int getNodeAt(int px, int py) {
+        if (tree == null || tree.getTotal(zoom) == 0) {
+            return -1;
+        }
+        int row = py / ROW_HEIGHT;
+        int node = zoom;
+        double x = 0;
+        double width = getWidth();
+        for (int r = 0; r < row; r++) {
+            double scale = width / tree.getTotal(node);
+            int next = -1;
+            for (int i = 0; i < tree.getChildCount(node) && next < 0; i++) {
+                int child = tree.getChild(node, i);
+                double cw = tree.getTotal(child) * scale;
+                if (px >= x && px < x + cw) {
+                    next = (cw >= 1.0) ? child : -1;
+                    width = cw;
+                    break;
+                }
+                x += cw;
+            }
+            if (next < 0) {
+                return -1;
+            }
+            node = next;
+        }
+        return node;
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        int node = getNodeAt(e.getX(), e.getY());
+        if (node < 0) {
+            return null;
+        }
+        String frame = tree.getFrame(node);
+        return getText("FlameGraph.toolTip",
+                       (frame != null) ? frame : getText("FlameGraph.all"),
+                       tree.getTotal(node),
+                       String.format("%.1f", 100.0 * tree.getTotal(node) /
+                                     tree.getTotal(StackProfiler.ROOT)),
+                       tree.getSelf(node));
+    }
+}
@@ -763,8 +763,12 @@ public class JConsole extends JFrame
 
     public void internalFrameOpened(InternalFrameEvent e) {}
     public void internalFrameClosed(InternalFrameEvent e) {}
-    public void internalFrameIconified(InternalFrameEvent e) {}
-    public void internalFrameDeiconified(InternalFrameEvent e) {}
+    public void internalFrameIconified(InternalFrameEvent e) {
+        ((VMInternalFrame)e.getInternalFrame()).getVMPanel().setIconified(true);
+    }
+    public void internalFrameDeiconified(InternalFrameEvent e) {
+        ((VMInternalFrame)e.getInternalFrame()).getVMPanel().setIconified(false);
+    }
     public void internalFrameActivated(InternalFrameEvent e) {}
     public void internalFrameDeactivated(InternalFrameEvent e) {}
 
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package sun.tools.jconsole;
+
+import java.util.Arrays;
+
+//
+// Long hash map:
+//
+// A map from long keys, such as thread IDs, to objects, without boxing the
+// keys. Same table layout as LongHashSet, with the values in a parallel
+// array. Null values cannot be stored.
+//
+class LongHashMap<V> {
+
+    private long[] keys;
+    private Object[] values;
+    private int size = 0;
+
+    LongHashMap() {
+        this(16);
+    }
+
+    LongHashMap(int expectedSize) {
+        int length = LongHashSet.tableLength(expectedSize);
+        keys = new long[length];
+        values = new Object[length];
+        Arrays.fill(keys, LongHashSet.EMPTY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        for (int i = LongHashSet.slot(key, keys.length); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return i;
+            }
+            if (k == LongHashSet.EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns the value of a key, or <tt>null</tt> if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i = indexOf(key);
+        return (i >= 0) ? (V)values[i] : null;
+    }
+
+    public void put(long key, V value) {
+        if (key == LongHashSet.EMPTY || value == null) {
+            throw new IllegalArgumentException();
+        }
+        int mask = keys.length - 1;
+        int i = LongHashSet.slot(key, keys.length);
+        for (long k; (k = keys[i]) != LongHashSet.EMPTY; i = (i + 1) & mask) {
+            if (k == key) {
+                values[i] = value;
+                return;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    /**
+     * Removes all keys, keeping the table.
+     */
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, LongHashSet.EMPTY);
+            Arrays.fill(values, null);
+            size = 0;
+        }
+    }
+
+    /**
+     * Removes the keys that are not in the given set.
+     */
+    public void retainAll(LongHashSet set) {
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != LongHashSet.EMPTY && !set.contains(keys[i])) {
+                keys[i] = LongHashSet.EMPTY;
+                values[i] = null;
+                n++;
+            }
+        }
+        if (n > 0) {
+            // Removing breaks the probe sequences, so reinsert the rest
+            size -= n;
+            rehash(LongHashSet.tableLength(size));
+        }
+    }
+
+    private void rehash(int length) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[length];
+        values = new Object[length];
+        Arrays.fill(keys, LongHashSet.EMPTY);
+        int mask = length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != LongHashSet.EMPTY) {
+                int i = LongHashSet.slot(oldKeys[j], length);
+                while (keys[i] != LongHashSet.EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
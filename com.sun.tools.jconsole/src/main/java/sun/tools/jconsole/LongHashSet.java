@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package sun.tools.jconsole;
+
+import java.util.Arrays;
+
+//
+// Long hash set:
+//
+// A set of long values, such as thread IDs, without boxing. Values are
+// kept in an open addressing table with linear probing, of a power of two
+// length kept at most half full. Long.MIN_VALUE marks empty slots and
+// cannot be added. Clearing keeps the table, so that a set refilled on
+// every update does not allocate once it has grown.
+//
+class LongHashSet {
+
+    static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] table;
+    private int size = 0;
+
+    LongHashSet() {
+        this(16);
+    }
+
+    LongHashSet(int expectedSize) {
+        table = new long[tableLength(expectedSize)];
+        Arrays.fill(table, EMPTY);
+    }
+
+    // The smallest power of two at least twice the given size
+    static int tableLength(int size) {
+        return Math.max(16, Integer.highestOneBit(Math.max(size, 1) * 4 - 1));
+    }
+
+    // Slot of a value in a table of the given length, before probing. The
+    // bits are spread as in HashMap only, so that sequential values, such
+    // as thread IDs, take neighbouring slots.
+    static int slot(long value, int length) {
+        int h = (int)(value ^ (value >>> 32));
+        return (h ^ (h >>> 16)) & (length - 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long value) {
+        int mask = table.length - 1;
+        for (int i = slot(value, table.length); ; i = (i + 1) & mask) {
+            long v = table[i];
+            if (v == value) {
+                return true;
+            }
+            if (v == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Adds a value, returns false if it was present already.
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            throw new IllegalArgumentException("Long.MIN_VALUE");
+        }
+        int mask = table.length - 1;
+        int i = slot(value, table.length);
+        for (long v; (v = table[i]) != EMPTY; i = (i + 1) & mask) {
+            if (v == value) {
+                return false;
+            }
+        }
+        table[i] = value;
+        if (++size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Adds all the values of an array.
+     */
+    public void addAll(long[] values, int from, int to) {
+        if ((size + to - from) * 2 > table.length) {
+            rehash(tableLength(size + to - from));
+        }
+        for (int i = from; i < to; i++) {
+            add(values[i]);
+        }
+    }
+
+    /**
+     * Removes all values, keeping the table.
+     */
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(table, EMPTY);
+            size = 0;
+        }
+    }
+
+    private void rehash(int length) {
+        long[] old = table;
+        table = new long[length];
+        Arrays.fill(table, EMPTY);
+        int mask = length - 1;
+        for (long v : old) {
+            if (v != EMPTY) {
+                int i = slot(v, length);
+                while (table[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = v;
+            }
+        }
+    }
+}
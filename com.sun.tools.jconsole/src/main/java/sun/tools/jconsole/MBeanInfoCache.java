@@ -0,0 +1,474 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sun.tools.jconsole;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.management.*;
+
+import andrask.sun.tools.jconsole.Settings;
+
+//
+// MBeanInfo cache:
+//
+// Servers exposing tens of thousands of MBeans usually have only a few
+// hundred distinct MBean classes, and MBeans of the same class whose
+// MBeanInfo is declared immutable (the "immutableInfo" descriptor field,
+// set for Standard MBeans and MXBeans) all have the same MBeanInfo. This
+// cache keeps such MBeanInfo per MBean class name, so that only the first
+// MBean of a class costs a getMBeanInfo round trip.
+//
+// - The class name of each MBean comes from the queryMBeans call that
+//   builds the MBean tree, or from the MBeanInfo fetched for it.
+//
+// - The cache is saved on disk, one file per VM identity (VM vendor, VM
+//   version, class path and VM start time), so that reopening a server
+//   that is still running, e.g. after a restart of the console, costs
+//   almost no metadata round trips. A restarted VM gets a new identity,
+//   but an application redeployed without restarting its VM keeps it, so
+//   the MBeanInfo of a class changed by the redeployment stays stale until
+//   the class is dropped, see below. The identity is read once per
+//   connection, lookups made meanwhile miss the cache instead of waiting.
+//   The files least recently used are deleted when their total size
+//   exceeds myjconsole.mbeaninfocache.maxsize kilobytes, 0 disables the
+//   disk cache.
+//
+// - When the last known MBean of a class is unregistered the class is
+//   dropped from the cache, so that a redeployed class with a new
+//   interface is fetched again. MBeans coming and going while others of
+//   their class remain, such as sessions, keep the class cached.
+//
+public class MBeanInfoCache {
+
+    private static final File DIRECTORY = new File(
+        System.getProperty("user.home") + File.separator + ".myjconsole" +
+        File.separator + "mbeaninfo");
+
+    private static final Set<MBeanInfoCache> instances =
+        Collections.newSetFromMap(new WeakHashMap<MBeanInfoCache, Boolean>());
+    private static boolean shutdownHookAdded = false;
+
+    private final ProxyClient proxyClient;
+    private final long maxSize;
+
+    // The identity of the connected VM, null until known, and whether it
+    // has been checked since the last connection or is being checked.
+    // Guarded by this.
+    private String identity = null;
+    private volatile boolean identityChecked = false;
+    private boolean identityLoading = false;
+    private final ConcurrentMap<String, Entry> entries =
+        new ConcurrentHashMap<String, Entry>();
+    // The class of each known MBean, and the number of known MBeans per
+    // class. Written holding classNames.
+    private final ConcurrentMap<ObjectName, String> classNames =
+        new ConcurrentHashMap<ObjectName, String>();
+    private final Map<String, Integer> classCounts =
+        new HashMap<String, Integer>();
+    private volatile boolean dirty = false;
+
+    private static class Entry implements Serializable {
+        private static final long serialVersionUID = 4630285390614541352L;
+        final MBeanInfo info;
+        // null if not known yet
+        volatile Boolean broadcaster;
+
+        Entry(MBeanInfo info, Boolean broadcaster) {
+            this.info = info;
+            this.broadcaster = broadcaster;
+        }
+    }
+
+    MBeanInfoCache(ProxyClient proxyClient) {
+        this.proxyClient = proxyClient;
+        this.maxSize = 1024L *
+            Settings.getInt(Settings.KEY_MBEANINFO_CACHE_SIZE, 16384);
+        synchronized (instances) {
+            instances.add(this);
+            if (!shutdownHookAdded) {
+                Runtime.getRuntime().addShutdownHook(
+                    new Thread("MBeanInfoCache.save") {
+                        public void run() {
+                            saveAll();
+                        }
+                    });
+                shutdownHookAdded = true;
+            }
+        }
+    }
+
+    /**
+     * Records the class names of MBeans, as returned by queryMBeans,
+     * replacing the ones recorded so far.
+     */
+    public void setClassNames(Set<ObjectInstance> mbeans) {
+        synchronized (classNames) {
+            classNames.clear();
+            classCounts.clear();
+            addClassNames(mbeans);
+        }
+    }
+
+    /**
+     * Records the class names of some MBeans, as returned by queryMBeans.
+     */
+    public void addClassNames(Set<ObjectInstance> mbeans) {
+        synchronized (classNames) {
+            for (ObjectInstance oi : mbeans) {
+                if (oi.getClassName() != null) {
+                    putClassName(oi.getObjectName(), oi.getClassName());
+                }
+            }
+        }
+    }
+
+    // Call holding classNames
+    private void putClassName(ObjectName name, String className) {
+        String old = classNames.put(name, className);
+        if (!className.equals(old)) {
+            Integer n = classCounts.get(className);
+            classCounts.put(className, (n != null) ? n + 1 : 1);
+            if (old != null) {
+                removeClassName(old);
+            }
+        }
+    }
+
+    // Returns whether it was the last known MBean of its class, call
+    // holding classNames
+    private boolean removeClassName(String className) {
+        Integer n = classCounts.get(className);
+        if (n == null || n <= 1) {
+            classCounts.remove(className);
+            return true;
+        }
+        classCounts.put(className, n - 1);
+        return false;
+    }
+
+    /**
+     * Returns the cached MBeanInfo of an MBean, or <tt>null</tt> if it
+     * must be fetched.
+     */
+    public MBeanInfo getMBeanInfo(ObjectName name) throws IOException {
+        Entry e = getEntry(name);
+        return (e != null) ? e.info : null;
+    }
+
+    /**
+     * Returns whether an MBean is a notification broadcaster, or
+     * <tt>null</tt> if it is not known.
+     */
+    public Boolean isBroadcaster(ObjectName name) throws IOException {
+        Entry e = getEntry(name);
+        return (e != null) ? e.broadcaster : null;
+    }
+
+    private Entry getEntry(ObjectName name) throws IOException {
+        if (!load()) {
+            return null;
+        }
+        String className = classNames.get(name);
+        return (className != null) ? entries.get(className) : null;
+    }
+
+    /**
+     * Records the MBeanInfo fetched for an MBean, it is kept if it is
+     * declared immutable.
+     */
+    public void putMBeanInfo(ObjectName name, MBeanInfo info) {
+        String className = info.getClassName();
+        if (className == null) {
+            return;
+        }
+        synchronized (classNames) {
+            putClassName(name, className);
+        }
+        if (isImmutable(info) && !entries.containsKey(className)) {
+            entries.put(className, new Entry(info, null));
+            dirty = true;
+        }
+    }
+
+    public void putBroadcaster(ObjectName name, boolean broadcaster) {
+        String className = classNames.get(name);
+        Entry e = (className != null) ? entries.get(className) : null;
+        if (e != null && e.broadcaster == null) {
+            e.broadcaster = broadcaster;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Called on MBean unregistration.
+     */
+    public void invalidate(ObjectName name) {
+        String className;
+        boolean last;
+        synchronized (classNames) {
+            className = classNames.remove(name);
+            last = className != null && removeClassName(className);
+        }
+        if (last && entries.remove(className) != null) {
+            dirty = true;
+        }
+    }
+
+    private static boolean isImmutable(MBeanInfo info) {
+        Descriptor d = info.getDescriptor();
+        Object value = (d != null) ? d.getFieldValue("immutableInfo") : null;
+        return value != null && "true".equalsIgnoreCase(value.toString());
+    }
+
+    /**
+     * Saves the cache, called on disconnect. The identity of the VM is
+     * checked again on the next connection, as it may be another VM,
+     * e.g. after a restart.
+     */
+    void disconnected() {
+        final String id;
+        final Map<String, Entry> toSave;
+        synchronized (this) {
+            id = identity;
+            toSave = dirty ? new HashMap<String, Entry>(entries) : null;
+            identityChecked = false;
+            dirty = false;
+        }
+        if (id != null && toSave != null) {
+            new Thread("MBeanInfoCache.save") {
+                public void run() {
+                    save(id, toSave);
+                }
+            }.start();
+        }
+    }
+
+    private static void saveAll() {
+        List<MBeanInfoCache> caches;
+        synchronized (instances) {
+            caches = new ArrayList<MBeanInfoCache>(instances);
+        }
+        for (MBeanInfoCache c : caches) {
+            String id;
+            synchronized (c) {
+                id = c.identity;
+            }
+            if (id != null && c.dirty) {
+                save(id, new HashMap<String, Entry>(c.entries));
+            }
+        }
+    }
+
+    // Reads the identity of the VM and the cache file for it, once per
+    // connection. Returns false while the identity is not known, the
+    // remote call is made by one thread without holding the lock.
+    private boolean load() throws IOException {
+        if (identityChecked) {
+            return true;
+        }
+        synchronized (this) {
+            if (identityChecked || identityLoading) {
+                return identityChecked;
+            }
+            identityLoading = true;
+        }
+        String id = null;
+        try {
+            id = readIdentity();
+        } finally {
+            synchronized (this) {
+                identityLoading = false;
+                if (id != null) {
+                    loadEntries(id);
+                    identityChecked = true;
+                }
+            }
+        }
+        return true;
+    }
+
+    // The VM vendor, VM version, class path and start time, read with one
+    // call
+    private String readIdentity() throws IOException {
+        if (!proxyClient.hasPlatformMXBeans()) {
+            return "";
+        }
+        AttributeList al = proxyClient.getAttributes(PollPlan.RUNTIME,
+            new String[] { "VmVendor", "VmVersion", "ClassPath", "StartTime" });
+        Map<String, Object> values = new HashMap<String, Object>();
+        if (al != null) {
+            for (Object o : al) {
+                Attribute a = (Attribute) o;
+                values.put(a.getName(), a.getValue());
+            }
+        }
+        Object classPath = values.get("ClassPath");
+        return values.get("VmVendor") + "|" + values.get("VmVersion") + "|" +
+               ((classPath != null)
+                ? Integer.toHexString(classPath.hashCode()) : "") + "|" +
+               values.get("StartTime");
+    }
+
+    // Call holding this
+    private void loadEntries(String id) {
+        if (id.equals(identity)) {
+            // Reconnected to the same VM, keep what we have
+            return;
+        }
+        identity = id;
+        entries.clear();
+        dirty = false;
+        if (maxSize <= 0 || identity.length() == 0) {
+            return;
+        }
+        File file = getFile(identity);
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (!identity.equals(in.readUTF())) {
+                    // Hash collision with another VM identity
+                    return;
+                }
+                int n = in.readInt();
+                for (int i = 0; i < n; i++) {
+                    String className = in.readUTF();
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    try {
+                        ObjectInputStream ois = new ObjectInputStream(
+                            new ByteArrayInputStream(data));
+                        entries.putIfAbsent(className, (Entry) ois.readObject());
+                    } catch (ClassNotFoundException e) {
+                        // Skip the entry
+                    }
+                }
+            } finally {
+                in.close();
+            }
+            // Least recently used files are deleted first
+            file.setLastModified(System.currentTimeMillis());
+        } catch (Exception e) {
+            // A corrupt or outdated file is simply ignored
+            if (JConsole.isDebug()) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static File getFile(String identity) {
+        return new File(DIRECTORY,
+                        Integer.toHexString(identity.hashCode()) + ".ser");
+    }
+
+    private static void save(String identity, Map<String, Entry> entries) {
+        long maxSize = 1024L *
+            Settings.getInt(Settings.KEY_MBEANINFO_CACHE_SIZE, 16384);
+        if (maxSize <= 0 || identity.length() == 0) {
+            return;
+        }
+        synchronized (DIRECTORY) {
+            if (!DIRECTORY.isDirectory() && !DIRECTORY.mkdirs()) {
+                return;
+            }
+            File file = getFile(identity);
+            File tmp = new File(file.getPath() + ".tmp");
+            try {
+                // Entries that cannot be serialized are skipped
+                List<String> names = new ArrayList<String>();
+                List<byte[]> data = new ArrayList<byte[]>();
+                for (Map.Entry<String, Entry> me : entries.entrySet()) {
+                    try {
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        ObjectOutputStream out = new ObjectOutputStream(bytes);
+                        out.writeObject(me.getValue());
+                        out.close();
+                        names.add(me.getKey());
+                        data.add(bytes.toByteArray());
+                    } catch (IOException e) {
+                        if (JConsole.isDebug()) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+                DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)));
+                try {
+                    out.writeUTF(identity);
+                    out.writeInt(names.size());
+                    for (int i = 0; i < names.size(); i++) {
+                        out.writeUTF(names.get(i));
+                        out.writeInt(data.get(i).length);
+                        out.write(data.get(i));
+                    }
+                } finally {
+                    out.close();
+                }
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    tmp.delete();
+                }
+            } catch (Exception e) {
+                tmp.delete();
+                if (JConsole.isDebug()) {
+                    e.printStackTrace();
+                }
+            }
+            trim(maxSize);
+        }
+    }
+
+    // Deletes the least recently used files beyond the size limit
+    private static void trim(long maxSize) {
+        File[] files = DIRECTORY.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".ser");
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long t1 = f1.lastModified();
+                long t2 = f2.lastModified();
+                return (t1 > t2) ? -1 : ((t1 < t2) ? 1 : 0);
+            }
+        });
+        long total = 0L;
+        for (File f : files) {
+            total += f.length();
+            if (total > maxSize) {
+                f.delete();
+            }
+        }
+    }
+}
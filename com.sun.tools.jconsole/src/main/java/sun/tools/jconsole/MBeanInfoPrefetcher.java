@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sun.tools.jconsole;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import andrask.sun.tools.jconsole.Settings;
+
+//
+// MBeanInfo prefetcher:
+//
+// A bounded pipeline for the metadata requests of one connection, such as
+// the getMBeanInfo calls made when MBean nodes are expanded. At most
+// myjconsole.prefetch.inflight requests are sent at a time, so that
+// expanding a domain of thousands of MBeans keeps a few round trips in
+// flight instead of flooding the target with one thread per MBean.
+//
+// - Urgent requests, for the nodes visible on screen, are sent before the
+//   others. A queued request can be promoted when its node scrolls into
+//   view.
+//
+// - Requests are grouped in batches that report their progress and can
+//   be cancelled as a whole.
+//
+public class MBeanInfoPrefetcher {
+
+    private final int maxInFlight;
+    private final ExecutorService executor;
+
+    // Guarded by this
+    private final LinkedList<Request<?>> urgent = new LinkedList<Request<?>>();
+    private final LinkedList<Request<?>> background = new LinkedList<Request<?>>();
+    private int inFlight = 0;
+
+    /**
+     * Called when a request completes, fails or is cancelled, on the
+     * thread that ran or cancelled it.
+     */
+    public interface Callback<T> {
+        public void done(Request<T> request);
+    }
+
+    MBeanInfoPrefetcher(String name) {
+        this.maxInFlight = Math.max(1,
+            Settings.getInt(Settings.KEY_PREFETCH_IN_FLIGHT, 8));
+        final String threadName = "MBeanInfoPrefetcher-" + name;
+        ThreadPoolExecutor tpe = new ThreadPoolExecutor(
+            maxInFlight, maxInFlight, 5, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, threadName);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        tpe.allowCoreThreadTimeOut(true);
+        this.executor = tpe;
+    }
+
+    /**
+     * Queues a request.
+     *
+     * @param urgent whether to send it before the non-urgent ones
+     * @param batch the batch it belongs to, or <tt>null</tt>
+     * @param callback called when done, or <tt>null</tt>
+     */
+    public <T> Request<T> submit(Callable<T> task, boolean urgent,
+                                 Batch batch, Callback<T> callback) {
+        Request<T> r = new Request<T>(task, batch, callback);
+        if (batch != null) {
+            batch.add(r);
+        }
+        if (r.isCancelled()) {
+            // Its batch was cancelled
+            return r;
+        }
+        synchronized (this) {
+            (urgent ? this.urgent : background).addLast(r);
+        }
+        dispatch();
+        return r;
+    }
+
+    /**
+     * Moves a queued request ahead of the non-urgent ones.
+     */
+    public void promote(Request<?> r) {
+        synchronized (this) {
+            if (background.remove(r)) {
+                urgent.addLast(r);
+            }
+        }
+    }
+
+    /**
+     * Cancels all the queued requests, e.g. on disconnection.
+     */
+    public void cancelAll() {
+        List<Request<?>> queued;
+        synchronized (this) {
+            queued = new ArrayList<Request<?>>(urgent);
+            queued.addAll(background);
+        }
+        for (Request<?> r : queued) {
+            r.cancelIfQueued();
+        }
+    }
+
+    public synchronized int getQueueSize() {
+        return urgent.size() + background.size();
+    }
+
+    private void dispatch() {
+        while (true) {
+            Request<?> r;
+            synchronized (this) {
+                if (inFlight >= maxInFlight) {
+                    return;
+                }
+                r = urgent.poll();
+                if (r == null) {
+                    r = background.poll();
+                }
+                if (r == null) {
+                    return;
+                }
+                inFlight++;
+                r.started = true;
+            }
+            executor.execute(r);
+        }
+    }
+
+    // Called when a started request returns, cancelled or not
+    private void finished() {
+        synchronized (this) {
+            inFlight--;
+        }
+        dispatch();
+    }
+
+    // Removes a request from the queues, returns false if it was started
+    private synchronized boolean dequeue(Request<?> r) {
+        if (r.started) {
+            return false;
+        }
+        if (!urgent.remove(r)) {
+            background.remove(r);
+        }
+        return true;
+    }
+
+    /**
+     * A queued metadata request.
+     */
+    public class Request<T> extends FutureTask<T> {
+        private final Batch batch;
+        private final Callback<T> callback;
+        // Guarded by the enclosing MBeanInfoPrefetcher
+        private boolean started = false;
+
+        private Request(Callable<T> task, Batch batch, Callback<T> callback) {
+            super(task);
+            this.batch = batch;
+            this.callback = callback;
+        }
+
+        /**
+         * Cancels the request if it has not been sent yet.
+         */
+        public void cancelIfQueued() {
+            if (dequeue(this)) {
+                cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            // Only the requests dispatched are run, and they count as in
+            // flight until the call returns, even if cancelled meanwhile
+            try {
+                super.run();
+            } finally {
+                finished();
+            }
+        }
+
+        @Override
+        protected void done() {
+            dequeue(this);
+            if (batch != null) {
+                batch.done();
+            }
+            if (callback != null) {
+                callback.done(this);
+            }
+        }
+    }
+
+    /**
+     * A group of requests, e.g. the MBeans of an expand-all, with its
+     * progress.
+     */
+    public static class Batch {
+        private final AtomicInteger total = new AtomicInteger();
+        private final AtomicInteger completed = new AtomicInteger();
+        private final List<Request<?>> requests = new ArrayList<Request<?>>();
+        private final Runnable progressListener;
+        private volatile boolean cancelled = false;
+
+        /**
+         * @param progressListener run after each completed request, on the
+         *        thread that completed it, or <tt>null</tt>
+         */
+        public Batch(Runnable progressListener) {
+            this.progressListener = progressListener;
+        }
+
+        private void add(Request<?> r) {
+            total.incrementAndGet();
+            boolean cancel;
+            synchronized (requests) {
+                cancel = cancelled;
+                if (!cancel) {
+                    requests.add(r);
+                }
+            }
+            if (cancel) {
+                r.cancel(false);
+            }
+        }
+
+        private void done() {
+            completed.incrementAndGet();
+            if (progressListener != null) {
+                progressListener.run();
+            }
+        }
+
+        public int getTotal() {
+            return total.get();
+        }
+
+        public int getCompleted() {
+            return completed.get();
+        }
+
+        public boolean isCompleted() {
+            return completed.get() >= total.get();
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Cancels the requests not sent yet, the ones in flight complete.
+         */
+        public void cancel() {
+            List<Request<?>> list;
+            synchronized (requests) {
+                cancelled = true;
+                list = new ArrayList<Request<?>>(requests);
+                requests.clear();
+            }
+            for (Request<?> r : list) {
+                r.cancelIfQueued();
+            }
+        }
+    }
+}
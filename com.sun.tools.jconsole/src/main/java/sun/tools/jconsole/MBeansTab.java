@@ -31,6 +31,8 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.EventQueue;
 import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.MouseAdapter;
@@ -43,6 +45,7 @@ import java.lang.management.ManagementFactory;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -53,6 +56,7 @@ import javax.management.MBeanServerDelegate;
 import javax.management.MBeanServerNotification;
 import javax.management.Notification;
 import javax.management.NotificationListener;
+import javax.management.ObjectInstance;
 import javax.management.ObjectName;
 import javax.swing.BorderFactory;
 import javax.swing.JLabel;
@@ -62,6 +66,7 @@ import javax.swing.JSplitPane;
 import javax.swing.JTextField;
 import javax.swing.OverlayLayout;
 import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
@@ -140,10 +145,27 @@ public class MBeansTab extends Tab implements
         return vmPanel.getUpdateInterval();
     }
 
+    // The MBeans shown in the tree and the MBeanServerId of the server they
+    // come from, kept across connection drops so that a reconnect to the
+    // same server only applies the differences to the tree, keeping its
+    // nodes and their MBeanInfo. Updated on the EDT.
+    //
+    private final Set<ObjectName> knownMBeans = new HashSet<ObjectName>();
+    private String mbeanServerId = null;
+
+    private static class ServerView {
+        String mbeanServerId;
+        // null if the server is known to be unchanged
+        Set<ObjectName> mbeans;
+    }
+
     private void buildMBeanServerView() {
-        new SwingWorker<Set<ObjectName>, Void>() {
+        // Generation marker of the current tree, read on the EDT
+        final String knownServerId = mbeanServerId;
+        final int knownCount = knownMBeans.size();
+        new SwingWorker<ServerView, Void>() {
             @Override
-            public Set<ObjectName> doInBackground() {
+            public ServerView doInBackground() {
                 // Register listener for MBean registration/unregistration
                 //
                 try {
@@ -166,11 +188,42 @@ public class MBeansTab extends Tab implements
                     vmPanel.getProxyClient().markAsDead();
                     return null;
                 }
-                // Retrieve MBeans from MBeanServer
+                ServerView view = new ServerView();
+                try {
+                    view.mbeanServerId = (String) getMBeanServerConnection().
+                        getAttribute(MBeanServerDelegate.DELEGATE_NAME,
+                                     "MBeanServerId");
+                    // Same server and same number of MBeans: the MBeans
+                    // registered while disconnected, if any, have been
+                    // unregistered since, keep the tree as it is
+                    if (view.mbeanServerId.equals(knownServerId) &&
+                            getMBeanServerConnection().getMBeanCount() == knownCount) {
+                        return view;
+                    }
+                } catch (IOException e) {
+                    if (JConsole.isDebug()) {
+                        e.printStackTrace();
+                    }
+                    vmPanel.getProxyClient().markAsDead();
+                    return null;
+                } catch (Exception e) {
+                    // No generation marker, rebuild the tree
+                    if (JConsole.isDebug()) {
+                        e.printStackTrace();
+                    }
+                    view.mbeanServerId = null;
+                }
+                // Retrieve MBeans from MBeanServer, with their class names
+                // for the MBeanInfo cache
                 //
-                Set<ObjectName> mbeans = null;
                 try {
-                    mbeans = getMBeanServerConnection().queryNames(null, null);
+                    Set<ObjectInstance> instances =
+                        getMBeanServerConnection().queryMBeans(null, null);
+                    getMBeanInfoCache().setClassNames(instances);
+                    view.mbeans = new HashSet<ObjectName>(instances.size());
+                    for (ObjectInstance oi : instances) {
+                        view.mbeans.add(oi.getObjectName());
+                    }
                 } catch (IOException e) {
                     if (JConsole.isDebug()) {
                         e.printStackTrace();
@@ -178,25 +231,47 @@ public class MBeansTab extends Tab implements
                     vmPanel.getProxyClient().markAsDead();
                     return null;
                 }
-                return mbeans;
+                return view;
             }
             @Override
             protected void done() {
                 try {
                     // Wait for mbsc.queryNames() result
-                    Set<ObjectName> mbeans = get();
-                    // Do not display anything until the new tree has been built
-                    //
-                    tree.setVisible(false);
-                    // Cleanup current tree
-                    //
-                    tree.removeAll();
-                    // Add MBeans to tree
-                    //
-                    tree.addMBeansToView(mbeans);
-                    // Display the new tree
-                    //
-                    tree.setVisible(true);
+                    ServerView view = get();
+                    if (view == null || view.mbeans == null) {
+                        return;
+                    }
+                    if (view.mbeanServerId != null &&
+                            view.mbeanServerId.equals(mbeanServerId)) {
+                        // Reconnected to the same server, apply the
+                        // differences
+                        Set<ObjectName> removed =
+                            new HashSet<ObjectName>(knownMBeans);
+                        removed.removeAll(view.mbeans);
+                        Set<ObjectName> added =
+                            new HashSet<ObjectName>(view.mbeans);
+                        added.removeAll(knownMBeans);
+                        for (ObjectName mbean : removed) {
+                            tree.removeMBeanFromView(mbean);
+                        }
+                        tree.addMBeansToView(added);
+                    } else {
+                        // Do not display anything until the new tree has been built
+                        //
+                        tree.setVisible(false);
+                        // Cleanup current tree
+                        //
+                        tree.removeAll();
+                        // Add MBeans to tree
+                        //
+                        tree.addMBeansToView(view.mbeans);
+                        // Display the new tree
+                        //
+                        tree.setVisible(true);
+                    }
+                    mbeanServerId = view.mbeanServerId;
+                    knownMBeans.clear();
+                    knownMBeans.addAll(view.mbeans);
                 } catch (Exception e) {
                     Throwable t = Utils.getActualException(e);
                     if (JConsole.isDebug()) {
@@ -216,6 +291,53 @@ public class MBeansTab extends Tab implements
         return vmPanel.getProxyClient().getSnapshotMBeanServerConnection();
     }
 
+    public MBeanInfoCache getMBeanInfoCache() {
+        return vmPanel.getProxyClient().getMBeanInfoCache();
+    }
+
+    public PlotHistory getPlotHistory() {
+        return vmPanel.getPlotHistory();
+    }
+
+    // Call on EDT
+    public MBeanInfoPrefetcher getMBeanInfoPrefetcher() {
+        return vmPanel.getProxyClient(false).getMBeanInfoPrefetcher();
+    }
+
+    /**
+     * Returns a new batch of metadata requests whose progress is shown
+     * next to the filter field.
+     */
+    public MBeanInfoPrefetcher.Batch newMetadataBatch() {
+        final AtomicBoolean progressPending = new AtomicBoolean(false);
+        final MBeanInfoPrefetcher.Batch[] batch = new MBeanInfoPrefetcher.Batch[1];
+        batch[0] = new MBeanInfoPrefetcher.Batch(new Runnable() {
+            public void run() {
+                // At most one label update queued at a time
+                if (progressPending.compareAndSet(false, true)) {
+                    EventQueue.invokeLater(new Runnable() {
+                        public void run() {
+                            progressPending.set(false);
+                            showMetadataProgress(batch[0]);
+                        }
+                    });
+                }
+            }
+        });
+        return batch[0];
+    }
+
+    // Call on EDT
+    private void showMetadataProgress(MBeanInfoPrefetcher.Batch batch) {
+        if (batch.isCompleted() || batch.isCancelled()) {
+            operationLabel.setText("");
+        } else if (batch.getTotal() > 1) {
+            operationLabel.setText(Resources.getText(
+                "MBeansTab.metadataProgress",
+                batch.getCompleted(), batch.getTotal()));
+        }
+    }
+
     @Override
     public void update() {
         // Ping the connection to see if it is still alive. At
@@ -304,9 +426,13 @@ public class MBeansTab extends Tab implements
                     if (notification.getType().equals(
                             MBeanServerNotification.REGISTRATION_NOTIFICATION)) {
                         tree.addMBeanToView(mbean);
+                        knownMBeans.add(mbean);
                     } else if (notification.getType().equals(
                             MBeanServerNotification.UNREGISTRATION_NOTIFICATION)) {
                         tree.removeMBeanFromView(mbean);
+                        knownMBeans.remove(mbean);
+                        vmPanel.getProxyClient(false).getMBeanInfoCache().
+                            invalidate(mbean);
                     }
                 }
             }
@@ -354,12 +480,12 @@ public class MBeansTab extends Tab implements
     public void treeWillExpand(TreeExpansionEvent e)
             throws ExpandVetoException {
         TreePath path = e.getPath();
-        if (!getTree().hasBeenExpanded(path)) {
-            DefaultMutableTreeNode node =
-                    (DefaultMutableTreeNode) path.getLastPathComponent();
-            if (sheet.isMBeanNode(node) && !getTree().hasMetadataNodes(node)) {
-            	getTree().addMetadataNodes(node);
-            }
+        // Also when expanded before, as its metadata request may have
+        // been cancelled
+        DefaultMutableTreeNode node =
+                (DefaultMutableTreeNode) path.getLastPathComponent();
+        if (sheet.isMBeanNode(node) && !getTree().hasMetadataNodes(node)) {
+            getTree().addMetadataNodes(node);
         }
     }
 
@@ -472,27 +598,35 @@ public class MBeansTab extends Tab implements
 		}
 	}
 
-	boolean updatePendingForFilter = false;
 	private Collection<DefaultMutableTreeNode> mxbeanNodes;
 	private JPanel treePanel;
 
+	// Restarted by each keystroke, filters once typing pauses for 500 ms
+	private Timer filterTimer;
+
+	// Called on the EDT
 	protected void updateFilter() {
-		updatePendingForFilter = true;
-		workerAdd(new Runnable() {
-			@Override
-			public void run() {
-				if (updatePendingForFilter) {
-					updateLabel("Filtering...");
-					try {
-						Thread.sleep(500);
-					} catch (InterruptedException e) {
-					}
+		if (filterTimer == null) {
+			filterTimer = new Timer(500, new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					filter(filterTF.getText());
 				}
-				updatePendingForFilter = false;
+			});
+			filterTimer.setRepeats(false);
+		}
+		operationLabel.setText("Filtering...");
+		filterTimer.restart();
+	}
 
-				String filterText = filterTF.getText();
+	private void filter(final String filterText) {
+		// Keyed, so that a new filter supersedes the filtering still
+		// pending or running for the previous one
+		workerAdd("filter", new Worker.Job() {
+			@Override
+			public void run() {
 				if (filterText.isEmpty()) {
 					// Filter cleared, no reason to run.
+					updateLabel("");
 					return;
 				}
 
@@ -509,6 +643,9 @@ public class MBeansTab extends Tab implements
 						filteredMBeans.add(data);
 					}
 				}
+				if (isCancelled()) {
+					return;
+				}
 				
 
 				filteredTree.removeAll();
@@ -31,6 +31,7 @@ import java.io.*;
 import java.lang.management.*;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.List;
 import java.util.concurrent.*;
 
 import javax.accessibility.*;
@@ -191,6 +192,10 @@ class MemoryTab extends Tab implements ActionListener, ItemListener {
         nonHeapPlotter.createSequence(committedKey, committedName, committedColor, false);
         nonHeapPlotter.createSequence(maxKey,       maxName,       maxColor,       false);
 
+        PlotHistory plotHistory = vmPanel.getPlotHistory();
+        heapPlotter.setHistory(plotHistory, "memory.heap");
+        nonHeapPlotter.setHistory(plotHistory, "memory.nonheap");
+
         plotterList.add(heapPlotter);
         plotterList.add(nonHeapPlotter);
 
@@ -213,6 +218,7 @@ class MemoryTab extends Tab implements ActionListener, ItemListener {
                     isHeap = MemoryType.HEAP.name().equals(((Attribute)al.get(0)).getValue());
                 }
                 PoolPlotter poolPlotter = new PoolPlotter(objectName, name, isHeap);
+                setAccessibleName(poolPlotter, name);
                 proxyClient.addWeakPropertyChangeListener(poolPlotter);
 
                 poolPlotter.createSequence(usedKey,      usedName,      usedColor,      true);
@@ -220,6 +226,8 @@ class MemoryTab extends Tab implements ActionListener, ItemListener {
                 poolPlotter.createSequence(maxKey,       maxName,       maxColor,       false);
                 poolPlotter.createSequence(thresholdKey, thresholdName, thresholdColor, false);
                 poolPlotter.setUseDashedTransitions(thresholdKey, true);
+                poolPlotter.setHistory(plotHistory,
+                                       "memory." + objectName.getCanonicalName());
 
                 if (isHeap) {
                     plotterList.add(poolPlotter);
@@ -280,6 +288,7 @@ class MemoryTab extends Tab implements ActionListener, ItemListener {
                     initialRun = true;
                 }
 
+                PlatformSnapshot snapshot = proxyClient.getPlatformSnapshot();
                 int n = plotterList.size();
                 used      = new long[n];
                 committed = new long[n];
@@ -298,21 +307,14 @@ class MemoryTab extends Tab implements ActionListener, ItemListener {
                         if (plotter instanceof PoolPlotter) {
                             PoolPlotter poolPlotter = (PoolPlotter)plotter;
                             ObjectName objectName = poolPlotter.objectName;
-                            AttributeList al =
-                                proxyClient.getAttributes(objectName,
-                                                          new String[] { "Usage", "UsageThreshold" });
-                            if (al.size() > 0) {
-                                CompositeData cd = (CompositeData)((Attribute)al.get(0)).getValue();
-                                mu = MemoryUsage.from(cd);
-
-                                if (al.size() > 1) {
-                                    threshold[i] = (Long)((Attribute)al.get(1)).getValue();
-                                }
-                            }
+                            PlatformSnapshot.MemoryPool pool =
+                                snapshot.getMemoryPool(poolPlotter.objectName);
+                            mu = pool.getUsage();
+                            threshold[i] = pool.getUsageThreshold();
                         } else if (plotter == heapPlotter) {
-                            mu = proxyClient.getMemoryMXBean().getHeapMemoryUsage();
+                            mu = snapshot.getHeapMemoryUsage();
                         } else if (plotter == nonHeapPlotter) {
-                            mu = proxyClient.getMemoryMXBean().getNonHeapMemoryUsage();
+                            mu = snapshot.getNonHeapMemoryUsage();
                         }
                     } catch (UndeclaredThrowableException e) {
                         proxyClient.markAsDead();
@@ -419,14 +421,12 @@ class MemoryTab extends Tab implements ActionListener, ItemListener {
         }
 
         try {
-            Collection<GarbageCollectorMXBean> garbageCollectors =
-                proxyClient.getGarbageCollectorMXBeans();
-
             boolean descPrinted = false;
-            for (GarbageCollectorMXBean garbageCollectorMBean : garbageCollectors) {
-                String gcName = garbageCollectorMBean.getName();
-                long gcCount = garbageCollectorMBean.getCollectionCount();
-                long gcTime = garbageCollectorMBean.getCollectionTime();
+            for (PlatformSnapshot.GarbageCollector gc :
+                     proxyClient.getPlatformSnapshot().getGarbageCollectors()) {
+                String gcName = gc.getName();
+                long gcCount = gc.getCollectionCount();
+                long gcTime = gc.getCollectionTime();
                 String str = getText("GC time details", justify(formatTime(gcTime), 14),
                                      gcName,
                                      String.format("%,d",gcCount));
@@ -758,6 +758,16 @@ class MemoryTab extends Tab implements ActionListener, ItemListener {
     }
 
 
+    @Override
+    List<Plotter> getPlotters() {
+        List<Plotter> plotters = new ArrayList<Plotter>();
+        if (plotterList != null) {
+            plotters.addAll(plotterList);
+        }
+        plotters.addAll(super.getPlotters());
+        return plotters;
+    }
+
     OverviewPanel[] getOverviewPanels() {
         if (overviewPanel == null) {
             overviewPanel = new MemoryOverviewPanel();
@@ -83,14 +83,18 @@ class OverviewTab extends Tab {
             protected void done() {
                 if (gridPanel.getComponentCount() == 0) {
                     final ArrayList<Plotter> plotters = new ArrayList<Plotter>();
+                    final ArrayList<String> names = new ArrayList<String>();
                     for (Tab tab : vmPanel.getTabs()) {
                         OverviewPanel[] ops = tab.getOverviewPanels();
                         if (ops != null) {
-                            for (OverviewPanel op : ops) {
+                            for (int i = 0; i < ops.length; i++) {
+                                OverviewPanel op = ops[i];
                                 gridPanel.add(op);
                                 Plotter plotter = op.getPlotter();
                                 if (plotter != null) {
                                     plotters.add(plotter);
+                                    names.add("overview." +
+                                              tab.getClass().getSimpleName() + "." + i);
                                     timeComboBox.addPlotter(plotter);
                                 }
                             }
@@ -100,8 +104,10 @@ class OverviewTab extends Tab {
                         workerAdd(new Runnable() {
                             public void run() {
                                 ProxyClient proxyClient = vmPanel.getProxyClient();
-                                for (Plotter plotter : plotters) {
-                                    proxyClient.addWeakPropertyChangeListener(plotter);
+                                PlotHistory plotHistory = vmPanel.getPlotHistory();
+                                for (int i = 0; i < plotters.size(); i++) {
+                                    plotters.get(i).setHistory(plotHistory, names.get(i));
+                                    proxyClient.addWeakPropertyChangeListener(plotters.get(i));
                                 }
                             }
                         });
@@ -0,0 +1,562 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sun.tools.jconsole;
+
+import java.io.IOException;
+import java.lang.management.MemoryUsage;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.ObjectName;
+
+import static sun.tools.jconsole.PollPlan.*;
+
+//
+// Platform snapshot:
+//
+// The values of the platform MXBeans (Runtime, Memory, Threading,
+// ClassLoading, Compilation, OperatingSystem, the GarbageCollectors and
+// the MemoryPools) for one update tick, read through the poll plan with a
+// single getAttributes call per MXBean and decoded locally, instead of one
+// remote call per getter of an MXBean proxy.
+//
+// ProxyClient.getPlatformSnapshot() creates a snapshot on the first
+// request of a tick and hands the same instance to every tab asking for it
+// during that tick. The values of each MXBean are read on the first get of
+// one of them and kept, so a tab only pays for the MXBeans it reads, and
+// the tabs reading the same MXBean in a tick see the same values.
+//
+public class PlatformSnapshot {
+
+    private static final String[] RUNTIME_ATTRIBUTES = {
+        "VmName", "VmVersion", "VmVendor", "Name", "Uptime",
+        "InputArguments", "ClassPath", "LibraryPath",
+        "BootClassPathSupported", "BootClassPath"
+    };
+    private static final String[] COMPILATION_ATTRIBUTES = {
+        "Name", "CompilationTimeMonitoringSupported", "TotalCompilationTime"
+    };
+    private static final String[] THREADING_ATTRIBUTES = {
+        "ThreadCount", "DaemonThreadCount", "PeakThreadCount",
+        "TotalStartedThreadCount", "AllThreadIds"
+    };
+    private static final String[] CLASS_LOADING_ATTRIBUTES = {
+        "LoadedClassCount", "UnloadedClassCount", "TotalLoadedClassCount",
+        "Verbose"
+    };
+    private static final String[] MEMORY_ATTRIBUTES = {
+        "HeapMemoryUsage", "NonHeapMemoryUsage",
+        "ObjectPendingFinalizationCount"
+    };
+    private static final String[] OPERATING_SYSTEM_ATTRIBUTES = {
+        "Name", "Version", "Arch", "AvailableProcessors"
+    };
+    // The com.sun.management.OperatingSystemMXBean extensions
+    private static final String[] SUN_OPERATING_SYSTEM_ATTRIBUTES = {
+        "ProcessCpuTime", "CommittedVirtualMemorySize",
+        "TotalPhysicalMemorySize", "FreePhysicalMemorySize",
+        "TotalSwapSpaceSize", "FreeSwapSpaceSize"
+    };
+    private static final String[] GARBAGE_COLLECTOR_ATTRIBUTES = {
+        "Name", "CollectionCount", "CollectionTime"
+    };
+    private static final String[] MEMORY_POOL_ATTRIBUTES = {
+        "Usage", "UsageThreshold"
+    };
+
+    private final ProxyClient proxyClient;
+    private final PollPlan plan;
+    private final long timeStamp;
+
+    // The values of each MXBean, null until read
+    private volatile RuntimeValues runtime;
+    private volatile CompilationValues compilation;
+    private volatile ThreadingValues threading;
+    private volatile ClassLoadingValues classLoading;
+    private volatile MemoryValues memory;
+    private volatile OperatingSystemValues operatingSystem;
+    private volatile List<GarbageCollector> garbageCollectors;
+    private final ConcurrentMap<ObjectName, MemoryPool> memoryPools =
+        new ConcurrentHashMap<ObjectName, MemoryPool>();
+
+    /**
+     * The values of one GarbageCollector MXBean.
+     */
+    public static class GarbageCollector {
+        private final String name;
+        private final long collectionCount;
+        private final long collectionTime;
+
+        GarbageCollector(String name, long collectionCount,
+                         long collectionTime) {
+            this.name = name;
+            this.collectionCount = collectionCount;
+            this.collectionTime = collectionTime;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCollectionCount() {
+            return collectionCount;
+        }
+
+        public long getCollectionTime() {
+            return collectionTime;
+        }
+    }
+
+    /**
+     * The values of one MemoryPool MXBean.
+     */
+    public static class MemoryPool {
+        private final MemoryUsage usage;
+        private final long usageThreshold;
+
+        MemoryPool(MemoryUsage usage, long usageThreshold) {
+            this.usage = usage;
+            this.usageThreshold = usageThreshold;
+        }
+
+        /**
+         * Returns the usage of the pool, or <tt>null</tt> if the pool is
+         * no longer valid.
+         */
+        public MemoryUsage getUsage() {
+            return usage;
+        }
+
+        /**
+         * Returns the usage threshold, or -1 if the pool does not support
+         * one.
+         */
+        public long getUsageThreshold() {
+            return usageThreshold;
+        }
+    }
+
+    private static class RuntimeValues {
+        String vmName;
+        String vmVersion;
+        String vmVendor;
+        String name;
+        long uptime;
+        List<String> inputArguments;
+        String classPath;
+        String libraryPath;
+        boolean bootClassPathSupported;
+        String bootClassPath;
+    }
+
+    // compilerName is null if there is no compilation MXBean
+    private static class CompilationValues {
+        String compilerName;
+        boolean compilationTimeMonitoringSupported;
+        long totalCompilationTime = -1L;
+    }
+
+    private static class ThreadingValues {
+        int threadCount;
+        int daemonThreadCount;
+        int peakThreadCount;
+        long totalStartedThreadCount;
+        long[] allThreadIds;
+    }
+
+    private static class ClassLoadingValues {
+        long loadedClassCount;
+        long unloadedClassCount;
+        long totalLoadedClassCount;
+        boolean verbose;
+    }
+
+    private static class MemoryValues {
+        MemoryUsage heapMemoryUsage;
+        MemoryUsage nonHeapMemoryUsage;
+        int objectPendingFinalizationCount;
+    }
+
+    // The com.sun.management extensions are -1 if the MXBean does not
+    // implement them
+    private static class OperatingSystemValues {
+        String osName;
+        String osVersion;
+        String osArch;
+        int availableProcessors;
+        boolean sunExtensions;
+        long processCpuTime = -1L;
+        long committedVirtualMemorySize = -1L;
+        long totalPhysicalMemorySize = -1L;
+        long freePhysicalMemorySize = -1L;
+        long totalSwapSpaceSize = -1L;
+        long freeSwapSpaceSize = -1L;
+    }
+
+    /**
+     * Creates the snapshot of the current tick of the poll plan of a
+     * connection.
+     */
+    PlatformSnapshot(ProxyClient proxyClient) {
+        this.proxyClient = proxyClient;
+        plan = proxyClient.getPollPlan();
+        timeStamp = plan.getTimeStamp();
+    }
+
+    private RuntimeValues runtime() throws IOException {
+        RuntimeValues r = runtime;
+        if (r == null) {
+            r = new RuntimeValues();
+            plan.register(RUNTIME, RUNTIME_ATTRIBUTES);
+            r.vmName = getString(RUNTIME, "VmName");
+            r.vmVersion = getString(RUNTIME, "VmVersion");
+            r.vmVendor = getString(RUNTIME, "VmVendor");
+            r.name = getString(RUNTIME, "Name");
+            r.uptime = plan.getLong(RUNTIME, "Uptime", -1L);
+            Object args = plan.getValue(RUNTIME, "InputArguments");
+            r.inputArguments = (args instanceof String[])
+                ? Collections.unmodifiableList(Arrays.asList((String[]) args))
+                : Collections.<String>emptyList();
+            r.classPath = getString(RUNTIME, "ClassPath");
+            r.libraryPath = getString(RUNTIME, "LibraryPath");
+            r.bootClassPathSupported =
+                plan.getBoolean(RUNTIME, "BootClassPathSupported", false);
+            r.bootClassPath = r.bootClassPathSupported
+                ? getString(RUNTIME, "BootClassPath") : null;
+            runtime = r;
+        }
+        return r;
+    }
+
+    private CompilationValues compilation() throws IOException {
+        CompilationValues c = compilation;
+        if (c == null) {
+            c = new CompilationValues();
+            if (proxyClient.hasCompilationMXBean()) {
+                plan.register(COMPILATION, COMPILATION_ATTRIBUTES);
+                c.compilerName = getString(COMPILATION, "Name");
+                c.compilationTimeMonitoringSupported = plan.getBoolean(
+                    COMPILATION, "CompilationTimeMonitoringSupported", false);
+                if (c.compilationTimeMonitoringSupported) {
+                    c.totalCompilationTime =
+                        plan.getLong(COMPILATION, "TotalCompilationTime", -1L);
+                }
+            }
+            compilation = c;
+        }
+        return c;
+    }
+
+    private ThreadingValues threading() throws IOException {
+        ThreadingValues t = threading;
+        if (t == null) {
+            t = new ThreadingValues();
+            plan.register(THREADING, THREADING_ATTRIBUTES);
+            t.threadCount = plan.getInt(THREADING, "ThreadCount", 0);
+            t.daemonThreadCount = plan.getInt(THREADING, "DaemonThreadCount", 0);
+            t.peakThreadCount = plan.getInt(THREADING, "PeakThreadCount", 0);
+            t.totalStartedThreadCount =
+                plan.getLong(THREADING, "TotalStartedThreadCount", 0L);
+            t.allThreadIds = plan.getLongArray(THREADING, "AllThreadIds");
+            threading = t;
+        }
+        return t;
+    }
+
+    private ClassLoadingValues classLoading() throws IOException {
+        ClassLoadingValues c = classLoading;
+        if (c == null) {
+            c = new ClassLoadingValues();
+            plan.register(CLASS_LOADING, CLASS_LOADING_ATTRIBUTES);
+            c.loadedClassCount =
+                plan.getLong(CLASS_LOADING, "LoadedClassCount", 0L);
+            c.unloadedClassCount =
+                plan.getLong(CLASS_LOADING, "UnloadedClassCount", 0L);
+            c.totalLoadedClassCount =
+                plan.getLong(CLASS_LOADING, "TotalLoadedClassCount", 0L);
+            c.verbose = plan.getBoolean(CLASS_LOADING, "Verbose", false);
+            classLoading = c;
+        }
+        return c;
+    }
+
+    private MemoryValues memory() throws IOException {
+        MemoryValues m = memory;
+        if (m == null) {
+            m = new MemoryValues();
+            plan.register(MEMORY, MEMORY_ATTRIBUTES);
+            m.heapMemoryUsage = plan.getMemoryUsage(MEMORY, "HeapMemoryUsage");
+            m.nonHeapMemoryUsage =
+                plan.getMemoryUsage(MEMORY, "NonHeapMemoryUsage");
+            m.objectPendingFinalizationCount =
+                plan.getInt(MEMORY, "ObjectPendingFinalizationCount", 0);
+            memory = m;
+        }
+        return m;
+    }
+
+    private OperatingSystemValues operatingSystem() throws IOException {
+        OperatingSystemValues o = operatingSystem;
+        if (o == null) {
+            o = new OperatingSystemValues();
+            plan.register(OPERATING_SYSTEM, OPERATING_SYSTEM_ATTRIBUTES);
+            o.sunExtensions = proxyClient.hasSunOperatingSystemMXBean();
+            if (o.sunExtensions) {
+                plan.register(OPERATING_SYSTEM, SUN_OPERATING_SYSTEM_ATTRIBUTES);
+            }
+            o.osName = getString(OPERATING_SYSTEM, "Name");
+            o.osVersion = getString(OPERATING_SYSTEM, "Version");
+            o.osArch = getString(OPERATING_SYSTEM, "Arch");
+            o.availableProcessors =
+                plan.getInt(OPERATING_SYSTEM, "AvailableProcessors", 1);
+            if (o.sunExtensions) {
+                o.processCpuTime =
+                    plan.getLong(OPERATING_SYSTEM, "ProcessCpuTime", -1L);
+                o.committedVirtualMemorySize = plan.getLong(
+                    OPERATING_SYSTEM, "CommittedVirtualMemorySize", -1L);
+                o.totalPhysicalMemorySize = plan.getLong(
+                    OPERATING_SYSTEM, "TotalPhysicalMemorySize", -1L);
+                o.freePhysicalMemorySize = plan.getLong(
+                    OPERATING_SYSTEM, "FreePhysicalMemorySize", -1L);
+                o.totalSwapSpaceSize =
+                    plan.getLong(OPERATING_SYSTEM, "TotalSwapSpaceSize", -1L);
+                o.freeSwapSpaceSize =
+                    plan.getLong(OPERATING_SYSTEM, "FreeSwapSpaceSize", -1L);
+            }
+            operatingSystem = o;
+        }
+        return o;
+    }
+
+    private String getString(ObjectName name, String attribute)
+            throws IOException {
+        Object value = plan.getValue(name, attribute);
+        return (value != null) ? value.toString() : null;
+    }
+
+    /**
+     * Returns the time at which the tick of this snapshot started.
+     */
+    public long getTimeStamp() {
+        return timeStamp;
+    }
+
+    public String getVmName() throws IOException {
+        return runtime().vmName;
+    }
+
+    public String getVmVersion() throws IOException {
+        return runtime().vmVersion;
+    }
+
+    public String getVmVendor() throws IOException {
+        return runtime().vmVendor;
+    }
+
+    public String getName() throws IOException {
+        return runtime().name;
+    }
+
+    public long getUptime() throws IOException {
+        return runtime().uptime;
+    }
+
+    public List<String> getInputArguments() throws IOException {
+        return runtime().inputArguments;
+    }
+
+    public String getClassPath() throws IOException {
+        return runtime().classPath;
+    }
+
+    public String getLibraryPath() throws IOException {
+        return runtime().libraryPath;
+    }
+
+    public boolean isBootClassPathSupported() throws IOException {
+        return runtime().bootClassPathSupported;
+    }
+
+    public String getBootClassPath() throws IOException {
+        return runtime().bootClassPath;
+    }
+
+    /**
+     * Returns the name of the JIT compiler, or <tt>null</tt> if the VM has
+     * no compilation MXBean.
+     */
+    public String getCompilerName() throws IOException {
+        return compilation().compilerName;
+    }
+
+    public boolean isCompilationTimeMonitoringSupported() throws IOException {
+        return compilation().compilationTimeMonitoringSupported;
+    }
+
+    public long getTotalCompilationTime() throws IOException {
+        return compilation().totalCompilationTime;
+    }
+
+    public int getThreadCount() throws IOException {
+        return threading().threadCount;
+    }
+
+    public int getDaemonThreadCount() throws IOException {
+        return threading().daemonThreadCount;
+    }
+
+    public int getPeakThreadCount() throws IOException {
+        return threading().peakThreadCount;
+    }
+
+    public long getTotalStartedThreadCount() throws IOException {
+        return threading().totalStartedThreadCount;
+    }
+
+    /**
+     * Returns the ids of the live threads, or <tt>null</tt> if the MXBean
+     * did not return them. The array is shared and must not be modified.
+     */
+    public long[] getAllThreadIds() throws IOException {
+        return threading().allThreadIds;
+    }
+
+    public long getLoadedClassCount() throws IOException {
+        return classLoading().loadedClassCount;
+    }
+
+    public long getUnloadedClassCount() throws IOException {
+        return classLoading().unloadedClassCount;
+    }
+
+    public long getTotalLoadedClassCount() throws IOException {
+        return classLoading().totalLoadedClassCount;
+    }
+
+    public boolean isClassLoadingVerbose() throws IOException {
+        return classLoading().verbose;
+    }
+
+    public MemoryUsage getHeapMemoryUsage() throws IOException {
+        return memory().heapMemoryUsage;
+    }
+
+    public MemoryUsage getNonHeapMemoryUsage() throws IOException {
+        return memory().nonHeapMemoryUsage;
+    }
+
+    public int getObjectPendingFinalizationCount() throws IOException {
+        return memory().objectPendingFinalizationCount;
+    }
+
+    public String getOsName() throws IOException {
+        return operatingSystem().osName;
+    }
+
+    public String getOsVersion() throws IOException {
+        return operatingSystem().osVersion;
+    }
+
+    public String getOsArch() throws IOException {
+        return operatingSystem().osArch;
+    }
+
+    public int getAvailableProcessors() throws IOException {
+        return operatingSystem().availableProcessors;
+    }
+
+    /**
+     * Returns whether the operating system MXBean implements the
+     * com.sun.management extensions.
+     */
+    public boolean hasSunOperatingSystemMXBean() throws IOException {
+        return operatingSystem().sunExtensions;
+    }
+
+    /**
+     * Returns the CPU time of the VM process in nanoseconds, or -1 if
+     * unknown.
+     */
+    public long getProcessCpuTime() throws IOException {
+        return operatingSystem().processCpuTime;
+    }
+
+    public long getCommittedVirtualMemorySize() throws IOException {
+        return operatingSystem().committedVirtualMemorySize;
+    }
+
+    public long getTotalPhysicalMemorySize() throws IOException {
+        return operatingSystem().totalPhysicalMemorySize;
+    }
+
+    public long getFreePhysicalMemorySize() throws IOException {
+        return operatingSystem().freePhysicalMemorySize;
+    }
+
+    public long getTotalSwapSpaceSize() throws IOException {
+        return operatingSystem().totalSwapSpaceSize;
+    }
+
+    public long getFreeSwapSpaceSize() throws IOException {
+        return operatingSystem().freeSwapSpaceSize;
+    }
+
+    public List<GarbageCollector> getGarbageCollectors() throws IOException {
+        List<GarbageCollector> gcs = garbageCollectors;
+        if (gcs == null) {
+            Collection<ObjectName> gcNames =
+                proxyClient.getGarbageCollectorObjectNames();
+            gcs = new ArrayList<GarbageCollector>(gcNames.size());
+            for (ObjectName gcName : gcNames) {
+                plan.register(gcName, GARBAGE_COLLECTOR_ATTRIBUTES);
+                String gc = getString(gcName, "Name");
+                gcs.add(new GarbageCollector(
+                    (gc != null) ? gc : gcName.getKeyProperty("name"),
+                    plan.getLong(gcName, "CollectionCount", -1L),
+                    plan.getLong(gcName, "CollectionTime", -1L)));
+            }
+            gcs = Collections.unmodifiableList(gcs);
+            garbageCollectors = gcs;
+        }
+        return gcs;
+    }
+
+    /**
+     * Returns the values of the MemoryPool MXBean of the given name.
+     */
+    public MemoryPool getMemoryPool(ObjectName poolName) throws IOException {
+        MemoryPool pool = memoryPools.get(poolName);
+        if (pool == null) {
+            plan.register(poolName, MEMORY_POOL_ATTRIBUTES);
+            MemoryUsage usage = plan.getMemoryUsage(poolName, "Usage");
+            pool = new MemoryPool(usage, (usage != null)
+                ? plan.getLong(poolName, "UsageThreshold", -1L) : -1L);
+            memoryPools.put(poolName, pool);
+        }
+        return pool;
+    }
+}
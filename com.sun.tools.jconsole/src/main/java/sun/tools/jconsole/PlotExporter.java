@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package sun.tools.jconsole;
+
+import java.awt.Component;
+import java.beans.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.*;
+
+import static sun.tools.jconsole.Resources.*;
+
+//
+// Plot exporter:
+//
+// Writes the data of one or more charts to a file on a background thread,
+// with a progress monitor that can cancel it. The samples are read from
+// the plotters in chunks and written through one buffer, without
+// formatting them as strings, so that long histories export quickly and
+// without freezing the UI.
+//
+// - CSV files have a header line and one line per sample, the time as an
+//   Excel date. With more than one chart, each chart is a section starting
+//   with a line holding the chart name, and sections are separated by an
+//   empty line. Gaps are left empty.
+//
+// - Binary files (BINARY_EXTENSION) start with the bytes "JCPL" and a
+//   format version byte, 1, followed by the number of charts. Each chart
+//   has its name, its number of decimals, its number of sequences and
+//   their names, followed by blocks of samples. A block starts with its
+//   number of samples, a block of 0 samples ends the chart. A sample is
+//   the difference of its time with the previous time of the chart, in
+//   milliseconds since the epoch, followed by the difference of each value
+//   with the previous value of its sequence, differences being computed
+//   modulo 2^64 from 0. Gaps are Long.MIN_VALUE. Numbers are zigzag
+//   encoded variable length integers, 7 bits per byte, least significant
+//   bits first, and strings are their UTF-8 length followed by their
+//   UTF-8 bytes.
+//
+public class PlotExporter extends SwingWorker<Void, Void> {
+
+    public static final String BINARY_EXTENSION = "jcplot";
+
+    private static final int CHUNK_SIZE = 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long DAY = 24 * 60 * 60 * 1000;
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+        100000000L, 1000000000L, 10000000000L, 100000000000L,
+        1000000000000L, 10000000000000L, 100000000000000L,
+        1000000000000000L, 10000000000000000L, 100000000000000000L,
+        1000000000000000000L
+    };
+
+    private final Component parent;
+    private final List<Plotter> plotters;
+    private final String[] names;
+    private final File file;
+    private final boolean binary;
+    private final ProgressMonitor monitor;
+
+    private FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] digits = new byte[20];
+    private long excelEpoch;
+    private TimeZone timeZone;
+
+    /**
+     * Writes the data of charts to a file, as binary data if the file name
+     * ends with BINARY_EXTENSION, as CSV otherwise. Call on the EDT.
+     */
+    public static void export(Component parent, List<Plotter> plotters, File file) {
+        new PlotExporter(parent, plotters, file).execute();
+    }
+
+    private PlotExporter(Component parent, List<Plotter> plotters, File file) {
+        this.parent = parent;
+        this.plotters = new ArrayList<Plotter>(plotters);
+        this.file = file;
+        this.binary = file.getName().toLowerCase(Locale.ENGLISH).
+            endsWith("." + BINARY_EXTENSION);
+        names = new String[plotters.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = plotters.get(i).getChartName();
+        }
+        monitor = new ProgressMonitor(parent,
+                                      getText("PlotExporter.message",
+                                              file.getAbsolutePath()),
+                                      null, 0, 100);
+        addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent ev) {
+                if ("progress".equals(ev.getPropertyName())) {
+                    monitor.setProgress((Integer)ev.getNewValue());
+                    if (monitor.isCanceled()) {
+                        cancel(false);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    protected Void doInBackground() throws IOException {
+        long total = 0;
+        for (Plotter plotter : plotters) {
+            total += plotter.getExportSize();
+        }
+        long written = 0;
+
+        Calendar cal = new GregorianCalendar(1899, 11, 30);
+        excelEpoch = cal.getTimeInMillis();
+        timeZone = cal.getTimeZone();
+
+        FileOutputStream out = new FileOutputStream(file);
+        channel = out.getChannel();
+        try {
+            if (binary) {
+                buffer.put(new byte[] { 'J', 'C', 'P', 'L', 1 });
+                putVarLong(plotters.size());
+            }
+            long[] times = new long[CHUNK_SIZE];
+            for (int p = 0; p < plotters.size(); p++) {
+                Plotter plotter = plotters.get(p);
+                String[] sequences = plotter.getSequenceNames();
+                int decimals = plotter.getDecimals();
+                long[][] values = new long[sequences.length][CHUNK_SIZE];
+                long[] previous = new long[sequences.length + 1];
+                writeHeader(p, sequences, decimals);
+
+                long since = Long.MIN_VALUE;
+                int n;
+                while ((n = plotter.readExportSamples(since, times, values)) > 0) {
+                    if (isCancelled()) {
+                        return null;
+                    }
+                    if (binary) {
+                        writeBinary(times, values, n, previous);
+                    } else {
+                        writeCSV(times, values, n, decimals);
+                    }
+                    since = times[n - 1] + 1;
+                    written += n;
+                    setProgress((int)(100 * Math.min(written, total) /
+                                      Math.max(total, 1)));
+                }
+                if (binary) {
+                    putVarLong(0);
+                }
+            }
+            flush();
+        } finally {
+            out.close();
+            if (isCancelled()) {
+                file.delete();
+            }
+        }
+        return null;
+    }
+
+    private void writeHeader(int p, String[] sequences, int decimals)
+            throws IOException {
+        if (binary) {
+            putString(names[p]);
+            putVarLong(decimals);
+            putVarLong(sequences.length);
+            for (String s : sequences) {
+                putString(s);
+            }
+        } else {
+            if (p > 0) {
+                putString("\n");
+            }
+            if (plotters.size() > 1) {
+                putString(names[p] + "\n");
+            }
+            putString("Time");
+            for (String s : sequences) {
+                putString("," + s);
+            }
+            putString("\n");
+        }
+    }
+
+    private void writeCSV(long[] times, long[][] values, int n, int decimals)
+            throws IOException {
+        // At most 20 digits, a sign and a decimal point per number
+        int lineLength = 23 * (values.length + 1);
+        for (int i = 0; i < n; i++) {
+            if (buffer.remaining() < lineLength) {
+                flush();
+            }
+            putExcelTime(times[i]);
+            for (long[] v : values) {
+                buffer.put((byte)',');
+                // Gaps are left empty
+                if (v[i] != Long.MIN_VALUE) {
+                    putDecimal(v[i], decimals);
+                }
+            }
+            buffer.put((byte)'\n');
+        }
+    }
+
+    private void writeBinary(long[] times, long[][] values, int n, long[] previous)
+            throws IOException {
+        putVarLong(n);
+        // At most 10 bytes per number
+        int sampleLength = 10 * (values.length + 1);
+        for (int i = 0; i < n; i++) {
+            if (buffer.remaining() < sampleLength) {
+                flush();
+            }
+            putVarLong(times[i] - previous[0]);
+            previous[0] = times[i];
+            for (int j = 0; j < values.length; j++) {
+                putVarLong(values[j][i] - previous[j + 1]);
+                previous[j + 1] = values[j][i];
+            }
+        }
+    }
+
+    // Same as Formatter.toExcelTime with 6 decimals, without allocating
+    private void putExcelTime(long time) {
+        long millis = time - excelEpoch;
+        // Adjust for the fact that now may be DST but then wasn't
+        int dst = timeZone.getOffset(time) - timeZone.getRawOffset();
+        if (dst > 0) {
+            millis += dst;
+        }
+        // Millionths of a day, rounded
+        long micros = (millis * 5 + 216) / 432;
+        putDecimal(micros, 6);
+    }
+
+    // Puts v / 10^decimals with the given number of decimals
+    private void putDecimal(long v, int decimals) {
+        if (decimals <= 0 || decimals >= POWERS_OF_TEN.length) {
+            putLong(v);
+            return;
+        }
+        long integer = v / POWERS_OF_TEN[decimals];
+        long fraction = Math.abs(v % POWERS_OF_TEN[decimals]);
+        if (v < 0 && integer == 0) {
+            buffer.put((byte)'-');
+        }
+        putLong(integer);
+        buffer.put((byte)'.');
+        int i = digits.length;
+        for (int k = 0; k < decimals; k++) {
+            digits[--i] = (byte)('0' + fraction % 10);
+            fraction /= 10;
+        }
+        buffer.put(digits, i, decimals);
+    }
+
+    private void putLong(long v) {
+        if (v == Long.MIN_VALUE) {
+            putAscii(Long.toString(v));
+            return;
+        }
+        if (v < 0) {
+            buffer.put((byte)'-');
+            v = -v;
+        }
+        int i = digits.length;
+        do {
+            digits[--i] = (byte)('0' + v % 10);
+            v /= 10;
+        } while (v > 0);
+        buffer.put(digits, i, digits.length - i);
+    }
+
+    private void putAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            buffer.put((byte)s.charAt(i));
+        }
+    }
+
+    // Zigzag encoded, 7 bits per byte
+    private void putVarLong(long v) throws IOException {
+        if (buffer.remaining() < 10) {
+            flush();
+        }
+        long u = (v << 1) ^ (v >> 63);
+        while ((u & ~0x7FL) != 0) {
+            buffer.put((byte)((u & 0x7F) | 0x80));
+            u >>>= 7;
+        }
+        buffer.put((byte)u);
+    }
+
+    // As its UTF-8 length and bytes in binary files, as is in CSV files
+    private void putString(String s) throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        if (binary) {
+            putVarLong(bytes.length);
+        }
+        int off = 0;
+        while (off < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int n = Math.min(bytes.length - off, buffer.remaining());
+            buffer.put(bytes, off, n);
+            off += n;
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    protected void done() {
+        monitor.close();
+        if (isCancelled()) {
+            return;
+        }
+        try {
+            get();
+            JOptionPane.showMessageDialog(parent,
+                                          getText("FileChooser.savedFile",
+                                                  file.getAbsolutePath(),
+                                                  file.length()));
+        } catch (InterruptedException ex) {
+        } catch (ExecutionException ex) {
+            String msg = ex.getCause().getLocalizedMessage();
+            String path = file.getAbsolutePath();
+            if (msg != null && msg.startsWith(path)) {
+                msg = msg.substring(path.length()).trim();
+            }
+            JOptionPane.showMessageDialog(parent,
+                                          getText("FileChooser.saveFailed.message",
+                                                  path, msg),
+                                          getText("FileChooser.saveFailed.title"),
+                                          JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
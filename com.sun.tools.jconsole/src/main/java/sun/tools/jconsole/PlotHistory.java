@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sun.tools.jconsole;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.*;
+
+import andrask.sun.tools.jconsole.Settings;
+
+//
+// Plot history:
+//
+// The full resolution samples of the plotters of a connection, kept on
+// disk so that long captures cost almost no heap and survive a restart of
+// the console. It is disabled unless myjconsole.plotter.history.segments
+// is set.
+//
+// - Each plotter has a directory per connection name and plotter name,
+//   under ~/.myjconsole/history. Names are escaped, not hashed, so that
+//   different names never share files.
+//
+// - A series directory is locked by the Series writing to it. A plotter
+//   whose directory is locked, by another window on the same connection
+//   or another console, keeps its samples in memory only.
+//
+// - Samples are appended to segments of SEGMENT_SIZE samples, with one
+//   memory-mapped file per column: "t.<segment>" for the time stamps and
+//   "v<escaped key>.<segment>" for each sequence. A file starts with the
+//   number of samples written to the segment, followed by the samples as
+//   longs. Only the time stamp files have their sample count updated,
+//   after the values of the sample are written. Value files are created
+//   filled with Long.MIN_VALUE, so that a sequence added later has gaps
+//   in the older segments.
+//
+// - The oldest segments are deleted beyond myjconsole.plotter.history.segments
+//   segments per plotter.
+//
+// - A Series has a single writer, readers read immutable Views of it. A
+//   View keeps the segments it refers to mapped, even once deleted.
+//   Closing a Series releases its lock and its references to the
+//   segments, which are unmapped once no View refers to them either.
+//
+public class PlotHistory {
+
+    static final int SEGMENT_SIZE = 65536;
+
+    private static final File DIRECTORY = new File(
+        System.getProperty("user.home") + File.separator + ".myjconsole" +
+        File.separator + "history");
+
+    // Longest escaped name, to stay within the file name limits
+    private static final int MAX_NAME_LENGTH = 200;
+
+    private static int maxSegments = -1;
+
+    private final String connectionName;
+    private final List<Series> opened = new ArrayList<Series>();
+
+    /**
+     * Returns the history of the plotters of a connection, or
+     * <tt>null</tt> if the history is disabled.
+     */
+    static synchronized PlotHistory getInstance(String connectionName) {
+        if (maxSegments < 0) {
+            // Bounded so that sample indices fit in an int
+            maxSegments = Math.min(Math.max(0,
+                Settings.getInt(Settings.KEY_PLOTTER_HISTORY_SEGMENTS, 0)),
+                Integer.MAX_VALUE / SEGMENT_SIZE - 1);
+        }
+        if (maxSegments == 0) {
+            return null;
+        }
+        return new PlotHistory(connectionName);
+    }
+
+    private PlotHistory(String connectionName) {
+        this.connectionName = connectionName;
+    }
+
+    // Letters, digits, '-' and '_' are kept, other characters are written
+    // as %xx, or %uxxxx beyond ASCII
+    private static String escape(String name) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+                (c >= '0' && c <= '9') || c == '-' || c == '_') {
+                sb.append(c);
+            } else if (c < 0x80) {
+                sb.append(String.format("%%%02x", (int)c));
+            } else {
+                sb.append(String.format("%%u%04x", (int)c));
+            }
+        }
+        if (sb.length() > MAX_NAME_LENGTH) {
+            throw new IOException("Name too long for the history: " + name);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Opens the history of a plotter, with one column per sequence key.
+     * Returns <tt>null</tt> if the history of the plotter is already open,
+     * in this console or another one.
+     */
+    public Series open(String name, String[] keys) throws IOException {
+        File dir = new File(new File(DIRECTORY, escape(connectionName)),
+                            escape(name));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        RandomAccessFile lockFile =
+            new RandomAccessFile(new File(dir, "lock"), "rw");
+        FileLock lock = null;
+        try {
+            lock = lockFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by this console
+        } finally {
+            if (lock == null) {
+                lockFile.close();
+            }
+        }
+        if (lock == null) {
+            return null;
+        }
+        Series series;
+        try {
+            series = new Series(dir, keys, lockFile);
+        } catch (IOException e) {
+            lockFile.close();
+            throw e;
+        }
+        synchronized (opened) {
+            opened.add(series);
+        }
+        return series;
+    }
+
+    /**
+     * Closes the series opened so far, called when the plotters of the
+     * connection are disposed.
+     */
+    public void close() {
+        List<Series> series;
+        synchronized (opened) {
+            series = new ArrayList<Series>(opened);
+            opened.clear();
+        }
+        for (Series s : series) {
+            s.close();
+        }
+    }
+
+    /**
+     * The history of one plotter, written by a single thread and closed by
+     * any thread.
+     */
+    public static class Series {
+        private final File directory;
+        // Column file name prefixes, the time stamps first
+        private final String[] columns;
+        // Holds the lock of the directory until closed
+        private final RandomAccessFile lockFile;
+        private boolean closed = false;
+
+        // Mapped segments, oldest first, and the number of the first one.
+        // The array is copied when segments are added or dropped.
+        private MappedByteBuffer[][] segments = new MappedByteBuffer[0][];
+        private long firstSegment = 0;
+        private int size = 0;
+
+        // The last view, null if samples have been appended since
+        private View view = null;
+
+        private Series(File directory, String[] keys, RandomAccessFile lockFile)
+                throws IOException {
+            this.directory = directory;
+            this.lockFile = lockFile;
+            columns = new String[keys.length + 1];
+            columns[0] = "t";
+            for (int i = 0; i < keys.length; i++) {
+                columns[i + 1] = "v" + escape(keys[i]);
+            }
+
+            // The segments kept are the last run of consecutive ones
+            String[] names = directory.list(new FilenameFilter() {
+                public boolean accept(File dir, String name) {
+                    return name.startsWith("t.");
+                }
+            });
+            SortedSet<Long> numbers = new TreeSet<Long>();
+            if (names != null) {
+                for (String name : names) {
+                    try {
+                        numbers.add(Long.parseLong(name.substring(2)));
+                    } catch (NumberFormatException e) {
+                        // Not a segment
+                    }
+                }
+            }
+            if (numbers.isEmpty()) {
+                return;
+            }
+            long last = numbers.last();
+            firstSegment = last;
+            while (numbers.contains(firstSegment - 1)) {
+                firstSegment--;
+            }
+            segments = new MappedByteBuffer[(int)(last - firstSegment + 1)][];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = map(firstSegment + i);
+            }
+            size = (segments.length - 1) * SEGMENT_SIZE +
+                   (int)Math.min(segments[segments.length - 1][0].getLong(0),
+                                 SEGMENT_SIZE);
+        }
+
+        private MappedByteBuffer[] map(long segment) throws IOException {
+            MappedByteBuffer[] buffers = new MappedByteBuffer[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                RandomAccessFile file = new RandomAccessFile(
+                    new File(directory, columns[i] + "." + segment), "rw");
+                try {
+                    boolean created = (file.length() == 0);
+                    buffers[i] = file.getChannel().map(
+                        FileChannel.MapMode.READ_WRITE, 0, 8L * (SEGMENT_SIZE + 1));
+                    if (created && i > 0) {
+                        for (int j = 1; j <= SEGMENT_SIZE; j++) {
+                            buffers[i].putLong(8 * j, Long.MIN_VALUE);
+                        }
+                    }
+                } finally {
+                    file.close();
+                }
+            }
+            return buffers;
+        }
+
+        /**
+         * Releases the lock of the series and its segments, the Views
+         * taken before remain readable.
+         */
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            segments = new MappedByteBuffer[0][];
+            size = 0;
+            view = null;
+            try {
+                // Also releases the lock
+                lockFile.close();
+            } catch (IOException e) {
+                if (JConsole.isDebug()) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        /**
+         * Appends a sample, values of sequences the history does not have
+         * are ignored.
+         */
+        public synchronized void append(long time, long[] values)
+                throws IOException {
+            if (closed) {
+                throw new IOException("History closed");
+            }
+            if (size == segments.length * SEGMENT_SIZE) {
+                MappedByteBuffer[][] s =
+                    Arrays.copyOf(segments, segments.length + 1);
+                s[segments.length] = map(firstSegment + segments.length);
+                int drop = Math.max(0, s.length - maxSegments);
+                for (int i = 0; i < drop; i++) {
+                    // Drop the oldest segment
+                    for (String column : columns) {
+                        new File(directory, column + "." + firstSegment).delete();
+                    }
+                    firstSegment++;
+                    size -= SEGMENT_SIZE;
+                }
+                segments = Arrays.copyOfRange(s, drop, s.length);
+            }
+            MappedByteBuffer[] buffers = segments[size / SEGMENT_SIZE];
+            int offset = 8 * (size % SEGMENT_SIZE + 1);
+            for (int i = 1; i < columns.length; i++) {
+                buffers[i].putLong(offset,
+                                   (i <= values.length) ? values[i - 1] : Long.MIN_VALUE);
+            }
+            buffers[0].putLong(offset, time);
+            buffers[0].putLong(0, size % SEGMENT_SIZE + 1);
+            size++;
+            view = null;
+        }
+
+        /**
+         * Returns an immutable view of the samples appended so far
+         */
+        public synchronized View view() {
+            if (view == null) {
+                view = new View(this);
+            }
+            return view;
+        }
+    }
+
+    /**
+     * The samples of a Series at some point in time. Index 0 is the
+     * oldest sample kept.
+     */
+    public static class View {
+        private final MappedByteBuffer[][] segments;
+        private final int columns;
+        private final boolean truncated;
+        private final int size;
+
+        private View(Series series) {
+            segments = series.segments;
+            columns = series.columns.length;
+            truncated = series.firstSegment > 0;
+            size = series.size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns whether samples have been dropped
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        public long time(int i) {
+            return get(0, i);
+        }
+
+        private long get(int column, int i) {
+            MappedByteBuffer b = segments[i / SEGMENT_SIZE][column];
+            return b.getLong(8 * (i % SEGMENT_SIZE + 1));
+        }
+
+        /**
+         * Reads the time stamps at indices from to to - 1 into dst at off
+         */
+        public void getTimes(int from, int to, long[] dst, int off) {
+            for (int i = from; i < to; i++) {
+                dst[off++] = get(0, i);
+            }
+        }
+
+        /**
+         * Reads the values of a sequence at indices from to to - 1 into dst
+         * at off, Long.MIN_VALUE for a sequence the history does not have.
+         */
+        public void getValues(int sequence, int from, int to,
+                              long[] dst, int off) {
+            if (sequence + 1 >= columns) {
+                Arrays.fill(dst, off, off + to - from, Long.MIN_VALUE);
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                dst[off++] = get(sequence + 1, i);
+            }
+        }
+    }
+}
@@ -27,10 +27,14 @@ package sun.tools.jconsole;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
 import java.beans.*;
 import java.io.*;
-import java.lang.reflect.Array;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.accessibility.*;
 import javax.swing.*;
@@ -40,6 +44,8 @@ import javax.swing.filechooser.FileFilter;
 
 import com.sun.tools.jconsole.JConsoleContext;
 
+import andrask.sun.tools.jconsole.Settings;
+
 import static com.sun.tools.jconsole.JConsoleContext.ConnectionState.*;
 
 import static sun.tools.jconsole.Formatter.*;
@@ -104,14 +110,62 @@ public class Plotter extends JComponent
 
     final static int ARRAY_SIZE_INCREMENT = 4000;
 
+    // Number of raw samples kept per sequence, older samples are only
+    // kept rolled up per minute and per hour
+    private final static int RAW_CAPACITY =
+        Math.max(ARRAY_SIZE_INCREMENT,
+                 Settings.getInt(Settings.KEY_PLOTTER_SAMPLES, 10800));
+
+    // Bucket length and number of buckets of the rollup tiers
+    private final static long[] ROLLUP_RESOLUTIONS = { MINUTE, HOUR };
+    private final static int[] ROLLUP_CAPACITIES = { 7 * 24 * 60, 366 * 24 };
+
+    private final static int HISTORY_TIER = ROLLUP_RESOLUTIONS.length + 1;
+
     private static Stroke dashedStroke;
 
-    private TimeStamps times = new TimeStamps();
-    private ArrayList<Sequence> seqs = new ArrayList<Sequence>();
+    // Kinds of rolled up values
+    private final static int AVG = 0;
+    private final static int MIN = 1;
+    private final static int MAX = 2;
+
+    // Number of elements per block of the min/max indices
+    private final static int BLOCK_SIZE = 64;
+
+    // Number of elements read at a time when updating a decimation
+    private final static int CHUNK_SIZE = 1024;
+
+    // Buffers for the points plotted by paintComponent: time, value and,
+    // for the rollup tiers, the range of the values. Only used on the EDT.
+    private static long[] timeBuf = new long[0];
+    private static long[] valueBuf = new long[0];
+    private static long[] minBuf = new long[0];
+    private static long[] maxBuf = new long[0];
+    private static long[] rangeMinBuf = new long[2 * BLOCK_SIZE];
+    private static long[] rangeMaxBuf = new long[2 * BLOCK_SIZE];
+    private static long[] chunkTimes = new long[CHUNK_SIZE];
+    private static long[] chunkValues = new long[CHUNK_SIZE];
+    private static long[] chunkMins = new long[CHUNK_SIZE];
+    private static long[] chunkMaxs = new long[CHUNK_SIZE];
+
+    // Samples are added by a single writer at a time, holding writeLock,
+    // which publishes a Snapshot after each sample. Readers, such as
+    // painting and exporting, only read the snapshot and never block.
+    //
+    // Tier 0 holds the raw samples, tier r + 1 the buckets of rollups[r]
+    // and HISTORY_TIER the samples kept on disk, if any
+    private final Object writeLock = new Object();
+    private SampleColumn times = new SampleColumn(RAW_CAPACITY, true);
+    private Rollup[] rollups = new Rollup[ROLLUP_RESOLUTIONS.length];
+    private PlotHistory.Series history = null;
+    private long[] lastValues = new long[0];
+    private volatile Snapshot snapshot;
+    private List<Sequence> seqs = new CopyOnWriteArrayList<Sequence>();
     private JPopupMenu popupMenu;
     private JMenu timeRangeMenu;
     private JRadioButtonMenuItem[] menuRBs;
     private JMenuItem saveAsMI;
+    private JMenuItem saveAllMI;
     private JFileChooser saveFC;
 
     private int viewRange = -1; // Minutes (value <= 0 means full range)
@@ -122,6 +176,17 @@ public class Plotter extends JComponent
     private Rectangle r = new Rectangle(1, 1, 1, 1);
     private Font smallFont = null;
 
+    // Cached layers, see paintComponent
+    private BufferedImage staticLayer = null;
+    private Object[] staticKey = null;
+    private BufferedImage dataLayer = null;
+    private Object[] dataKey = null;
+    private long dataT1;
+    private int dataTierSize;
+    private long dataRedrawTime;
+    // Incremented when sequences are added or their style changes
+    private volatile int sequenceVersion = 0;
+
     // Initial margins, may be recalculated as needed
     private int topMargin = 10;
     private int bottomMargin = 45;
@@ -145,6 +210,10 @@ public class Plotter extends JComponent
     // that many places, i.e. multiplied by Math.pow(10.0, decimals).
     public Plotter(Unit unit, int decimals, boolean displayLegend) {
         this.displayLegend = displayLegend;
+        for (int r = 0; r < rollups.length; r++) {
+            rollups[r] = new Rollup(ROLLUP_RESOLUTIONS[r], ROLLUP_CAPACITIES[r]);
+        }
+        publish();
         setUnit(unit);
         setDecimals(decimals);
 
@@ -159,6 +228,30 @@ public class Plotter extends JComponent
             }
         });
 
+        // A hidden chart, such as one on another tab, does not keep its
+        // layers
+        addHierarchyListener(new HierarchyListener() {
+            public void hierarchyChanged(HierarchyEvent e) {
+                if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 &&
+                    !isShowing()) {
+                    dropLayers();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        dropLayers();
+    }
+
+    // Releases the cached layers, they are created again by the next paint
+    private void dropLayers() {
+        staticLayer = null;
+        staticKey = null;
+        dataLayer = null;
+        dataKey = null;
     }
 
     public void setUnit(Unit unit) {
@@ -180,12 +273,22 @@ public class Plotter extends JComponent
         seq.isPlotted = isPlotted;
 
         seqs.add(seq);
+        sequenceVersion++;
     }
 
     public void setUseDashedTransitions(String key, boolean b) {
         Sequence seq = getSequence(key);
         if (seq != null) {
             seq.transitionStroke = b ? getDashedStroke() : null;
+            sequenceVersion++;
+        }
+    }
+
+    public void setSequenceName(String key, String name) {
+        Sequence seq = getSequence(key);
+        if (seq != null) {
+            seq.name = name;
+            sequenceVersion++;
         }
     }
 
@@ -193,20 +296,273 @@ public class Plotter extends JComponent
         Sequence seq = getSequence(key);
         if (seq != null) {
             seq.isPlotted = isPlotted;
+            sequenceVersion++;
         }
     }
 
     // Note: If decimals > 0 then values must be decimally shifted left
     // that many places, i.e. multiplied by Math.pow(10.0, decimals).
-    public synchronized void addValues(long time, long... values) {
+    public void addValues(long time, long... values) {
         assert (values.length == seqs.size());
+        synchronized (writeLock) {
+            addSample(time, values);
+            publish();
+        }
+        RepaintScheduler.getInstance().markDirty(getRepaintTarget());
+    }
+
+    /**
+     * Returns the component to repaint when samples are added, the
+     * plotter itself unless it is painted by another component.
+     */
+    protected JComponent getRepaintTarget() {
+        return this;
+    }
+
+    // Values of Long.MIN_VALUE for all sequences mark a disconnection
+    private void addSample(long time, long[] values) {
+        boolean gap = true;
+        for (long value : values) {
+            if (value != Long.MIN_VALUE) {
+                gap = false;
+                break;
+            }
+        }
         times.add(time);
+        for (int r = 0; r < rollups.length; r++) {
+            boolean newBucket = rollups[r].add(time, gap);
+            for (int i = 0; i < values.length; i++) {
+                seqs.get(i).rollups[r].add(rollups[r], newBucket, values[i]);
+            }
+        }
         for (int i = 0; i < values.length; i++) {
             seqs.get(i).add(values[i]);
         }
+        lastValues = values.clone();
+        if (history != null) {
+            try {
+                history.append(time, values);
+            } catch (IOException e) {
+                // Stop writing to the history, e.g. when the disk is full
+                if (JConsole.isDebug()) {
+                    e.printStackTrace();
+                }
+                history.close();
+                history = null;
+            }
+        }
+    }
+
+    /**
+     * Keeps the samples of this plotter in the history of its connection,
+     * and loads the samples of earlier sessions unless samples have been
+     * added already. Does nothing if the history is disabled or written
+     * by another window. Call once the sequences are created, off the EDT
+     * as loading takes a while.
+     */
+    public void setHistory(PlotHistory plotHistory, String name) {
+        if (plotHistory == null) {
+            return;
+        }
+        String[] keys;
+        synchronized (writeLock) {
+            keys = new String[seqs.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = seqs.get(i).key;
+            }
+        }
+        PlotHistory.Series series;
+        try {
+            series = plotHistory.open(name, keys);
+        } catch (IOException e) {
+            if (JConsole.isDebug()) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        if (series == null) {
+            // Written by another window, the samples stay in memory only
+            return;
+        }
+        synchronized (writeLock) {
+            if (history != null) {
+                series.close();
+                return;
+            }
+            PlotHistory.View view = series.view();
+            int n = view.size();
+            if (times.size() == 0 && n > 0) {
+                // Replay the history, followed by a gap
+                long[] sampleTimes = new long[CHUNK_SIZE];
+                long[][] columns = new long[keys.length][CHUNK_SIZE];
+                long[] values = new long[keys.length];
+                for (int from = 0; from < n; from += CHUNK_SIZE) {
+                    int to = Math.min(n, from + CHUNK_SIZE);
+                    view.getTimes(from, to, sampleTimes, 0);
+                    for (int j = 0; j < keys.length; j++) {
+                        view.getValues(j, from, to, columns[j], 0);
+                    }
+                    for (int i = 0; i < to - from; i++) {
+                        for (int j = 0; j < keys.length; j++) {
+                            values[j] = columns[j][i];
+                        }
+                        addSample(sampleTimes[i], values);
+                    }
+                }
+                history = series;
+                Arrays.fill(values, Long.MIN_VALUE);
+                addSample(System.currentTimeMillis(), values);
+            } else {
+                history = series;
+            }
+            publish();
+        }
         repaint();
     }
 
+    /**
+     * Publishes the samples added so far to the readers. Called by the
+     * writer.
+     */
+    private void publish() {
+        int n = lastValues.length;
+        TierView[] tiers = new TierView[rollups.length + 1];
+        SampleColumn.View[][] values = new SampleColumn.View[n][];
+        BlockIndex.View[] indices = new BlockIndex.View[n];
+        for (int i = 0; i < n; i++) {
+            Sequence seq = seqs.get(i);
+            SampleColumn.View v = seq.values.view();
+            values[i] = new SampleColumn.View[] { v, v, v };
+            indices[i] = seq.index.view();
+        }
+        tiers[0] = new TierView(times.view(), values, indices, false, 0, null);
+        for (int r = 0; r < rollups.length; r++) {
+            values = new SampleColumn.View[n][];
+            indices = new BlockIndex.View[n];
+            long[][] openValues = new long[n][];
+            for (int i = 0; i < n; i++) {
+                RollupValues rv = seqs.get(i).rollups[r];
+                values[i] = new SampleColumn.View[] {
+                    rv.avg.view(), rv.min.view(), rv.max.view()
+                };
+                indices[i] = rv.index.view();
+                openValues[i] = new long[] { rv.openAvg, rv.openMin, rv.openMax };
+            }
+            Rollup rollup = rollups[r];
+            tiers[r + 1] = new TierView(rollup.times.view(), values, indices,
+                                        rollup.isOpen(), rollup.openTime,
+                                        openValues);
+        }
+        snapshot = new Snapshot(tiers,
+                                (history != null) ? history.view() : null,
+                                lastValues);
+    }
+
+    /**
+     * Widens range[0] and range[1], the min and max, to the values of a
+     * sequence at tier indices from to to - 1. Only used on the EDT.
+     */
+    private void getTierRange(Snapshot s, int seq, int tier, int from, int to,
+                              long[] range) {
+        TierView t = s.tiers[tier];
+        if (seq >= t.indices.length) {
+            return;
+        }
+        BlockIndex.View index = t.indices[seq];
+        long first = t.first();
+        // Full blocks come from the index, the rest is scanned. The block
+        // of the last element may not be in the index yet.
+        long blockFrom = (first + from + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        long blockTo = Math.min((first + to) / BLOCK_SIZE, index.end());
+        if (blockFrom < blockTo) {
+            scanTierRange(s, seq, tier, from, (int)(blockFrom * BLOCK_SIZE - first), range);
+            index.getRange(blockFrom, blockTo, range);
+            scanTierRange(s, seq, tier, (int)(blockTo * BLOCK_SIZE - first), to, range);
+        } else {
+            scanTierRange(s, seq, tier, from, to, range);
+        }
+    }
+
+    // Less than 2 * BLOCK_SIZE elements
+    private void scanTierRange(Snapshot s, int seq, int tier, int from, int to,
+                               long[] range) {
+        long[] mins = rangeMaxBuf;
+        s.getTierValues(seq, tier, MAX, from, to, rangeMaxBuf, 0);
+        if (tier > 0) {
+            mins = rangeMinBuf;
+            s.getTierValues(seq, tier, MIN, from, to, rangeMinBuf, 0);
+        }
+        for (int i = 0; i < to - from; i++) {
+            if (rangeMaxBuf[i] != Long.MIN_VALUE) {
+                range[0] = Math.min(range[0], mins[i]);
+                range[1] = Math.max(range[1], rangeMaxBuf[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads the points of a sequence at tier indices from to to - 1 into
+     * the point buffers. Returns the number of points.
+     */
+    private int getPoints(Snapshot s, int seq, int tier, int from, int to) {
+        ensureBufferLength(to - from);
+        s.getTierTimes(tier, from, to, timeBuf, 0);
+        s.getTierValues(seq, tier, AVG, from, to, valueBuf, 0);
+        if (tier > 0) {
+            s.getTierValues(seq, tier, MIN, from, to, minBuf, 0);
+            s.getTierValues(seq, tier, MAX, from, to, maxBuf, 0);
+        }
+        return to - from;
+    }
+
+    /**
+     * Brings the decimation of a sequence up to date, and reads its points
+     * since the given time into the point buffers. Only the elements added
+     * since the last call are read, unless the tier, the column width or
+     * the view start have changed. Returns the number of points.
+     */
+    private int getDecimatedPoints(Snapshot s, int seq, int tier, int from,
+                                   int to, long columnMS, long since) {
+        Decimation d = seqs.get(seq).decimation;
+        long first = s.tiers[tier].first();
+        // The last bucket of a rollup tier may still change
+        int end = (tier > 0) ? to - 1 : to;
+        if (d.tier != tier || d.columnMS != columnMS ||
+            d.since > since || d.next < first) {
+            d.reset(tier, columnMS, since, first + from);
+        }
+        while (d.next < first + end) {
+            int i = (int)(d.next - first);
+            int j = Math.min(end, i + CHUNK_SIZE);
+            s.getTierTimes(tier, i, j, chunkTimes, 0);
+            s.getTierValues(seq, tier, AVG, i, j, chunkValues, 0);
+            long[] mins = chunkValues;
+            long[] maxs = chunkValues;
+            if (tier > 0) {
+                s.getTierValues(seq, tier, MIN, i, j, chunkMins, 0);
+                s.getTierValues(seq, tier, MAX, i, j, chunkMaxs, 0);
+                mins = chunkMins;
+                maxs = chunkMaxs;
+            }
+            for (int k = 0; k < j - i; k++) {
+                d.add(chunkTimes[k], chunkValues[k], mins[k], maxs[k]);
+            }
+            d.next += j - i;
+        }
+        d.dropBefore(since);
+
+        ensureBufferLength(4 * (d.size - d.start) + 1);
+        int n = d.getPoints(timeBuf, valueBuf, minBuf, maxBuf, since);
+        if (end < to) {
+            s.getTierTimes(tier, end, to, timeBuf, n);
+            s.getTierValues(seq, tier, AVG, end, to, valueBuf, n);
+            s.getTierValues(seq, tier, MIN, end, to, minBuf, n);
+            s.getTierValues(seq, tier, MAX, end, to, maxBuf, n);
+            n++;
+        }
+        return n;
+    }
+
     private Sequence getSequence(String key) {
         for (Sequence seq : seqs) {
             if (seq.key.equals(key)) {
@@ -269,6 +625,11 @@ public class Plotter extends JComponent
             saveAsMI.setMnemonic(getMnemonicInt("Plotter.saveAsMenuItem"));
             saveAsMI.addActionListener(this);
             popupMenu.add(saveAsMI);
+
+            saveAllMI = new JMenuItem(getText("Plotter.saveAllMenuItem"));
+            saveAllMI.setMnemonic(getMnemonicInt("Plotter.saveAllMenuItem"));
+            saveAllMI.addActionListener(this);
+            popupMenu.add(saveAllMI);
         }
         return popupMenu;
     }
@@ -276,65 +637,155 @@ public class Plotter extends JComponent
     public void actionPerformed(ActionEvent ev) {
         JComponent src = (JComponent)ev.getSource();
         if (src == saveAsMI) {
-            saveAs();
+            saveAs(false);
+        } else if (src == saveAllMI) {
+            saveAs(true);
         } else {
             int index = timeRangeMenu.getPopupMenu().getComponentIndex(src);
             setViewRange(rangeValues[index]);
         }
     }
 
-    private void saveAs() {
+    private void saveAs(boolean all) {
         if (saveFC == null) {
-            saveFC = new SaveDataFileChooser();
+            saveFC = new SaveDataFileChooser(true);
         }
         int ret = saveFC.showSaveDialog(this);
         if (ret == JFileChooser.APPROVE_OPTION) {
-            saveDataToFile(saveFC.getSelectedFile());
+            List<Plotter> plotters;
+            VMPanel vmPanel =
+                (VMPanel)SwingUtilities.getAncestorOfClass(VMPanel.class, this);
+            if (all && vmPanel != null) {
+                plotters = vmPanel.getPlotters();
+            } else {
+                plotters = Collections.singletonList(this);
+            }
+            PlotExporter.export(this, plotters, saveFC.getSelectedFile());
         }
     }
 
-    private void saveDataToFile(File file) {
-        try {
-            PrintStream out = new PrintStream(new FileOutputStream(file));
-
-            // Print header line
-            out.print("Time");
-            for (Sequence seq : seqs) {
-                out.print(","+seq.name);
-            }
-            out.println();
-
-            // Print data lines
-            if (seqs.size() > 0 && seqs.get(0).size > 0) {
-                for (int i = 0; i < seqs.get(0).size; i++) {
-                    double excelTime = toExcelTime(times.time(i));
-                    out.print(String.format(Locale.ENGLISH, "%.6f", excelTime));
-                    for (Sequence seq : seqs) {
-                        out.print("," + getFormattedValue(seq.value(i), false));
-                    }
-                    out.println();
+    /**
+     * Returns the name of the chart, as set with setAccessibleName.
+     */
+    String getChartName() {
+        return ((AccessiblePlotter)getAccessibleContext()).getChartName();
+    }
+
+    int getDecimals() {
+        return decimals;
+    }
+
+    String[] getSequenceNames() {
+        String[] names = new String[seqs.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = seqs.get(i).name;
+        }
+        return names;
+    }
+
+    // The tiers exported, from the coarsest to the finest: all of the
+    // history if there is one, otherwise the rollup buckets older than
+    // the oldest samples of the finer tiers, see getExportEnd
+    private static int[] getExportTiers(Snapshot s) {
+        if (s.history != null) {
+            return new int[] { HISTORY_TIER };
+        }
+        int[] tiers = new int[s.tiers.length];
+        int n = 0;
+        for (int tier = s.tiers.length - 1; tier >= 0; tier--) {
+            if (tier == 0 || s.isTierTruncated(tier - 1)) {
+                tiers[n++] = tier;
+            }
+        }
+        return Arrays.copyOf(tiers, n);
+    }
+
+    private static long getExportEnd(Snapshot s, int tier) {
+        long end = Long.MAX_VALUE;
+        if (tier != HISTORY_TIER) {
+            for (int t = 0; t < tier; t++) {
+                if (s.getTierSize(t) > 0) {
+                    end = Math.min(end, s.getTierTime(t, 0));
                 }
             }
+        }
+        return end;
+    }
+
+    // Index of the first sample of a tier at or after time, or the size
+    // of the tier if there is none
+    private static int findExportIndex(Snapshot s, int tier, long time) {
+        int n = s.getTierSize(tier);
+        if (n == 0 || s.getTierTime(tier, n - 1) < time) {
+            return n;
+        }
+        return s.findTierIndex(tier, time);
+    }
+
+    /**
+     * Returns the number of samples exported.
+     */
+    int getExportSize() {
+        Snapshot s = snapshot;
+        if (s.getSequenceCount() == 0) {
+            return 0;
+        }
+        int size = 0;
+        for (int tier : getExportTiers(s)) {
+            size += findExportIndex(s, tier, getExportEnd(s, tier));
+        }
+        return size;
+    }
 
-            out.close();
-            JOptionPane.showMessageDialog(this,
-                                          getText("FileChooser.savedFile",
-                                                  file.getAbsolutePath(),
-                                                  file.length()));
-        } catch (IOException ex) {
-            String msg = ex.getLocalizedMessage();
-            String path = file.getAbsolutePath();
-            if (msg.startsWith(path)) {
-                msg = msg.substring(path.length()).trim();
+    /**
+     * Reads the samples exported at or after the given time, up to the
+     * length of times, into times and values, one array per sequence.
+     * Returns the number of samples read, 0 when there are no more. Call
+     * again with the time of the last sample read + 1 for the next ones;
+     * the samples are read by time because older samples may be dropped
+     * in between.
+     */
+    int readExportSamples(long since, long[] times, long[][] values) {
+        Snapshot s = snapshot;
+        if (s.getSequenceCount() == 0) {
+            return 0;
+        }
+        for (int tier : getExportTiers(s)) {
+            long end = getExportEnd(s, tier);
+            if (since >= end) {
+                continue;
+            }
+            int from = findExportIndex(s, tier, since);
+            int to = Math.min(findExportIndex(s, tier, end), from + times.length);
+            if (from < to) {
+                s.getTierTimes(tier, from, to, times, 0);
+                for (int j = 0; j < values.length; j++) {
+                    s.getTierValues(j, tier, AVG, from, to, values[j], 0);
+                }
+                return to - from;
             }
-            JOptionPane.showMessageDialog(this,
-                                          getText("FileChooser.saveFailed.message",
-                                                  path, msg),
-                                          getText("FileChooser.saveFailed.title"),
-                                          JOptionPane.ERROR_MESSAGE);
         }
+        return 0;
     }
 
+    // Painting is done in layers, each cached in an image at the device
+    // resolution:
+    //
+    // - The static layer holds the frame, the background, the value axis
+    //   and the horizontal grid lines. It is rebuilt when the size, the
+    //   scale or the value range changes.
+    //
+    // - The time axis and the vertical grid lines are painted directly.
+    //
+    // - The data layer holds the graphs. The x coordinate of a time is
+    //   derived from its pixel column since the epoch, so when new samples
+    //   arrive the layer is scrolled by a whole number of pixels and only
+    //   the newly arrived segment is drawn. It is redrawn in full when the
+    //   size, the scale, the value range, the view range or the tier
+    //   changes. The full view range grows in steps, not with each sample.
+    //
+    // - The current values and the legend are painted directly.
+    //
     @Override
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
@@ -370,13 +821,6 @@ public class Plotter extends JComponent
                                      getBackground().darker());
         }
 
-        border.paintBorder(this, g, r.x, r.y, r.width, r.height);
-
-        // Fill background color
-        g.setColor(bgColor);
-        g.fillRect(r.x+2, r.y+2, r.width-4, r.height-4);
-        g.setColor(oldColor);
-
         long tMin = Long.MAX_VALUE;
         long tMax = Long.MIN_VALUE;
         long vMin = Long.MAX_VALUE;
@@ -385,29 +829,42 @@ public class Plotter extends JComponent
         int w = getWidth()-rightMargin-leftMargin-10;
         int h = getHeight()-topMargin-bottomMargin;
 
-        if (times.size > 1) {
-            tMin = Math.min(tMin, times.time(0));
-            tMax = Math.max(tMax, times.time(times.size-1));
+        Snapshot s = snapshot;
+        if (s.getTierSize(0) > 1) {
+            tMin = Math.min(tMin, s.getOldestTime());
+            tMax = Math.max(tMax, s.getTierTime(0, s.getTierSize(0)-1));
         }
         long viewRangeMS;
         if (viewRange > 0) {
             viewRangeMS = viewRange * MINUTE;
         } else {
-            // Display full time range, but no less than a minute
-            viewRangeMS = Math.max(tMax - tMin, 1 * MINUTE);
+            // Display full time range, but no less than a minute. It is
+            // rounded up to a multiple of an eighth of its highest power of
+            // two minutes, so that it stays the same for a while as samples
+            // are added and the data layer can be scrolled.
+            long minutes = (Math.max(tMax - tMin, 1 * MINUTE) + MINUTE - 1) / MINUTE;
+            long step = Math.max(Long.highestOneBit(minutes) / 8, 1);
+            viewRangeMS = (minutes + step - 1) / step * step * MINUTE;
         }
 
+        // Use the finest resolution holding the whole view range
+        int tier = s.getTier(tMax - viewRangeMS);
+        int tierSize = s.getTierSize(tier);
+
+        // Find starting point
+        int start = s.findTierIndex(tier, tMax - viewRangeMS);
+
         // Calculate min/max values
-        for (Sequence seq : seqs) {
-            if (seq.size > 0) {
-                for (int i = 0; i < seq.size; i++) {
-                    if (seq.size == 1 || times.time(i) >= tMax - viewRangeMS) {
-                        long val = seq.value(i);
-                        if (val > Long.MIN_VALUE) {
-                            vMax = Math.max(vMax, val);
-                            vMin = Math.min(vMin, val);
-                        }
-                    }
+        long[] range = new long[2];
+        for (int i = 0; i < seqs.size(); i++) {
+            Sequence seq = seqs.get(i);
+            if (s.hasValues(i)) {
+                range[0] = Long.MAX_VALUE;
+                range[1] = Long.MIN_VALUE;
+                getTierRange(s, i, tier, start, tierSize, range);
+                if (range[1] > Long.MIN_VALUE) {
+                    vMax = Math.max(vMax, range[1]);
+                    vMin = Math.min(vMin, range[0]);
                 }
             } else {
                 vMin = 0L;
@@ -429,103 +886,18 @@ public class Plotter extends JComponent
             }
         }
 
+        Graphics2D g2d = (Graphics2D)g;
+        if (w <= 0 || h <= 0 || !paintStaticLayer(g2d, h, vMin, vMax, fg)) {
+            // Too small, or wait for next repaint
+            return;
+        }
 
         g.setColor(fg);
-
-        // Axes
-        // Draw vertical axis
-        int x = leftMargin - 18;
-        int y = topMargin;
         FontMetrics fm = g.getFontMetrics();
 
-        g.drawLine(x,   y,   x,   y+h);
-
-        int n = 5;
-        if ((""+vMax).startsWith("2")) {
-            n = 4;
-        } else if ((""+vMax).startsWith("3")) {
-            n = 6;
-        } else if ((""+vMax).startsWith("4")) {
-            n = 4;
-        } else if ((""+vMax).startsWith("6")) {
-            n = 6;
-        } else if ((""+vMax).startsWith("7")) {
-            n = 7;
-        } else if ((""+vMax).startsWith("8")) {
-            n = 8;
-        } else if ((""+vMax).startsWith("9")) {
-            n = 3;
-        }
-
-        // Ticks
-        ArrayList<Long> tickValues = new ArrayList<Long>();
-        tickValues.add(vMin);
-        for (int i = 0; i < n; i++) {
-            long v = i * vMax / n;
-            if (v > vMin) {
-                tickValues.add(v);
-            }
-        }
-        tickValues.add(vMax);
-        n = tickValues.size();
-
-        String[] tickStrings = new String[n];
-        for (int i = 0; i < n; i++) {
-            long v = tickValues.get(i);
-            tickStrings[i] = getSizeString(v, vMax);
-        }
-
-        // Trim trailing decimal zeroes.
-        if (decimals > 0) {
-            boolean trimLast = true;
-            boolean removedDecimalPoint = false;
-            do {
-                for (String str : tickStrings) {
-                    if (!(str.endsWith("0") || str.endsWith("."))) {
-                        trimLast = false;
-                        break;
-                    }
-                }
-                if (trimLast) {
-                    if (tickStrings[0].endsWith(".")) {
-                        removedDecimalPoint = true;
-                    }
-                    for (int i = 0; i < n; i++) {
-                        String str = tickStrings[i];
-                        tickStrings[i] = str.substring(0, str.length()-1);
-                    }
-                }
-            } while (trimLast && !removedDecimalPoint);
-        }
-
-        // Draw ticks
-        int lastY = Integer.MAX_VALUE;
-        for (int i = 0; i < n; i++) {
-            long v = tickValues.get(i);
-            y = topMargin+h-(int)(h * (v-vMin) / (vMax-vMin));
-            g.drawLine(x-2, y, x+2, y);
-            String s = tickStrings[i];
-            if (unit == Unit.PERCENT) {
-                s += "%";
-            }
-            int sx = x-6-fm.stringWidth(s);
-            if (y < lastY-13) {
-                if (checkLeftMargin(sx)) {
-                    // Wait for next repaint
-                    return;
-                }
-                g.drawString(s, sx, y+4);
-            }
-            // Draw horizontal grid line
-            g.setColor(Color.lightGray);
-            g.drawLine(r.x + 4, y, r.x + r.width - 4, y);
-            g.setColor(fg);
-            lastY = y;
-        }
-
         // Draw horizontal axis
-        x = leftMargin;
-        y = topMargin + h + 15;
+        int x = leftMargin;
+        int y = topMargin + h + 15;
         g.drawLine(x,   y,   x+w, y);
 
         long t1 = tMax;
@@ -559,81 +931,37 @@ public class Plotter extends JComponent
         }
 
         // Plot values
-        int start = 0;
         int nValues = 0;
         int nLists = seqs.size();
-        if (nLists > 0) {
-            nValues = seqs.get(0).size;
+        if (nLists > 0 && s.hasValues(0)) {
+            nValues = tierSize;
         }
         if (nValues == 0) {
             g.setColor(oldColor);
             return;
-        } else {
-            Sequence seq = seqs.get(0);
-            // Find starting point
-            for (int p = 0; p < seq.size; p++) {
-                if (times.time(p) >= tMax - viewRangeMS) {
-                    start = p;
-                    break;
-                }
-            }
         }
 
-        //Optimization: collapse plot of more than four values per pixel
-        int pointsPerPixel = (nValues - start) / w;
-        if (pointsPerPixel < 4) {
-            pointsPerPixel = 1;
+        // With more than four values per pixel, plot the first, min, max
+        // and last values of each pixel column instead. The column width is
+        // rounded up to a power of two, so that the columns stay the same
+        // while the full range grows.
+        long columnMS = 0;
+        if ((nValues - start) / w >= 4) {
+            long minColumnMS = Math.max(viewRangeMS / w, 1);
+            columnMS = Long.highestOneBit(minColumnMS);
+            if (columnMS < minColumnMS) {
+                columnMS <<= 1;
+            }
         }
 
-        // Draw graphs
-        // Loop backwards over sequences because the first needs to be painted on top
-        for (int i = nLists-1; i >= 0; i--) {
-            int x0 = leftMargin;
-            int y0 = topMargin + h + 1;
+        paintDataLayer(g2d, s, tier, start, nValues, columnMS, t1, viewRangeMS,
+                       w, h, vMin, vMax);
 
+        // Current values, as small triangles/arrows
+        for (int i = nLists-1; i >= 0; i--) {
             Sequence seq = seqs.get(i);
-            if (seq.isPlotted && seq.size > 0) {
-                // Paint twice, with white and with color
-                for (int pass = 0; pass < 2; pass++) {
-                    g.setColor((pass == 0) ? Color.white : seq.color);
-                    int x1 = -1;
-                    long v1 = -1;
-                    for (int p = start; p < nValues; p += pointsPerPixel) {
-                        // Make sure we get the last value
-                        if (pointsPerPixel > 1 && p >= nValues - pointsPerPixel) {
-                            p = nValues - 1;
-                        }
-                        int x2 = (int)(w * (times.time(p)-(t1-viewRangeMS)) / viewRangeMS);
-                        long v2 = seq.value(p);
-                        if (v2 >= vMin && v2 <= vMax) {
-                            int y2  = (int)(h * (v2 -vMin) / (vMax-vMin));
-                            if (x1 >= 0 && v1 >= vMin && v1 <= vMax) {
-                                int y1 = (int)(h * (v1-vMin) / (vMax-vMin));
-
-                                if (y1 == y2) {
-                                    // fillrect is much faster
-                                    g.fillRect(x0+x1, y0-y1-pass, x2-x1, 1);
-                                } else {
-                                    Graphics2D g2d = (Graphics2D)g;
-                                    Stroke oldStroke = null;
-                                    if (seq.transitionStroke != null) {
-                                        oldStroke = g2d.getStroke();
-                                        g2d.setStroke(seq.transitionStroke);
-                                    }
-                                    g.drawLine(x0+x1, y0-y1-pass, x0+x2, y0-y2-pass);
-                                    if (oldStroke != null) {
-                                        g2d.setStroke(oldStroke);
-                                    }
-                                }
-                            }
-                        }
-                        x1 = x2;
-                        v1 = v2;
-                    }
-                }
-
-                // Current value
-                long v = seq.value(seq.size - 1);
+            if (seq.isPlotted && s.hasValues(i)) {
+                long v = s.getLastValue(i);
                 if (v >= vMin && v <= vMax) {
                     if (bgIsLight) {
                         g.setColor(seq.color);
@@ -642,7 +970,6 @@ public class Plotter extends JComponent
                     }
                     x = r.x + r.width + 2;
                     y = topMargin+h-(int)(h * (v-vMin) / (vMax-vMin));
-                    // a small triangle/arrow
                     g.fillPolygon(new int[] { x+2, x+6, x+6 },
                                   new int[] { y,   y+3, y-3 },
                                   3);
@@ -655,12 +982,12 @@ public class Plotter extends JComponent
         for (int i = 0; i < nLists; i++) valueStringSlots[i] = -1;
         for (int i = 0; i < nLists; i++) {
             Sequence seq = seqs.get(i);
-            if (seq.isPlotted && seq.size > 0) {
+            if (seq.isPlotted && s.hasValues(i)) {
                 // Draw current value
 
                 // TODO: collapse values if pointsPerPixel >= 4
 
-                long v = seq.value(seq.size - 1);
+                long v = s.getLastValue(i);
                 if (v >= vMin && v <= vMax) {
                     x = r.x + r.width + 2;
                     y = topMargin+h-(int)(h * (v-vMin) / (vMax-vMin));
@@ -700,14 +1027,376 @@ public class Plotter extends JComponent
         g.setColor(oldColor);
     }
 
-    private boolean checkLeftMargin(int x) {
-        // Make sure leftMargin has at least 2 pixels over
-        if (x < 2) {
-            leftMargin += (2 - x);
-            // Repaint from top (above any cell renderers)
-            SwingUtilities.getWindowAncestor(this).repaint();
-            return true;
-        }
+    /**
+     * Paints the static layer, rebuilding it if needed. Returns false if
+     * the left margin has been widened, to wait for the next repaint.
+     */
+    private boolean paintStaticLayer(Graphics2D g, int h, long vMin, long vMax,
+                                     Color fg) {
+        AffineTransform at = g.getTransform();
+        Object[] key = {
+            getWidth(), getHeight(), at.getScaleX(), at.getScaleY(),
+            leftMargin, rightMargin, vMin, vMax, decimals, unit,
+            fg, bgColor, g.getFont()
+        };
+        if (staticLayer == null || !Arrays.equals(key, staticKey)) {
+            staticKey = null;
+            staticLayer = createLayer(staticLayer, at, getWidth(), getHeight());
+            Graphics2D lg = createLayerGraphics(staticLayer, g, 0, 0);
+            try {
+                if (!drawStaticLayer(lg, h, vMin, vMax, fg)) {
+                    return false;
+                }
+            } finally {
+                lg.dispose();
+            }
+            staticKey = key;
+        }
+        drawLayer(g, staticLayer, 0, 0);
+        return true;
+    }
+
+    private boolean drawStaticLayer(Graphics2D g, int h, long vMin, long vMax,
+                                    Color fg) {
+        border.paintBorder(this, g, r.x, r.y, r.width, r.height);
+
+        // Fill background color
+        g.setColor(bgColor);
+        g.fillRect(r.x+2, r.y+2, r.width-4, r.height-4);
+
+        g.setColor(fg);
+
+        // Axes
+        // Draw vertical axis
+        int x = leftMargin - 18;
+        int y = topMargin;
+        FontMetrics fm = g.getFontMetrics();
+
+        g.drawLine(x,   y,   x,   y+h);
+
+        int n = 5;
+        if ((""+vMax).startsWith("2")) {
+            n = 4;
+        } else if ((""+vMax).startsWith("3")) {
+            n = 6;
+        } else if ((""+vMax).startsWith("4")) {
+            n = 4;
+        } else if ((""+vMax).startsWith("6")) {
+            n = 6;
+        } else if ((""+vMax).startsWith("7")) {
+            n = 7;
+        } else if ((""+vMax).startsWith("8")) {
+            n = 8;
+        } else if ((""+vMax).startsWith("9")) {
+            n = 3;
+        }
+
+        // Ticks
+        ArrayList<Long> tickValues = new ArrayList<Long>();
+        tickValues.add(vMin);
+        for (int i = 0; i < n; i++) {
+            long v = i * vMax / n;
+            if (v > vMin) {
+                tickValues.add(v);
+            }
+        }
+        tickValues.add(vMax);
+        n = tickValues.size();
+
+        String[] tickStrings = new String[n];
+        for (int i = 0; i < n; i++) {
+            long v = tickValues.get(i);
+            tickStrings[i] = getSizeString(v, vMax);
+        }
+
+        // Trim trailing decimal zeroes.
+        if (decimals > 0) {
+            boolean trimLast = true;
+            boolean removedDecimalPoint = false;
+            do {
+                for (String str : tickStrings) {
+                    if (!(str.endsWith("0") || str.endsWith("."))) {
+                        trimLast = false;
+                        break;
+                    }
+                }
+                if (trimLast) {
+                    if (tickStrings[0].endsWith(".")) {
+                        removedDecimalPoint = true;
+                    }
+                    for (int i = 0; i < n; i++) {
+                        String str = tickStrings[i];
+                        tickStrings[i] = str.substring(0, str.length()-1);
+                    }
+                }
+            } while (trimLast && !removedDecimalPoint);
+        }
+
+        // Draw ticks
+        int lastY = Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            long v = tickValues.get(i);
+            y = topMargin+h-(int)(h * (v-vMin) / (vMax-vMin));
+            g.drawLine(x-2, y, x+2, y);
+            String s = tickStrings[i];
+            if (unit == Unit.PERCENT) {
+                s += "%";
+            }
+            int sx = x-6-fm.stringWidth(s);
+            if (y < lastY-13) {
+                if (checkLeftMargin(sx)) {
+                    // Wait for next repaint
+                    return false;
+                }
+                g.drawString(s, sx, y+4);
+            }
+            // Draw horizontal grid line
+            g.setColor(Color.lightGray);
+            g.drawLine(r.x + 4, y, r.x + r.width - 4, y);
+            g.setColor(fg);
+            lastY = y;
+        }
+        return true;
+    }
+
+    /**
+     * Paints the data layer, scrolling it and drawing the new samples, or
+     * redrawing it if needed.
+     */
+    private void paintDataLayer(Graphics2D g, Snapshot s, int tier,
+                                int start, int nValues,
+                                long columnMS, long t1, long viewRangeMS,
+                                int w, int h, long vMin, long vMax) {
+        AffineTransform at = g.getTransform();
+        int lx = leftMargin - 2;
+        int ly = topMargin - 3;
+        int lw = w + 5;
+        int lh = h + 7;
+        Object[] key = {
+            lw, lh, lx, ly, at.getScaleX(), at.getScaleY(),
+            vMin, vMax, viewRangeMS, tier, columnMS, sequenceVersion
+        };
+
+        // Pixel columns since the epoch, see xOf
+        long shift = t1 * w / viewRangeMS - dataT1 * w / viewRangeMS;
+        long redrawTime;
+        if (dataLayer != null && Arrays.equals(key, dataKey) &&
+            t1 >= dataT1 && shift < lw &&
+            at.getScaleX() == Math.rint(at.getScaleX()) &&
+            at.getScaleY() == Math.rint(at.getScaleY())) {
+            if (t1 == dataT1 && nValues == dataTierSize) {
+                // Nothing new
+                drawLayer(g, dataLayer, lx, ly);
+                return;
+            }
+            if (shift > 0) {
+                int dx = (int)(shift * at.getScaleX());
+                // Replace, not blend, the pixels of the translucent layer
+                Graphics2D lg = dataLayer.createGraphics();
+                lg.setComposite(AlphaComposite.Src);
+                lg.copyArea(dx, 0, dataLayer.getWidth() - dx,
+                            dataLayer.getHeight(), -dx, 0);
+                lg.dispose();
+            }
+            redrawTime = dataRedrawTime;
+        } else {
+            dataLayer = createLayer(dataLayer, at, lw, lh);
+            redrawTime = Long.MIN_VALUE;
+        }
+        dataKey = key;
+        dataT1 = t1;
+        dataTierSize = nValues;
+
+        Graphics2D lg = createLayerGraphics(dataLayer, g, lx, ly);
+        try {
+            // Clear the part to draw, with a margin for the line width
+            int clearX = lx;
+            if (redrawTime != Long.MIN_VALUE) {
+                clearX = (int)Math.max(lx, leftMargin + w - 2 -
+                    (t1 * w / viewRangeMS - redrawTime * w / viewRangeMS));
+            }
+            lg.setComposite(AlphaComposite.Clear);
+            lg.fillRect(clearX, ly, lx + lw - clearX, lh);
+            lg.setComposite(AlphaComposite.SrcOver);
+            lg.clipRect(clearX, ly, lx + lw - clearX, lh);
+            dataRedrawTime = drawData(lg, s, tier, start, nValues, columnMS, t1,
+                                      viewRangeMS, w, h, vMin, vMax, clearX);
+        } finally {
+            lg.dispose();
+        }
+        drawLayer(g, dataLayer, lx, ly);
+    }
+
+    /**
+     * Draws the graphs from the given x coordinate on, and returns the
+     * time from which they may change as samples are added,
+     * Long.MIN_VALUE if none was drawn.
+     */
+    private long drawData(Graphics2D g, Snapshot s, int tier,
+                          int start, int nValues,
+                          long columnMS, long t1, long viewRangeMS,
+                          int w, int h, long vMin, long vMax, int fromX) {
+        long redrawTime = Long.MAX_VALUE;
+        int x0 = leftMargin;
+        int y0 = topMargin + h + 1;
+
+        // Loop backwards over sequences because the first needs to be painted on top
+        for (int i = seqs.size()-1; i >= 0; i--) {
+            Sequence seq = seqs.get(i);
+            if (!seq.isPlotted || !s.hasValues(i)) {
+                continue;
+            }
+            int nPoints = (columnMS > 0)
+                ? getDecimatedPoints(s, i, tier, start, nValues, columnMS,
+                                     t1 - viewRangeMS)
+                : getPoints(s, i, tier, start, nValues);
+            if (nPoints == 0) {
+                continue;
+            }
+
+            // The last point, the open rollup bucket or pixel column, may
+            // still change, and with it the line from the point before
+            redrawTime = Math.min(redrawTime,
+                                  timeBuf[Math.max(nPoints - 2, 0)] - columnMS);
+
+            // Start with the point before the first one near fromX, so
+            // that all the lines reaching past fromX are drawn
+            int first = nPoints - 1;
+            while (first > 0 && xOf(timeBuf[first], t1, viewRangeMS, w) >= fromX - 2) {
+                first--;
+            }
+
+            if (tier > 0) {
+                // Paint the range of the values rolled up in each bucket
+                Path2D.Float ranges = new Path2D.Float();
+                for (int p = first; p < nPoints; p++) {
+                    long lo = Math.max(minBuf[p], vMin);
+                    long hi = Math.min(maxBuf[p], vMax);
+                    if (hi > lo) {
+                        int x2 = xOf(timeBuf[p], t1, viewRangeMS, w);
+                        ranges.moveTo(x2, y0-(int)(h * (lo-vMin) / (vMax-vMin)));
+                        ranges.lineTo(x2, y0-(int)(h * (hi-vMin) / (vMax-vMin)));
+                    }
+                }
+                g.setColor(new Color(seq.color.getRed(), seq.color.getGreen(),
+                                     seq.color.getBlue(), 64));
+                g.draw(ranges);
+            }
+
+            // One path for the whole sequence, and one for the
+            // transitions between values if drawn with another stroke.
+            // Values out of range, e.g. gaps, break the line.
+            Path2D.Float line = new Path2D.Float();
+            Path2D.Float transitions =
+                (seq.transitionStroke != null) ? new Path2D.Float() : line;
+            boolean connected = false;
+            int x1 = 0;
+            int y1 = 0;
+            for (int p = first; p < nPoints; p++) {
+                long v2 = valueBuf[p];
+                if (v2 >= vMin && v2 <= vMax) {
+                    int x2 = xOf(timeBuf[p], t1, viewRangeMS, w);
+                    int y2 = y0 - (int)(h * (v2 -vMin) / (vMax-vMin));
+                    if (!connected) {
+                        line.moveTo(x2, y2);
+                    } else if (transitions == line) {
+                        line.lineTo(x2, y2);
+                    } else {
+                        Path2D.Float path = (y1 == y2) ? line : transitions;
+                        path.moveTo(x1, y1);
+                        path.lineTo(x2, y2);
+                    }
+                    connected = true;
+                    x1 = x2;
+                    y1 = y2;
+                } else {
+                    connected = false;
+                }
+            }
+
+            // Paint twice, with white and with color
+            for (int pass = 0; pass < 2; pass++) {
+                g.setColor((pass == 0) ? Color.white : seq.color);
+                g.translate(0, -pass);
+                g.draw(line);
+                if (transitions != line) {
+                    Stroke oldStroke = g.getStroke();
+                    g.setStroke(seq.transitionStroke);
+                    g.draw(transitions);
+                    g.setStroke(oldStroke);
+                }
+                g.translate(0, pass);
+            }
+        }
+        return (redrawTime == Long.MAX_VALUE) ? Long.MIN_VALUE : redrawTime;
+    }
+
+    // The x coordinate of a time, t1 being at the right end. Pixel columns
+    // are counted from the epoch so that they do not move as t1 grows.
+    private int xOf(long t, long t1, long viewRangeMS, int w) {
+        return leftMargin + w - (int)(t1 * w / viewRangeMS - t * w / viewRangeMS);
+    }
+
+    // Returns an image of the given size in user space at the device
+    // resolution, reusing the given one if it fits
+    private BufferedImage createLayer(BufferedImage image, AffineTransform at,
+                                      int w, int h) {
+        int iw = (int)Math.ceil(w * at.getScaleX());
+        int ih = (int)Math.ceil(h * at.getScaleY());
+        if (image != null && image.getWidth() == iw && image.getHeight() == ih) {
+            Graphics2D g = image.createGraphics();
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, iw, ih);
+            g.dispose();
+            return image;
+        }
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        return (gc != null)
+            ? gc.createCompatibleImage(iw, ih, Transparency.TRANSLUCENT)
+            : new BufferedImage(iw, ih, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    // Returns a graphics drawing in the coordinates of this component onto
+    // a layer whose top left corner is at x, y
+    private static Graphics2D createLayerGraphics(BufferedImage image,
+                                                  Graphics2D g, int x, int y) {
+        AffineTransform at = g.getTransform();
+        Graphics2D lg = image.createGraphics();
+        lg.setRenderingHints(g.getRenderingHints());
+        lg.setFont(g.getFont());
+        lg.scale(at.getScaleX(), at.getScaleY());
+        lg.translate(-x, -y);
+        return lg;
+    }
+
+    // Draws a layer pixel for pixel at x, y
+    private static void drawLayer(Graphics2D g, BufferedImage image, int x, int y) {
+        AffineTransform at = g.getTransform();
+        Graphics2D dg = (Graphics2D)g.create();
+        dg.setTransform(AffineTransform.getTranslateInstance(
+            Math.rint(at.getTranslateX() + x * at.getScaleX()),
+            Math.rint(at.getTranslateY() + y * at.getScaleY())));
+        dg.drawImage(image, 0, 0, null);
+        dg.dispose();
+    }
+
+    private static void ensureBufferLength(int n) {
+        if (timeBuf.length < n) {
+            timeBuf = new long[n];
+            valueBuf = new long[n];
+            minBuf = new long[n];
+            maxBuf = new long[n];
+        }
+    }
+
+    private boolean checkLeftMargin(int x) {
+        // Make sure leftMargin has at least 2 pixels over
+        if (x < 2) {
+            leftMargin += (2 - x);
+            // Repaint from top (above any cell renderers)
+            SwingUtilities.getWindowAncestor(this).repaint();
+            return true;
+        }
         return false;
     }
 
@@ -820,138 +1509,546 @@ public class Plotter extends JComponent
         return dashedStroke;
     }
 
-    private static Object extendArray(Object a1) {
-        int n = Array.getLength(a1);
-        Object a2 =
-            Array.newInstance(a1.getClass().getComponentType(),
-                              n + ARRAY_SIZE_INCREMENT);
-        System.arraycopy(a1, 0, a2, 0, n);
-        return a2;
-    }
+    private static class Sequence {
+        String key;
+        String name;
+        Color color;
+        boolean isPlotted;
+        Stroke transitionStroke = null;
 
+        // Only used by the writer, see publish
+        SampleColumn values = new SampleColumn(RAW_CAPACITY, false);
 
-    private static class TimeStamps {
-        // Time stamps (long) are split into offsets (long) and a
-        // series of times from the offsets (int). A new offset is
-        // stored when the the time value doesn't fit in an int
-        // (approx every 24 days).  An array of indices is used to
-        // define the starting point for each offset in the times
-        // array.
-        long[] offsets = new long[0];
-        int[] indices = new int[0];
-        int[] rtimes = new int[ARRAY_SIZE_INCREMENT];
+        // Min/max index of the values
+        BlockIndex index = new BlockIndex(RAW_CAPACITY);
 
-        // Number of stored timestamps
-        int size = 0;
+        // Rolled up values, one per rollup tier of the plotter
+        RollupValues[] rollups = new RollupValues[ROLLUP_RESOLUTIONS.length];
+
+        // Only used on the EDT
+        Decimation decimation = new Decimation();
+
+        public Sequence(String key) {
+            this.key = key;
+            for (int r = 0; r < rollups.length; r++) {
+                rollups[r] = new RollupValues(ROLLUP_CAPACITIES[r]);
+            }
+        }
+
+        public void add(long value) {
+            values.add(value);
+            index.add(values.first() + values.size() - 1, value);
+        }
+    }
+
+    // A rollup tier: the samples are grouped in buckets of resolution ms,
+    // of which the last capacity ones are kept. The time of a bucket is
+    // the time of its last sample, so that the last bucket, still filling
+    // up, ends at the last sample. Only this open bucket changes, the
+    // others are closed and kept in sample columns. A disconnection gets
+    // a bucket of its own so that gaps survive the rollup.
+    private static class Rollup {
+        final long resolution;
+
+        // Times of the closed buckets
+        final SampleColumn times;
+
+        // Time of the open bucket, if any, and its number, -1 for a gap
+        long openTime;
+        long openBucket = -1;
+        private boolean open = false;
+
+        Rollup(long resolution, int capacity) {
+            this.resolution = resolution;
+            this.times = new SampleColumn(capacity - 1, true);
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
 
         /**
-         * Returns the time stamp for index i
+         * Adds a sample to the open bucket, or closes it and opens a new
+         * one. Returns true if a new bucket was opened.
          */
-        public long time(int i) {
-            long offset = 0;
-            for (int j = indices.length - 1; j >= 0; j--) {
-                if (i >= indices[j]) {
-                    offset = offsets[j];
-                    break;
-                }
+        public boolean add(long time, boolean gap) {
+            long bucket = time / resolution;
+            if (open && !gap && bucket == openBucket) {
+                openTime = time;
+                return false;
+            }
+            if (open) {
+                times.add(openTime);
             }
-            return offset + rtimes[i];
+            open = true;
+            openTime = time;
+            openBucket = gap ? -1 : bucket;
+            return true;
         }
+    }
 
-        public void add(long time) {
-            // May need to store a new time offset
-            int n = offsets.length;
-            if (n == 0 || time - offsets[n - 1] > Integer.MAX_VALUE) {
-                // Grow offset and indices arrays and store new offset
-                offsets = Arrays.copyOf(offsets, n + 1);
-                offsets[n] = time;
-                indices = Arrays.copyOf(indices, n + 1);
-                indices[n] = size;
-            }
+    // The average, min and max values of a sequence in the buckets of a
+    // rollup tier, at the same indices as the bucket times.
+    private static class RollupValues {
+        final SampleColumn avg;
+        final SampleColumn min;
+        final SampleColumn max;
+
+        // The values, sum and number of values of the open bucket
+        long openAvg = Long.MIN_VALUE;
+        long openMin = Long.MIN_VALUE;
+        long openMax = Long.MIN_VALUE;
+        long sum;
+        int count;
+        boolean open = false;
+
+        // Min/max index of the values rolled up in the buckets
+        final BlockIndex index;
+
+        RollupValues(int capacity) {
+            avg = new SampleColumn(capacity - 1, false);
+            min = new SampleColumn(capacity - 1, false);
+            max = new SampleColumn(capacity - 1, false);
+            index = new BlockIndex(capacity);
+        }
 
-            // May need to extend the array size
-            if (rtimes.length == size) {
-                rtimes = (int[])extendArray(rtimes);
+        public void add(Rollup rollup, boolean newBucket, long value) {
+            if (newBucket) {
+                if (open) {
+                    avg.add(openAvg);
+                    min.add(openMin);
+                    max.add(openMax);
+                }
+                open = true;
+                sum = 0;
+                count = 0;
+                openAvg = openMin = openMax = Long.MIN_VALUE;
             }
-
-            // Store the time
-            rtimes[size]  = (int)(time - offsets[offsets.length - 1]);
-            size++;
+            if (value != Long.MIN_VALUE) {
+                sum += value;
+                count++;
+                openMin = (count == 1) ? value : Math.min(openMin, value);
+                openMax = (count == 1) ? value : Math.max(openMax, value);
+                openAvg = sum / count;
+            }
+            index.add(rollup.times.first() + rollup.times.size(), value);
         }
     }
 
-    private static class Sequence {
-        String key;
-        String name;
-        Color color;
-        boolean isPlotted;
-        Stroke transitionStroke = null;
+    // Peak preserving decimation of a sequence (M4): the first, min, max
+    // and last elements of each pixel column of columnMS ms, aligned on
+    // multiples of columnMS so that new elements only ever change the
+    // last column. For the rollup tiers, the range of the rolled up values
+    // of each column is kept too. A gap gets a column of its own.
+    private static class Decimation {
+        int tier = -1;
+        long columnMS = 0;
+
+        // Time since which the columns are complete
+        long since = Long.MAX_VALUE;
 
-        // Values are stored in an int[] if all values will fit,
-        // otherwise in a long[]. An int can represent up to 2 GB.
-        // Use a random start size, so all arrays won't need to
-        // be grown during the same update interval
-        Object values =
-            new byte[ARRAY_SIZE_INCREMENT + (int)(Math.random() * 100)];
+        // Number of the next element of the tier to add
+        long next = 0;
 
-        // Number of stored values
+        // Columns start to size - 1: column number, time and value of the
+        // first, min, max and last elements, and range of the values
+        int start = 0;
         int size = 0;
+        long[] columns = new long[0];
+        long[] times = new long[0];
+        long[] values = new long[0];
+        long[] mins = new long[0];
+        long[] maxs = new long[0];
+
+        // Whether the last column may get more elements
+        boolean open = false;
+
+        public void reset(int tier, long columnMS, long since, long next) {
+            this.tier = tier;
+            this.columnMS = columnMS;
+            this.since = since;
+            this.next = next;
+            start = 0;
+            size = 0;
+            open = false;
+        }
 
-        public Sequence(String key) {
-            this.key = key;
+        public void add(long time, long value, long min, long max) {
+            long column = time / columnMS;
+            if (open && value != Long.MIN_VALUE && column == columns[size - 1]) {
+                int j = 4 * (size - 1);
+                if (value < values[j + 1]) {
+                    times[j + 1] = time;
+                    values[j + 1] = value;
+                }
+                if (value > values[j + 2]) {
+                    times[j + 2] = time;
+                    values[j + 2] = value;
+                }
+                times[j + 3] = time;
+                values[j + 3] = value;
+                mins[size - 1] = Math.min(mins[size - 1], min);
+                maxs[size - 1] = Math.max(maxs[size - 1], max);
+                return;
+            }
+            if (size == columns.length) {
+                grow();
+            }
+            columns[size] = column;
+            Arrays.fill(times, 4 * size, 4 * size + 4, time);
+            Arrays.fill(values, 4 * size, 4 * size + 4, value);
+            mins[size] = min;
+            maxs[size] = max;
+            size++;
+            open = (value != Long.MIN_VALUE);
+        }
+
+        // Makes room for a column, reusing the space of dropped columns
+        private void grow() {
+            int n = size - start;
+            int length = (n < columns.length / 2) ?
+                columns.length : Math.max(2 * columns.length, 64);
+            columns = move(columns, 1, length);
+            times = move(times, 4, length);
+            values = move(values, 4, length);
+            mins = move(mins, 1, length);
+            maxs = move(maxs, 1, length);
+            size = n;
+            start = 0;
+        }
+
+        private long[] move(long[] a, int k, int length) {
+            long[] b = (a.length == k * length) ? a : new long[k * length];
+            System.arraycopy(a, k * start, b, 0, k * (size - start));
+            return b;
         }
 
         /**
-         * Returns the value at index i
+         * Drops the columns ending before the given time
          */
-        public long value(int i) {
-            return Array.getLong(values, i);
+        public void dropBefore(long time) {
+            while (start < size && times[4 * start + 3] < time) {
+                start++;
+            }
+            since = Math.max(since, time);
         }
 
-        public void add(long value) {
-            // May need to switch to a larger array type
-            if ((values instanceof byte[] ||
-                 values instanceof short[] ||
-                 values instanceof int[]) &&
-                       value > Integer.MAX_VALUE) {
-                long[] la = new long[Array.getLength(values)];
-                for (int i = 0; i < size; i++) {
-                    la[i] = Array.getLong(values, i);
+        /**
+         * Reads the points since the given time, in time order, into the
+         * given arrays. The range of the values of a column goes with its
+         * first point. Returns the number of points.
+         */
+        public int getPoints(long[] pointTimes, long[] pointValues,
+                             long[] pointMins, long[] pointMaxs, long time) {
+            int n = 0;
+            long last = time - 1;
+            int[] order = new int[4];
+            for (int c = start; c < size; c++) {
+                int j = 4 * c;
+                // Min and max in time order
+                boolean minFirst = (times[j + 1] <= times[j + 2]);
+                order[0] = j;
+                order[1] = minFirst ? j + 1 : j + 2;
+                order[2] = minFirst ? j + 2 : j + 1;
+                order[3] = j + 3;
+                boolean first = true;
+                for (int k : order) {
+                    if (times[k] > last) {
+                        last = times[k];
+                        pointTimes[n] = times[k];
+                        pointValues[n] = values[k];
+                        pointMins[n] = first ? mins[c] : Long.MIN_VALUE;
+                        pointMaxs[n] = first ? maxs[c] : Long.MIN_VALUE;
+                        first = false;
+                        n++;
+                    }
+                }
+            }
+            return n;
+        }
+    }
+
+    // Min and max values of the blocks of BLOCK_SIZE consecutive elements
+    // of a column, numbered from the first element ever added. The range
+    // of any window then costs a scan of its two partial blocks at most,
+    // and one step per full block in between. A block is added to the
+    // index once the first element of the next block is added.
+    private static class BlockIndex {
+        final SampleColumn mins;
+        final SampleColumn maxs;
+
+        // Number of the last block, -1 if none, and its range
+        long lastBlock = -1;
+        long min;
+        long max;
+
+        // The last view, null if blocks have been added since
+        View view = null;
+
+        BlockIndex(int capacity) {
+            int n = capacity / BLOCK_SIZE + 2;
+            mins = new SampleColumn(n, false);
+            maxs = new SampleColumn(n, false);
+        }
+
+        /**
+         * Adds the value of element number n, which is the last element
+         * or a new one.
+         */
+        public void add(long n, long value) {
+            long block = n / BLOCK_SIZE;
+            if (block != lastBlock) {
+                if (lastBlock >= 0) {
+                    mins.add(min);
+                    maxs.add(max);
+                    view = null;
                 }
-                values = la;
-            } else if ((values instanceof byte[] ||
-                        values instanceof short[]) &&
-                       value > Short.MAX_VALUE) {
-                int[] ia = new int[Array.getLength(values)];
-                for (int i = 0; i < size; i++) {
-                    ia[i] = Array.getInt(values, i);
+                min = Long.MAX_VALUE;
+                max = Long.MIN_VALUE;
+                lastBlock = block;
+            }
+            if (value != Long.MIN_VALUE) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+
+        public View view() {
+            if (view == null) {
+                view = new View(mins.view(), maxs.view());
+            }
+            return view;
+        }
+
+        /**
+         * The blocks of an index at some point in time.
+         */
+        static class View {
+            private final SampleColumn.View mins;
+            private final SampleColumn.View maxs;
+
+            View(SampleColumn.View mins, SampleColumn.View maxs) {
+                this.mins = mins;
+                this.maxs = maxs;
+            }
+
+            /**
+             * Returns the number of the block after the last one indexed
+             */
+            public long end() {
+                return mins.first() + mins.size();
+            }
+
+            /**
+             * Widens range[0] and range[1], the min and max, to the values
+             * of blocks from to to - 1
+             */
+            public void getRange(long from, long to, long[] range) {
+                int i = (int)(Math.max(from, mins.first()) - mins.first());
+                int j = (int)(to - mins.first());
+                if (i >= j) {
+                    return;
                 }
-                values = ia;
-            } else if (values instanceof byte[] &&
-                       value > Byte.MAX_VALUE) {
-                short[] sa = new short[Array.getLength(values)];
-                for (int i = 0; i < size; i++) {
-                    sa[i] = Array.getShort(values, i);
+                long[] blockMins = new long[j - i];
+                long[] blockMaxs = new long[j - i];
+                mins.get(i, j, blockMins, 0);
+                maxs.get(i, j, blockMaxs, 0);
+                for (int k = 0; k < j - i; k++) {
+                    if (blockMaxs[k] != Long.MIN_VALUE) {
+                        range[0] = Math.min(range[0], blockMins[k]);
+                        range[1] = Math.max(range[1], blockMaxs[k]);
+                    }
                 }
-                values = sa;
             }
+        }
+    }
 
-            // May need to extend the array size
-            if (Array.getLength(values) == size) {
-                values = extendArray(values);
+    // The samples of a tier at some point in time: the closed samples, in
+    // sample columns, and for a rollup tier the open bucket.
+    private static class TierView {
+        final SampleColumn.View times;
+        // The AVG, MIN and MAX values of each sequence
+        final SampleColumn.View[][] values;
+        final BlockIndex.View[] indices;
+        final boolean open;
+        final long openTime;
+        final long[][] openValues;
+
+        TierView(SampleColumn.View times, SampleColumn.View[][] values,
+                 BlockIndex.View[] indices, boolean open, long openTime,
+                 long[][] openValues) {
+            this.times = times;
+            this.values = values;
+            this.indices = indices;
+            this.open = open;
+            this.openTime = openTime;
+            this.openValues = openValues;
+        }
+
+        public int size() {
+            return times.size() + (open ? 1 : 0);
+        }
+
+        /**
+         * Returns the number of elements dropped so far
+         */
+        public long first() {
+            return times.first();
+        }
+
+        public long time(int i) {
+            return (i < times.size()) ? times.get(i) : openTime;
+        }
+
+        public void getTimes(int from, int to, long[] dst, int off) {
+            int n = times.size();
+            if (from < n) {
+                times.get(from, Math.min(to, n), dst, off);
+            }
+            if (to > n) {
+                dst[off + n - from] = openTime;
+            }
+        }
+
+        public void getValues(int seq, int kind, int from, int to,
+                              long[] dst, int off) {
+            if (seq >= values.length) {
+                Arrays.fill(dst, off, off + to - from, Long.MIN_VALUE);
+                return;
+            }
+            SampleColumn.View v = values[seq][kind];
+            int n = v.size();
+            if (from < n) {
+                v.get(from, Math.min(to, n), dst, off);
             }
+            if (to > n) {
+                dst[off + n - from] = openValues[seq][kind];
+            }
+        }
+
+        /**
+         * Returns the index of the first time at or after the given time,
+         * or the last index if there is none.
+         */
+        public int find(long time) {
+            int n = times.size();
+            if (open && (n == 0 || times.get(n - 1) < time)) {
+                return n;
+            }
+            return times.find(time);
+        }
+    }
+
+    // The samples of a plotter at some point in time, see publish.
+    private static class Snapshot {
+        final TierView[] tiers;
+        final PlotHistory.View history;
+        // The values of the last sample
+        final long[] lastValues;
+
+        Snapshot(TierView[] tiers, PlotHistory.View history,
+                 long[] lastValues) {
+            this.tiers = tiers;
+            this.history = history;
+            this.lastValues = lastValues;
+        }
+
+        public int getSequenceCount() {
+            return lastValues.length;
+        }
+
+        /**
+         * Returns whether there are samples of a sequence
+         */
+        public boolean hasValues(int seq) {
+            return seq < lastValues.length && tiers[0].size() > 0;
+        }
+
+        public long getLastValue(int seq) {
+            return lastValues[seq];
+        }
+
+        public int getTierSize(int tier) {
+            return (tier == HISTORY_TIER) ? history.size() : tiers[tier].size();
+        }
 
-            // Store the value
-            if (values instanceof long[]) {
-                ((long[])values)[size] = value;
-            } else if (values instanceof int[]) {
-                ((int[])values)[size] = (int)value;
-            } else if (values instanceof short[]) {
-                ((short[])values)[size] = (short)value;
+        public long getTierTime(int tier, int i) {
+            return (tier == HISTORY_TIER) ? history.time(i) : tiers[tier].time(i);
+        }
+
+        public boolean isTierTruncated(int tier) {
+            return (tier == HISTORY_TIER) ? history.isTruncated()
+                                          : tiers[tier].first() > 0;
+        }
+
+        /**
+         * Reads the times of a tier at indices from to to - 1 into dst at
+         * off.
+         */
+        public void getTierTimes(int tier, int from, int to, long[] dst, int off) {
+            if (tier == HISTORY_TIER) {
+                history.getTimes(from, to, dst, off);
             } else {
-                ((byte[])values)[size] = (byte)value;
+                tiers[tier].getTimes(from, to, dst, off);
             }
-            size++;
+        }
+
+        /**
+         * Reads the values of a sequence in a tier at indices from to
+         * to - 1 into dst at off. For the rollup tiers, kind selects the
+         * AVG, MIN or MAX value of the buckets.
+         */
+        public void getTierValues(int seq, int tier, int kind,
+                                  int from, int to, long[] dst, int off) {
+            if (tier == HISTORY_TIER) {
+                history.getValues(seq, from, to, dst, off);
+            } else {
+                tiers[tier].getValues(seq, kind, from, to, dst, off);
+            }
+        }
+
+        /**
+         * Returns the index of the first time stamp of a tier at or after
+         * the given time, or the last index if there is none.
+         */
+        public int findTierIndex(int tier, long time) {
+            if (tier != HISTORY_TIER) {
+                return tiers[tier].find(time);
+            }
+            int lo = 0;
+            int hi = history.size() - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (history.time(mid) < time) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Returns the finest tier holding the samples since the given
+         * time, or the coarsest tier if none does.
+         */
+        public int getTier(long since) {
+            for (int tier = 0; tier < tiers.length - 1; tier++) {
+                if (!isTierTruncated(tier) ||
+                    (getTierSize(tier) > 0 && getTierTime(tier, 0) <= since)) {
+                    return tier;
+                }
+            }
+            return tiers.length - 1;
+        }
+
+        /**
+         * Returns the time of the oldest sample still known, at any
+         * resolution.
+         */
+        public long getOldestTime() {
+            int tier = getTier(Long.MIN_VALUE);
+            return (getTierSize(tier) > 0) ? getTierTime(tier, 0) : Long.MAX_VALUE;
         }
     }
 
@@ -961,12 +2058,14 @@ public class Plotter extends JComponent
     }
 
     long getLastTimeStamp() {
-        return times.time(times.size - 1);
+        Snapshot s = snapshot;
+        return s.getTierTime(0, s.getTierSize(0) - 1);
     }
 
     long getLastValue(String key) {
-        Sequence seq = getSequence(key);
-        return (seq != null && seq.size > 0) ? seq.value(seq.size - 1) : 0L;
+        int i = seqs.indexOf(getSequence(key));
+        Snapshot s = snapshot;
+        return (i >= 0 && s.hasValues(i)) ? s.getLastValue(i) : 0L;
     }
 
 
@@ -979,24 +2078,39 @@ public class Plotter extends JComponent
 
             switch (newState) {
               case DISCONNECTED:
-                synchronized(this) {
+                synchronized (writeLock) {
                     long time = System.currentTimeMillis();
-                    times.add(time);
-                    for (Sequence seq : seqs) {
-                        seq.add(Long.MIN_VALUE);
-                    }
+                    long[] gaps = new long[seqs.size()];
+                    Arrays.fill(gaps, Long.MIN_VALUE);
+                    addSample(time, gaps);
+                    publish();
                 }
                 break;
             }
         }
     }
 
-    private static class SaveDataFileChooser extends JFileChooser {
+    static class SaveDataFileChooser extends JFileChooser {
         private static final long serialVersionUID = -5182890922369369669L;
         SaveDataFileChooser() {
+            this(false);
+        }
+
+        // The binary chart data format is offered if binary is true
+        SaveDataFileChooser(boolean binary) {
+            if (binary) {
+                addChoosableFileFilter(
+                    new FileNameExtensionFilter("Binary chart data",
+                                                PlotExporter.BINARY_EXTENSION));
+            }
             setFileFilter(new FileNameExtensionFilter("CSV file", "csv"));
         }
 
+        // Files of another single type
+        SaveDataFileChooser(String description, String extension) {
+            setFileFilter(new FileNameExtensionFilter(description, extension));
+        }
+
         @Override
         public void approveSelection() {
             File file = getSelectedFile();
@@ -1056,21 +2170,27 @@ public class Plotter extends JComponent
             setAccessibleName(getText("Plotter.accessibleName"));
         }
 
+        String getChartName() {
+            return super.getAccessibleName();
+        }
+
         @Override
         public String getAccessibleName() {
             String name = super.getAccessibleName();
 
-            if (seqs.size() > 0 && seqs.get(0).size > 0) {
+            Snapshot s = snapshot;
+            if (seqs.size() > 0 && s.hasValues(0)) {
                 String keyValueList = "";
-                for (Sequence seq : seqs) {
+                for (int i = 0; i < seqs.size(); i++) {
+                    Sequence seq = seqs.get(i);
                     if (seq.isPlotted) {
                         String value = "null";
-                        if (seq.size > 0) {
+                        if (s.hasValues(i)) {
                             if (unit == Unit.BYTES) {
-                                value = getText("Size Bytes", seq.value(seq.size - 1));
+                                value = getText("Size Bytes", s.getLastValue(i));
                             } else {
                                 value =
-                                    getFormattedValue(seq.value(seq.size - 1), false) +
+                                    getFormattedValue(s.getLastValue(i), false) +
                                     ((unit == Unit.PERCENT) ? "%" : "");
                             }
                         }
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sun.tools.jconsole;
+
+import java.io.IOException;
+import java.lang.management.MemoryUsage;
+import static java.lang.management.ManagementFactory.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.management.*;
+import javax.management.openmbean.CompositeData;
+
+//
+// Poll plan:
+//
+// The set of (ObjectName, attribute) pairs that the tabs of a VMPanel read
+// on every update tick. Tabs register what they need once, and within a
+// tick every planned MBean is fetched with a single getAttributes call for
+// all of its planned attributes, whatever the number of tabs reading them.
+//
+// The fetch happens when the first reader of a tick asks for the MBean, so
+// MBeans only read by tabs that are not updated in this tick (see the
+// visibility-aware polling in VMPanel) cost nothing.
+//
+// The values fetched are published as an immutable map that the tabs'
+// SwingWorkers read during the same tick. As the fetch goes through the
+// snapshot connection, MXBean proxy getters for the planned attributes are
+// answered from the snapshot cache rather than by another round trip.
+//
+public class PollPlan {
+
+    public static final ObjectName CLASS_LOADING =
+        objectName(CLASS_LOADING_MXBEAN_NAME);
+    public static final ObjectName COMPILATION =
+        objectName(COMPILATION_MXBEAN_NAME);
+    public static final ObjectName MEMORY =
+        objectName(MEMORY_MXBEAN_NAME);
+    public static final ObjectName OPERATING_SYSTEM =
+        objectName(OPERATING_SYSTEM_MXBEAN_NAME);
+    public static final ObjectName RUNTIME =
+        objectName(RUNTIME_MXBEAN_NAME);
+    public static final ObjectName THREADING =
+        objectName(THREAD_MXBEAN_NAME);
+
+    private final ProxyClient proxyClient;
+
+    // Registered attribute names per ObjectName, in registration order
+    private final Map<ObjectName, Set<String>> plan =
+        new LinkedHashMap<ObjectName, Set<String>>();
+
+    // One fetch at a time per MBean, so concurrent readers share it
+    private final ConcurrentMap<ObjectName, Object> locks =
+        new ConcurrentHashMap<ObjectName, Object>();
+
+    private volatile Map<ObjectName, Map<String, Object>> values =
+        Collections.emptyMap();
+    private volatile long timeStamp;
+
+    PollPlan(ProxyClient proxyClient) {
+        this.proxyClient = proxyClient;
+    }
+
+    /**
+     * Adds the given attributes of the named MBean to the plan. Registering
+     * an attribute more than once has no further effect.
+     */
+    public synchronized void register(ObjectName name, String... attributes) {
+        Set<String> names = plan.get(name);
+        if (names == null) {
+            names = new LinkedHashSet<String>();
+            plan.put(name, names);
+        }
+        names.addAll(Arrays.asList(attributes));
+    }
+
+    /**
+     * Removes the named MBean from the plan, typically because it has been
+     * unregistered from the MBean server.
+     */
+    public synchronized void unregister(ObjectName name) {
+        plan.remove(name);
+        locks.remove(name);
+    }
+
+    public synchronized boolean isRegistered(ObjectName name) {
+        return plan.containsKey(name);
+    }
+
+    /**
+     * Starts a new tick: the values of the previous tick are discarded and
+     * each planned MBean is fetched again when it is first read.
+     *
+     * Called by VMPanel.update() at the start of every tick.
+     */
+    void newTick() {
+        values = Collections.emptyMap();
+        timeStamp = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the time at which the current tick started.
+     */
+    public long getTimeStamp() {
+        return timeStamp;
+    }
+
+    /**
+     * Returns the value of an attribute for the current tick, or
+     * <tt>null</tt> if the MBean did not return it. The first read of an
+     * MBean in a tick fetches all of its planned attributes; an attribute
+     * that is not planned yet is added to the plan.
+     */
+    public Object getValue(ObjectName name, String attribute)
+            throws IOException {
+        Map<String, Object> m = values.get(name);
+        if (m == null || !m.containsKey(attribute)) {
+            register(name, attribute);
+            m = fetchValues(name, attribute);
+        }
+        return m.get(attribute);
+    }
+
+    public long getLong(ObjectName name, String attribute, long defaultValue)
+            throws IOException {
+        Object value = getValue(name, attribute);
+        return (value instanceof Number) ? ((Number) value).longValue()
+                                         : defaultValue;
+    }
+
+    public int getInt(ObjectName name, String attribute, int defaultValue)
+            throws IOException {
+        Object value = getValue(name, attribute);
+        return (value instanceof Number) ? ((Number) value).intValue()
+                                         : defaultValue;
+    }
+
+    public boolean getBoolean(ObjectName name, String attribute,
+                              boolean defaultValue) throws IOException {
+        Object value = getValue(name, attribute);
+        return (value instanceof Boolean) ? ((Boolean) value).booleanValue()
+                                          : defaultValue;
+    }
+
+    /**
+     * Decodes a MemoryUsage attribute, or returns <tt>null</tt> if the MBean
+     * did not return it.
+     */
+    public MemoryUsage getMemoryUsage(ObjectName name, String attribute)
+            throws IOException {
+        Object value = getValue(name, attribute);
+        if (value instanceof CompositeData) {
+            return MemoryUsage.from((CompositeData) value);
+        }
+        return (value instanceof MemoryUsage) ? (MemoryUsage) value : null;
+    }
+
+    public long[] getLongArray(ObjectName name, String attribute)
+            throws IOException {
+        Object value = getValue(name, attribute);
+        return (value instanceof long[]) ? (long[]) value : null;
+    }
+
+    private Map<String, Object> fetchValues(ObjectName name, String attribute)
+            throws IOException {
+        Object lock = locks.get(name);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = locks.putIfAbsent(name, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        synchronized (lock) {
+            // Another reader may have fetched it while we were waiting
+            Map<String, Object> m = values.get(name);
+            if (m != null && m.containsKey(attribute)) {
+                return m;
+            }
+            String[] attributes;
+            synchronized (this) {
+                Set<String> names = plan.get(name);
+                attributes = names.toArray(new String[names.size()]);
+            }
+            m = fetch(name, attributes);
+            synchronized (this) {
+                Map<ObjectName, Map<String, Object>> result =
+                    new HashMap<ObjectName, Map<String, Object>>(values);
+                result.put(name, m);
+                values = Collections.unmodifiableMap(result);
+            }
+            return m;
+        }
+    }
+
+    private Map<String, Object> fetch(ObjectName name, String[] attributes)
+            throws IOException {
+        Map<String, Object> m = new HashMap<String, Object>(attributes.length * 2);
+        AttributeList al = proxyClient.getAttributes(name, attributes);
+        if (al != null) {
+            for (Object o : al) {
+                Attribute attr = (Attribute) o;
+                m.put(attr.getName(), attr.getValue());
+            }
+        }
+        // Attributes the MBean could not return are recorded as null so
+        // that they are not fetched again until the next tick.
+        for (String attribute : attributes) {
+            if (!m.containsKey(attribute)) {
+                m.put(attribute, null);
+            }
+        }
+        return Collections.unmodifiableMap(m);
+    }
+
+    static ObjectName objectName(String name) {
+        try {
+            return new ObjectName(name);
+        } catch (MalformedObjectNameException e) {
+            // should not reach here
+            InternalError ie = new InternalError(e.getMessage());
+            ie.initCause(e);
+            throw ie;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import com.sun.tools.jconsole.JConsoleContext.ConnectionState;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeEvent;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.management.*;
 import static java.lang.management.ManagementFactory.*;
 import java.lang.ref.WeakReference;
@@ -39,6 +40,8 @@ import java.rmi.*;
 import java.rmi.registry.*;
 import java.rmi.server.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.management.*;
 import javax.management.remote.*;
 import javax.management.remote.rmi.*;
@@ -47,6 +50,8 @@ import javax.swing.event.SwingPropertyChangeSupport;
 import sun.rmi.server.UnicastRef2;
 import sun.rmi.transport.LiveRef;
 
+import andrask.sun.tools.jconsole.Settings;
+
 public class ProxyClient implements JConsoleContext {
 
     private ConnectionState connectionState = ConnectionState.DISCONNECTED;
@@ -67,6 +72,8 @@ public class ProxyClient implements JConsoleContext {
     private boolean hasHotSpotDiagnosticMXBean= false;
     private boolean hasCompilationMXBean = false;
     private boolean supportsLockUsage = false;
+    private boolean supportsBulkThreadCpuTime = false;
+    private boolean hasSunOperatingSystemMXBean = false;
 
     // REVISIT: VMPanel and other places relying using getUrl().
 
@@ -79,6 +86,8 @@ public class ProxyClient implements JConsoleContext {
     private JMXServiceURL jmxUrl = null;
     private MBeanServerConnection mbsc = null;
     private SnapshotMBeanServerConnection server = null;
+    private SnapshotInvocationHandler snapshotHandler = null;
+    private volatile long snapshotTtl = 0L;
     private JMXConnector jmxc = null;
     private RMIServer stub = null;
     private static final SslRMIClientSocketFactory sslRMIClientSocketFactory =
@@ -99,10 +108,19 @@ public class ProxyClient implements JConsoleContext {
     private ThreadMXBean          threadMBean = null;
 
     private com.sun.management.OperatingSystemMXBean sunOperatingSystemMXBean = null;
+    private com.sun.management.ThreadMXBean          sunThreadMXBean = null;
     private HotSpotDiagnosticMXBean                  hotspotDiagnosticMXBean = null;
 
     private List<MemoryPoolProxy>           memoryPoolProxies = null;
     private List<GarbageCollectorMXBean>    garbageCollectorMBeans = null;
+    private List<ObjectName>                garbageCollectorNames = null;
+
+    private final PollPlan pollPlan = new PollPlan(this);
+    private final ConnectionStats connectionStats = new ConnectionStats();
+    private final Object platformSnapshotLock = new Object();
+    private volatile PlatformSnapshot platformSnapshot = null;
+    private MBeanInfoCache mbeanInfoCache = null;
+    private MBeanInfoPrefetcher mbeanInfoPrefetcher = null;
 
     final static private String HOTSPOT_DIAGNOSTIC_MXBEAN_NAME =
         "com.sun.management:type=HotSpotDiagnostic";
@@ -308,6 +326,90 @@ public class ProxyClient implements JConsoleContext {
         }
     }
 
+    /**
+     * Sets the time, in milliseconds, during which the values read through
+     * the snapshot connection are reused.
+     */
+    void setSnapshotTtl(long ttl) {
+        snapshotTtl = ttl;
+        SnapshotInvocationHandler h = snapshotHandler;
+        if (h != null) {
+            h.setTtl(ttl);
+        }
+    }
+
+    /**
+     * Returns the hit and miss statistics of the snapshot connection, or
+     * <tt>null</tt> if not connected yet.
+     */
+    public SnapshotStatistics getSnapshotStatistics() {
+        SnapshotInvocationHandler h = snapshotHandler;
+        return (h != null) ? h.getStatistics() : null;
+    }
+
+    private void newSnapshot() {
+        snapshotHandler = new SnapshotInvocationHandler(mbsc, snapshotTtl,
+            Settings.getInt(Settings.KEY_SNAPSHOT_MAX_SIZE, 10000));
+        server = (SnapshotMBeanServerConnection) Proxy.newProxyInstance(
+                Snapshot.class.getClassLoader(),
+                new Class[] {SnapshotMBeanServerConnection.class},
+                snapshotHandler);
+    }
+
+    /**
+     * Returns the round-trip statistics of the MBeanServerConnection.
+     */
+    public ConnectionStats getConnectionStats() {
+        return connectionStats;
+    }
+
+    /**
+     * Returns the plan of attributes polled on every update tick.
+     */
+    public PollPlan getPollPlan() {
+        return pollPlan;
+    }
+
+    /**
+     * Returns the cache of MBeanInfo per MBean class.
+     */
+    public synchronized MBeanInfoCache getMBeanInfoCache() {
+        if (mbeanInfoCache == null) {
+            mbeanInfoCache = new MBeanInfoCache(this);
+        }
+        return mbeanInfoCache;
+    }
+
+    /**
+     * Returns the pipeline through which MBeanInfo is fetched in bulk.
+     */
+    public synchronized MBeanInfoPrefetcher getMBeanInfoPrefetcher() {
+        if (mbeanInfoPrefetcher == null) {
+            mbeanInfoPrefetcher = new MBeanInfoPrefetcher(connectionName());
+        }
+        return mbeanInfoPrefetcher;
+    }
+
+    /**
+     * Returns the values of the platform MXBeans for the current update
+     * tick. The snapshot is created on the first call in a tick and shared
+     * by the later callers; each MXBean is read with one getAttributes call
+     * when one of its values is first asked for.
+     */
+    public PlatformSnapshot getPlatformSnapshot() {
+        PlatformSnapshot s = platformSnapshot;
+        if (s == null || s.getTimeStamp() != pollPlan.getTimeStamp()) {
+            synchronized (platformSnapshotLock) {
+                s = platformSnapshot;
+                if (s == null || s.getTimeStamp() != pollPlan.getTimeStamp()) {
+                    s = new PlatformSnapshot(this);
+                    platformSnapshot = s;
+                }
+            }
+        }
+        return s;
+    }
+
     void connect() {
         setConnectionState(ConnectionState.CONNECTING);
         try {
@@ -325,8 +427,9 @@ public class ProxyClient implements JConsoleContext {
         if (jmxUrl == null && "localhost".equals(hostName) && port == 0) {
             // Monitor self
             this.jmxc = null;
-            this.mbsc = ManagementFactory.getPlatformMBeanServer();
-            this.server = Snapshot.newSnapshot(mbsc);
+            this.mbsc = connectionStats.wrap(
+                    ManagementFactory.getPlatformMBeanServer());
+            newSnapshot();
         } else {
             // Monitor another process
             if (lvm != null) {
@@ -368,8 +471,8 @@ public class ProxyClient implements JConsoleContext {
                     this.jmxc = JMXConnectorFactory.connect(jmxUrl, env);
                 }
             }
-            this.mbsc = jmxc.getMBeanServerConnection();
-            this.server = Snapshot.newSnapshot(mbsc);
+            this.mbsc = connectionStats.wrap(jmxc.getMBeanServerConnection());
+            newSnapshot();
         }
         this.isDead = false;
 
@@ -385,12 +488,27 @@ public class ProxyClient implements JConsoleContext {
                 for (MBeanOperationInfo op : mopis) {
                     if (op.getName().equals("findDeadlockedThreads")) {
                         this.supportsLockUsage = true;
-                        break;
+                    } else if (op.getName().equals("getThreadCpuTime") &&
+                               op.getSignature().length == 1 &&
+                               op.getSignature()[0].getType().equals("[J")) {
+                        // The bulk operations of com.sun.management.ThreadMXBean
+                        this.supportsBulkThreadCpuTime = true;
                     }
                 }
 
                 on = new ObjectName(COMPILATION_MXBEAN_NAME);
                 this.hasCompilationMXBean = server.isRegistered(on);
+
+                // The attributes of com.sun.management.OperatingSystemMXBean
+                on = new ObjectName(OPERATING_SYSTEM_MXBEAN_NAME);
+                boolean sunOS = false;
+                for (MBeanAttributeInfo attr :
+                         server.getMBeanInfo(on).getAttributes()) {
+                    if (attr.getName().equals("CommittedVirtualMemorySize")) {
+                        sunOS = true;
+                    }
+                }
+                this.hasSunOperatingSystemMXBean = sunOS;
             }
         } catch (MalformedObjectNameException e) {
             // should not reach here
@@ -569,7 +687,17 @@ public class ProxyClient implements JConsoleContext {
         runtimeMBean = null;
         threadMBean = null;
         sunOperatingSystemMXBean = null;
+        sunThreadMXBean = null;
         garbageCollectorMBeans = null;
+        garbageCollectorNames = null;
+        platformSnapshot = null;
+        if (mbeanInfoCache != null) {
+            mbeanInfoCache.disconnected();
+        }
+        if (mbeanInfoPrefetcher != null) {
+            mbeanInfoPrefetcher.cancelAll();
+        }
+        pollPlan.newTick();
         // Set connection state to DISCONNECTED
         if (!isDead) {
             isDead = true;
@@ -603,25 +731,55 @@ public class ProxyClient implements JConsoleContext {
                 assert(false);
             }
         }
-        Set mbeans = server.queryNames(name, null);
+        // Fetch the MBeanInfo through the prefetch pipeline, a few requests
+        // at a time, rather than one round trip after the other. Urgent, as
+        // the caller waits for them.
+        Set<ObjectInstance> mbeans = server.queryMBeans(name, null);
+        final MBeanInfoCache cache = getMBeanInfoCache();
+        cache.addClassNames(mbeans);
+        MBeanInfoPrefetcher.Batch batch = new MBeanInfoPrefetcher.Batch(null);
+        Map<ObjectName, Future<MBeanInfo>> requests =
+            new LinkedHashMap<ObjectName, Future<MBeanInfo>>(mbeans.size());
+        for (ObjectInstance oi : mbeans) {
+            final ObjectName o = oi.getObjectName();
+            requests.put(o, getMBeanInfoPrefetcher().submit(
+                new Callable<MBeanInfo>() {
+                    public MBeanInfo call() throws Exception {
+                        MBeanInfo info = cache.getMBeanInfo(o);
+                        if (info == null) {
+                            info = server.getMBeanInfo(o);
+                            cache.putMBeanInfo(o, info);
+                        }
+                        return info;
+                    }
+                }, true, batch, null));
+        }
         Map<ObjectName,MBeanInfo> result =
             new HashMap<ObjectName,MBeanInfo>(mbeans.size());
-        Iterator iterator = mbeans.iterator();
-        while (iterator.hasNext()) {
-            Object object = iterator.next();
-            if (object instanceof ObjectName) {
-                ObjectName o = (ObjectName)object;
+        try {
+            for (Map.Entry<ObjectName, Future<MBeanInfo>> e :
+                     requests.entrySet()) {
                 try {
-                    MBeanInfo info = server.getMBeanInfo(o);
-                    result.put(o, info);
-                } catch (IntrospectionException e) {
-                    // TODO: should log the error
-                } catch (InstanceNotFoundException e) {
-                    // TODO: should log the error
-                } catch (ReflectionException e) {
+                    result.put(e.getKey(), e.getValue().get());
+                } catch (CancellationException ex) {
+                    throw new IOException("Disconnected");
+                } catch (ExecutionException ex) {
+                    Throwable t = ex.getCause();
+                    if (t instanceof IOException) {
+                        throw (IOException) t;
+                    } else if (t instanceof RuntimeException) {
+                        throw (RuntimeException) t;
+                    }
+                    // IntrospectionException, InstanceNotFoundException,
+                    // ReflectionException
                     // TODO: should log the error
                 }
             }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            batch.cancel();
         }
         return result;
     }
@@ -726,6 +884,25 @@ public class ProxyClient implements JConsoleContext {
         return memoryPoolProxies;
     }
 
+    synchronized Collection<ObjectName> getGarbageCollectorObjectNames()
+        throws IOException {
+
+        if (garbageCollectorNames == null) {
+            ObjectName gcName = null;
+            try {
+                gcName = new ObjectName(GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE + ",*");
+            } catch (MalformedObjectNameException e) {
+                // should not reach here
+                assert(false);
+            }
+            Set<ObjectName> mbeans = server.queryNames(gcName, null);
+            garbageCollectorNames = (mbeans != null)
+                ? Collections.unmodifiableList(new ArrayList<ObjectName>(mbeans))
+                : Collections.<ObjectName>emptyList();
+        }
+        return garbageCollectorNames;
+    }
+
     public synchronized Collection<GarbageCollectorMXBean> getGarbageCollectorMXBeans()
         throws IOException {
 
@@ -816,6 +993,21 @@ public class ProxyClient implements JConsoleContext {
         return sunOperatingSystemMXBean;
     }
 
+    /**
+     * Returns the Thread MXBean with the bulk per-thread CPU time
+     * operations, or <tt>null</tt> if the VM does not have them.
+     */
+    public synchronized com.sun.management.ThreadMXBean
+        getSunThreadMXBean() throws IOException {
+
+        if (supportsBulkThreadCpuTime && sunThreadMXBean == null) {
+            sunThreadMXBean =
+                newPlatformMXBeanProxy(server, THREAD_MXBEAN_NAME,
+                                       com.sun.management.ThreadMXBean.class);
+        }
+        return sunThreadMXBean;
+    }
+
     public synchronized HotSpotDiagnosticMXBean getHotSpotDiagnosticMXBean() throws IOException {
         if (hasHotSpotDiagnosticMXBean && hotspotDiagnosticMXBean == null) {
             hotspotDiagnosticMXBean =
@@ -862,6 +1054,14 @@ public class ProxyClient implements JConsoleContext {
         return this.hasPlatformMXBeans;
     }
 
+    boolean hasCompilationMXBean() {
+        return hasCompilationMXBean;
+    }
+
+    boolean hasSunOperatingSystemMXBean() {
+        return hasSunOperatingSystemMXBean;
+    }
+
     boolean hasHotSpotDiagnosticMXBean() {
         return this.hasHotSpotDiagnosticMXBean;
     }
@@ -932,17 +1132,25 @@ public class ProxyClient implements JConsoleContext {
     // caching to it, as follows:
     //
     // - The first time an attribute is called in a given MBean, the result is
-    //   cached. Every subsequent time getAttribute is called for that attribute
-    //   the cached result is returned.
+    //   cached. Every subsequent call to getAttribute for that attribute
+    //   returns the cached result until it is older than the time-to-live
+    //   (TTL) of the cache, which VMPanel sets to a fraction of the update
+    //   interval. Tab updates, attribute table refreshes and XPlottingViewer
+    //   charts reading an attribute within one interval thus share a single
+    //   remote read.
     //
-    // - Before every call to VMPanel.update() or when the Refresh button in the
-    //   Attributes table is pressed down the attributes cache is flushed. Then
-    //   any subsequent call to getAttribute will retrieve all the values for
-    //   the attributes that are known to the cache.
+    // - When the Refresh button in the Attributes table is pressed down the
+    //   attributes cache is flushed. Then any subsequent call to getAttribute
+    //   will retrieve all the values for the attributes that are known to the
+    //   cache.
     //
     // - The attributes cache uses a learning approach and only the attributes
     //   that are in the cache will be retrieved between two subsequent updates.
     //
+    // - The cache is a concurrent map, so readers of different MBeans do not
+    //   contend. Concurrent misses on the same MBean are collapsed into one
+    //   fetch, and the number of MBeans cached is bounded.
+    //
 
     public interface SnapshotMBeanServerConnection
             extends MBeanServerConnection {
@@ -957,7 +1165,17 @@ public class ProxyClient implements JConsoleContext {
         }
         public static SnapshotMBeanServerConnection
                 newSnapshot(MBeanServerConnection mbsc) {
-            final InvocationHandler ih = new SnapshotInvocationHandler(mbsc);
+            return newSnapshot(mbsc, 0L, Integer.MAX_VALUE);
+        }
+        /**
+         * @param ttl time-to-live of the cached values in milliseconds, the
+         *        values are only discarded on flush() if ttl &lt;= 0.
+         * @param maxSize maximum number of MBeans whose values are cached.
+         */
+        public static SnapshotMBeanServerConnection
+                newSnapshot(MBeanServerConnection mbsc, long ttl, int maxSize) {
+            final InvocationHandler ih =
+                new SnapshotInvocationHandler(mbsc, ttl, maxSize);
             return (SnapshotMBeanServerConnection) Proxy.newProxyInstance(
                     Snapshot.class.getClassLoader(),
                     new Class[] {SnapshotMBeanServerConnection.class},
@@ -965,22 +1183,82 @@ public class ProxyClient implements JConsoleContext {
         }
     }
 
+    /**
+     * Hit and miss statistics of a snapshot connection's cache.
+     */
+    public static class SnapshotStatistics {
+        public final long hits;
+        public final long misses;
+        public final long collapsedMisses;
+        public final long evictions;
+        public final int size;
+
+        SnapshotStatistics(long hits, long misses, long collapsedMisses,
+                           long evictions, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.collapsedMisses = collapsedMisses;
+            this.evictions = evictions;
+            this.size = size;
+        }
+    }
+
     static class SnapshotInvocationHandler implements InvocationHandler {
 
         private final MBeanServerConnection conn;
-        private Map<ObjectName, NameValueMap> cachedValues = newMap();
-        private Map<ObjectName, Set<String>> cachedNames = newMap();
+        private volatile long ttl;
+        private final int maxSize;
+        private final ConcurrentMap<ObjectName, NameValueMap> cachedValues =
+            new ConcurrentHashMap<ObjectName, NameValueMap>();
+        private final ConcurrentMap<ObjectName, Set<String>> cachedNames =
+            new ConcurrentHashMap<ObjectName, Set<String>>();
+        // Fetches in progress, so that concurrent misses wait for them
+        private final ConcurrentMap<ObjectName, FutureTask<NameValueMap>> pending =
+            new ConcurrentHashMap<ObjectName, FutureTask<NameValueMap>>();
+        // Incremented by flush(), values of older generations are stale
+        private volatile long generation = 0L;
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong collapsedMisses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
 
         @SuppressWarnings("serial")
         private static final class NameValueMap
-                extends HashMap<String, Object> {}
+                extends HashMap<String, Object> {
+            final long time = System.nanoTime();
+            final long generation;
+
+            NameValueMap(long generation) {
+                this.generation = generation;
+            }
+        }
 
         SnapshotInvocationHandler(MBeanServerConnection conn) {
+            this(conn, 0L, Integer.MAX_VALUE);
+        }
+
+        SnapshotInvocationHandler(MBeanServerConnection conn, long ttl,
+                                  int maxSize) {
             this.conn = conn;
+            this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
+            this.maxSize = maxSize;
+        }
+
+        void flush() {
+            generation++;
+            cachedValues.clear();
+        }
+
+        void setTtl(long ttl) {
+            this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
         }
 
-        synchronized void flush() {
-            cachedValues = newMap();
+        SnapshotStatistics getStatistics() {
+            return new SnapshotStatistics(hits.get(), misses.get(),
+                                          collapsedMisses.get(),
+                                          evictions.get(),
+                                          cachedValues.size());
         }
 
         public Object invoke(Object proxy, Method method, Object[] args)
@@ -994,6 +1272,11 @@ public class ProxyClient implements JConsoleContext {
                 flush();
                 return null;
             } else {
+                if (methodName.equals("setAttribute") ||
+                        methodName.equals("setAttributes")) {
+                    // Do not serve the old values until they expire
+                    cachedValues.remove((ObjectName) args[0]);
+                }
                 try {
                     return method.invoke(conn, args);
                 } catch (InvocationTargetException e) {
@@ -1033,33 +1316,152 @@ public class ProxyClient implements JConsoleContext {
             return list;
         }
 
-        private synchronized NameValueMap getCachedAttributes(
-                ObjectName objName, Set<String> attrNames) throws
+        private boolean isFresh(NameValueMap values) {
+            return values.generation == generation &&
+                   (ttl <= 0L || System.nanoTime() - values.time < ttl);
+        }
+
+        private NameValueMap getCachedAttributes(
+                final ObjectName objName, final Set<String> attrNames) throws
                 InstanceNotFoundException, ReflectionException, IOException {
             NameValueMap values = cachedValues.get(objName);
-            if (values != null && values.keySet().containsAll(attrNames)) {
+            if (values != null && isFresh(values) &&
+                    values.keySet().containsAll(attrNames)) {
+                hits.incrementAndGet();
                 return values;
             }
-            attrNames = new TreeSet<String>(attrNames);
+            // Learn the names, so that whichever fetch runs next gets them
+            learnNames(objName, attrNames);
+
+            FutureTask<NameValueMap> f = pending.get(objName);
+            if (f != null) {
+                // Another reader is fetching this MBean, share its result
+                // if it has what we need
+                collapsedMisses.incrementAndGet();
+                values = getResult(f);
+                if (values.keySet().containsAll(attrNames)) {
+                    return values;
+                }
+            }
+            misses.incrementAndGet();
+            FutureTask<NameValueMap> task = new FutureTask<NameValueMap>(
+                new Callable<NameValueMap>() {
+                    public NameValueMap call() throws Exception {
+                        return fetch(objName, attrNames);
+                    }
+                });
+            f = pending.putIfAbsent(objName, task);
+            if (f == null) {
+                try {
+                    task.run();
+                } finally {
+                    pending.remove(objName, task);
+                }
+                return getResult(task);
+            }
+            // Lost the race to another reader, share its result or, if it
+            // started before our names were learned, fetch on our own
+            values = getResult(f);
+            if (values.keySet().containsAll(attrNames)) {
+                return values;
+            }
+            return fetch(objName, attrNames);
+        }
+
+        private void learnNames(ObjectName objName, Set<String> attrNames) {
             Set<String> oldNames = cachedNames.get(objName);
-            if (oldNames != null) {
-                attrNames.addAll(oldNames);
+            if (oldNames == null || !oldNames.containsAll(attrNames)) {
+                Set<String> names = new TreeSet<String>(attrNames);
+                if (oldNames != null) {
+                    names.addAll(oldNames);
+                }
+                // Names are only ever added, losing a race merely means
+                // the other reader's names are learned on its next miss
+                cachedNames.put(objName, Collections.unmodifiableSet(names));
+            }
+        }
+
+        // Fetches the learned names of an MBean, or the requested ones if
+        // they have been evicted meanwhile
+        private NameValueMap fetch(ObjectName objName, Set<String> requested)
+                throws InstanceNotFoundException, ReflectionException,
+                IOException {
+            final long gen = generation;
+            Set<String> attrNames = cachedNames.get(objName);
+            if (attrNames == null) {
+                attrNames = requested;
             }
-            values = new NameValueMap();
+            final NameValueMap values = new NameValueMap(gen);
             final AttributeList attrs = conn.getAttributes(
                     objName,
                     attrNames.toArray(new String[attrNames.size()]));
             for (Attribute attr : attrs.asList()) {
                 values.put(attr.getName(), attr.getValue());
             }
-            cachedValues.put(objName, values);
-            cachedNames.put(objName, attrNames);
+            if (gen == generation) {
+                cachedValues.put(objName, values);
+                if (cachedValues.size() > maxSize ||
+                        cachedNames.size() > maxSize) {
+                    evict();
+                }
+            }
             return values;
         }
 
-        // See http://www.artima.com/weblogs/viewpost.jsp?thread=79394
-        private static <K, V> Map<K, V> newMap() {
-            return new HashMap<K, V>();
+        // Drops stale values first, then arbitrary ones, down to 90% of
+        // the maximum size so that eviction does not run on every miss.
+        // The names of the MBeans without values go too, such as the ones
+        // flushed or unregistered, they are learned again on their next
+        // miss.
+        private void evict() {
+            int target = maxSize - maxSize / 10;
+            Iterator<NameValueMap> it = cachedValues.values().iterator();
+            while (it.hasNext()) {
+                if (!isFresh(it.next())) {
+                    it.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+            it = cachedValues.values().iterator();
+            while (cachedValues.size() > target && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+            cachedNames.keySet().retainAll(cachedValues.keySet());
+        }
+
+        private static NameValueMap getResult(FutureTask<NameValueMap> f)
+                throws InstanceNotFoundException, ReflectionException,
+                IOException {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return f.get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                if (t instanceof InstanceNotFoundException) {
+                    throw (InstanceNotFoundException) t;
+                } else if (t instanceof ReflectionException) {
+                    throw (ReflectionException) t;
+                } else if (t instanceof IOException) {
+                    throw (IOException) t;
+                } else if (t instanceof RuntimeException) {
+                    throw (RuntimeException) t;
+                } else if (t instanceof Error) {
+                    throw (Error) t;
+                }
+                throw new UndeclaredThrowableException(t);
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
         }
     }
 }
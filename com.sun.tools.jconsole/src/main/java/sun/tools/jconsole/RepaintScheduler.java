@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package sun.tools.jconsole;
+
+import java.awt.Rectangle;
+import java.awt.event.*;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.swing.*;
+
+import andrask.sun.tools.jconsole.Settings;
+
+//
+// Repaint scheduler:
+//
+// One scheduler for the whole console repaints the charts whose data
+// changed, at most myjconsole.plotter.fps times per second. With many
+// charts updated a little out of step, repainting each chart as soon as
+// a sample arrives keeps the EDT busy; instead each update marks its
+// chart dirty, and the dirty charts are repainted together in one pass.
+//
+// - A pass only repaints the visible part of each chart. Charts that are
+//   not showing, e.g. on a hidden tab, or scrolled out of view, are not
+//   repainted at all; Swing paints them anyway when they are shown again.
+//
+// - The timer only runs while there are dirty charts.
+//
+public class RepaintScheduler implements ActionListener {
+
+    private static RepaintScheduler instance;
+
+    private final Timer timer;
+
+    // Guarded by this
+    private Set<JComponent> dirty = new LinkedHashSet<JComponent>();
+
+    public static synchronized RepaintScheduler getInstance() {
+        if (instance == null) {
+            int fps = Math.max(1, Settings.getInt(Settings.KEY_PLOTTER_FPS, 20));
+            instance = new RepaintScheduler(Math.max(1, 1000 / fps));
+        }
+        return instance;
+    }
+
+    private RepaintScheduler(int period) {
+        timer = new Timer(period, this);
+        timer.setRepeats(false);
+        timer.setCoalesce(true);
+    }
+
+    /**
+     * Schedules a repaint of a component in the next pass. May be called
+     * on any thread.
+     */
+    public void markDirty(JComponent c) {
+        boolean start;
+        synchronized (this) {
+            start = dirty.isEmpty();
+            dirty.add(c);
+        }
+        if (start) {
+            timer.restart();
+        }
+    }
+
+    // Called on the EDT
+    public void actionPerformed(ActionEvent e) {
+        Set<JComponent> components;
+        synchronized (this) {
+            components = dirty;
+            dirty = new LinkedHashSet<JComponent>();
+        }
+        for (JComponent c : components) {
+            if (c.isShowing()) {
+                Rectangle r = c.getVisibleRect();
+                if (!r.isEmpty()) {
+                    c.repaint(r);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package sun.tools.jconsole;
+
+import java.util.Arrays;
+
+//
+// Sample column:
+//
+// A ring of at most capacity long values, such as the time stamps or the
+// values of a plotted sequence, compressed in chunks of CHUNK_LENGTH
+// values. Most plotted values change slowly or by similar amounts from
+// one sample to the next, so a value usually costs from 1 to 20 bits
+// instead of 4 to 8 bytes.
+//
+// - Values are appended to an open chunk, an uncompressed array that is
+//   sealed, i.e. encoded into a bit stream, when it is full. Sealed chunks
+//   are never modified.
+//
+// - A sealed chunk of values starts with its first value in 64 bits. Each
+//   following value is encoded as the difference from the previous one,
+//   zigzag encoded so that small negative differences are small too, and
+//   written as "0" when it is 0, otherwise as "10", "110", "1110" or
+//   "1111" followed by 7, 16, 32 or 64 bits. These chunks are decoded
+//   sequentially by a Decoder: reading a range of values costs one pass
+//   over the chunks holding it, a single value costs the decoding of its
+//   chunk up to it.
+//
+// - Time stamps grow at a regular pace and are looked up one at a time,
+//   so a sealed chunk of time stamps is stored as its first value, the
+//   average step and, for each value, its zigzag encoded distance from
+//   first + i * step in a fixed number of bits, that of the largest
+//   distance. Any time stamp is decoded in constant time, and finding a
+//   time is a binary search.
+//
+// - The oldest values are dropped one at a time, but the memory of a
+//   sealed chunk is only released once all its values are dropped.
+//
+// - There is a single writer, and any number of readers reading immutable
+//   Views of the column. The array of sealed chunks is copied when a chunk
+//   is sealed or released, and a new open chunk is allocated when one is
+//   sealed, so the writer never modifies what a View refers to. A View
+//   must be published to other threads through a volatile field.
+//
+class SampleColumn {
+
+    static final int CHUNK_LENGTH = 128;
+
+    // Number of bits and prefixes of the encoded differences, see encode
+    private static final int[] WIDTHS = { 7, 16, 32, 64 };
+
+    // Header words of a sealed chunk of time stamps
+    private static final int FIRST = 0;
+    private static final int STEP = 1;
+    private static final int WIDTH = 2;
+    private static final int HEADER_BITS = 3 * 64;
+
+    private final int capacity;
+    private final boolean timeStamps;
+
+    // Sealed chunks, oldest first
+    private long[][] chunks = new long[0][];
+
+    // The open chunk
+    private long[] open = new long[CHUNK_LENGTH];
+    private int openSize = 0;
+
+    // Number of dropped values of the oldest sealed chunk
+    private int skip = 0;
+
+    private int size = 0;
+    private long first = 0;
+
+    // The last view, null if values have been added since
+    private View view = null;
+
+    /**
+     * @param capacity the number of values kept, at least CHUNK_LENGTH
+     * @param timeStamps whether the values are ascending time stamps,
+     *        encoded for constant time access
+     */
+    SampleColumn(int capacity, boolean timeStamps) {
+        this.capacity = Math.max(capacity, CHUNK_LENGTH);
+        this.timeStamps = timeStamps;
+    }
+
+    /**
+     * Returns the number of values kept
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of values dropped so far, i.e. the number of the
+     * oldest value kept counted from the first value ever added
+     */
+    public long first() {
+        return first;
+    }
+
+    public void add(long value) {
+        if (size == capacity) {
+            // Drop the oldest value, it is always in a sealed chunk
+            size--;
+            first++;
+            if (++skip == CHUNK_LENGTH) {
+                chunks = Arrays.copyOfRange(chunks, 1, chunks.length);
+                skip = 0;
+            }
+        }
+        open[openSize++] = value;
+        size++;
+        if (openSize == CHUNK_LENGTH) {
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = timeStamps ? encodeTimes(open, CHUNK_LENGTH)
+                                                   : encode(open, CHUNK_LENGTH);
+            open = new long[CHUNK_LENGTH];
+            openSize = 0;
+        }
+        view = null;
+    }
+
+    /**
+     * Returns an immutable view of the values added so far
+     */
+    public View view() {
+        if (view == null) {
+            view = new View(this);
+        }
+        return view;
+    }
+
+    /**
+     * The values of a column at some point in time.
+     */
+    static class View {
+        private final boolean timeStamps;
+        private final long[][] chunks;
+        private final long[] open;
+        private final int skip;
+        private final int size;
+        private final long first;
+
+        private View(SampleColumn column) {
+            timeStamps = column.timeStamps;
+            chunks = column.chunks;
+            open = column.open;
+            skip = column.skip;
+            size = column.size;
+            first = column.first;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the number of values dropped before this view
+         */
+        public long first() {
+            return first;
+        }
+
+        /**
+         * Returns the value at index i, in constant time for time stamps
+         */
+        public long get(int i) {
+            int p = skip + i;
+            int c = p / CHUNK_LENGTH;
+            if (c == chunks.length) {
+                return open[p - c * CHUNK_LENGTH];
+            }
+            if (timeStamps) {
+                return getTime(chunks[c], p - c * CHUNK_LENGTH);
+            }
+            Decoder d = new Decoder();
+            d.reset(chunks[c]);
+            for (int k = p - c * CHUNK_LENGTH; k > 0; k--) {
+                d.next();
+            }
+            return d.next();
+        }
+
+        /**
+         * Reads the values at indices from to to - 1 into dst at off
+         */
+        public void get(int from, int to, long[] dst, int off) {
+            Decoder d = null;
+            int p = skip + from;
+            int end = skip + to;
+            while (p < end) {
+                int c = p / CHUNK_LENGTH;
+                int k = p - c * CHUNK_LENGTH;
+                int n = Math.min(end - p, CHUNK_LENGTH - k);
+                if (c == chunks.length) {
+                    System.arraycopy(open, k, dst, off, n);
+                } else if (timeStamps) {
+                    for (int j = 0; j < n; j++) {
+                        dst[off + j] = getTime(chunks[c], k + j);
+                    }
+                } else {
+                    if (d == null) {
+                        d = new Decoder();
+                    }
+                    d.reset(chunks[c]);
+                    for (; k > 0; k--) {
+                        d.next();
+                    }
+                    for (int j = 0; j < n; j++) {
+                        dst[off + j] = d.next();
+                    }
+                }
+                p += n;
+                off += n;
+            }
+        }
+
+        /**
+         * Returns the index of the first value at or above the given
+         * value, or the last index if there is none. The values must be
+         * ascending, as time stamps are.
+         */
+        public int find(long value) {
+            int lo = 0;
+            int hi = size - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (get(mid) < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return Math.max(lo, 0);
+        }
+
+        /**
+         * Returns the number of bytes used by the values, for diagnostics
+         */
+        public long getMemoryUsage() {
+            long bytes = 8L * open.length;
+            for (long[] chunk : chunks) {
+                bytes += 8L * chunk.length;
+            }
+            return bytes;
+        }
+    }
+
+    // Returns the number of bits of an encoded zigzag difference
+    private static int encodedLength(long zigzag) {
+        if (zigzag == 0) {
+            return 1;
+        }
+        for (int w = 0; w < WIDTHS.length - 1; w++) {
+            if ((zigzag >>> WIDTHS[w]) == 0) {
+                return w + 2 + WIDTHS[w];
+            }
+        }
+        return WIDTHS.length + 64;
+    }
+
+    private static long[] encode(long[] values, int n) {
+        // Sized exactly, in a first pass
+        long bits = 64;
+        for (int i = 1; i < n; i++) {
+            bits += encodedLength(zigzag(values[i] - values[i - 1]));
+        }
+        long[] words = new long[(int)((bits + 63) / 64)];
+        int pos = put(words, 0, values[0], 64);
+        for (int i = 1; i < n; i++) {
+            long z = zigzag(values[i] - values[i - 1]);
+            if (z == 0) {
+                pos = put(words, pos, 0, 1);
+                continue;
+            }
+            int w = 0;
+            while (w < WIDTHS.length - 1 && (z >>> WIDTHS[w]) != 0) {
+                w++;
+            }
+            // w ones followed by a zero, except for the last width
+            int prefixLength = (w < WIDTHS.length - 1) ? w + 2 : w + 1;
+            long prefix = (w < WIDTHS.length - 1) ? (1L << (w + 2)) - 2
+                                                  : (1L << (w + 1)) - 1;
+            pos = put(words, pos, prefix, prefixLength);
+            pos = put(words, pos, z, WIDTHS[w]);
+        }
+        return words;
+    }
+
+    private static long[] encodeTimes(long[] values, int n) {
+        long first = values[0];
+        long step = (values[n - 1] - first) / (n - 1);
+        long bits = 0;
+        for (int i = 0; i < n; i++) {
+            bits |= zigzag(values[i] - (first + i * step));
+        }
+        int width = 64 - Long.numberOfLeadingZeros(bits);
+        long[] words = new long[(HEADER_BITS + n * width + 63) / 64];
+        words[FIRST] = first;
+        words[STEP] = step;
+        words[WIDTH] = width;
+        if (width > 0) {
+            int pos = HEADER_BITS;
+            for (int i = 0; i < n; i++) {
+                pos = put(words, pos, zigzag(values[i] - (first + i * step)), width);
+            }
+        }
+        return words;
+    }
+
+    // Returns value k of a sealed chunk of time stamps
+    private static long getTime(long[] words, int k) {
+        int width = (int)words[WIDTH];
+        long z = (width == 0) ? 0 : read(words, HEADER_BITS + k * width, width);
+        return words[FIRST] + k * words[STEP] + unzigzag(z);
+    }
+
+    // Writes the n low bits of v at bit pos, most significant bit first,
+    // into words that are zero from pos on. Returns the new bit position.
+    private static int put(long[] words, int pos, long v, int n) {
+        if (n < 64) {
+            v &= (1L << n) - 1;
+        }
+        int i = pos >>> 6;
+        int free = 64 - (pos & 63);
+        if (n <= free) {
+            words[i] |= v << (free - n);
+        } else {
+            words[i] |= v >>> (n - free);
+            words[i + 1] = v << (64 - (n - free));
+        }
+        return pos + n;
+    }
+
+    private static long zigzag(long d) {
+        return (d << 1) ^ (d >> 63);
+    }
+
+    private static long unzigzag(long z) {
+        return (z >>> 1) ^ -(z & 1);
+    }
+
+    // Reads the n bits at bit pos, from 1 to 64
+    private static long read(long[] words, int pos, int n) {
+        int i = pos >>> 6;
+        int used = pos & 63;
+        int avail = 64 - used;
+        long v = (words[i] << used) >>> (64 - n);
+        if (n > avail) {
+            v |= words[i + 1] >>> (64 - (n - avail));
+        }
+        return v;
+    }
+
+    /**
+     * Decodes the values of a sealed chunk of values, not time stamps,
+     * in order.
+     */
+    static class Decoder {
+        private long[] words;
+        private int pos;
+        private long value;
+
+        void reset(long[] words) {
+            this.words = words;
+            pos = 0;
+        }
+
+        /**
+         * Returns the next value, at most CHUNK_LENGTH values per chunk
+         */
+        long next() {
+            if (pos == 0) {
+                value = read(64);
+                return value;
+            }
+            long z = 0;
+            if (read(1) != 0) {
+                int w = 0;
+                while (w < WIDTHS.length - 1 && read(1) != 0) {
+                    w++;
+                }
+                z = read(WIDTHS[w]);
+            }
+            value += unzigzag(z);
+            return value;
+        }
+
+        private long read(int n) {
+            long v = SampleColumn.read(words, pos, n);
+            pos += n;
+            return v;
+        }
+    }
+}
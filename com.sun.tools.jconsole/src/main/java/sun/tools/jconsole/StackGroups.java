@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sun.tools.jconsole;
+
+import static sun.tools.jconsole.Resources.getText;
+
+import java.lang.management.LockInfo;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//
+// Stack groups:
+//
+// The threads of a thread dump grouped by identical stacks, so that the
+// hundreds of idle workers of a pool show up as one entry.
+//
+// - Threads are in the same group if they have the same state, frames
+//   and lock state. Locks are compared by class, as each thread of a pool
+//   holds and waits on its own objects, except the monitor of a BLOCKED
+//   thread, whose identity tells which threads contend on the same lock.
+//
+// - The key of a thread is hashed once, from the hash codes of its frames.
+//
+// - Groups are sorted by size, largest first, or by state, RUNNABLE and
+//   BLOCKED first, then by size.
+//
+class StackGroups {
+
+    static final int BY_SIZE = 0;
+    static final int BY_STATE = 1;
+
+    // Maximum length of a line of member thread names
+    private static final int NAMES_WIDTH = 120;
+
+    private final List<Group> groups;
+    private final int threadCount;
+
+    StackGroups(ThreadInfo[] infos, int sortOrder) {
+        Map<Key, Group> map = new HashMap<Key, Group>();
+        groups = new ArrayList<Group>();
+        int count = 0;
+        for (ThreadInfo info : infos) {
+            if (info == null) {
+                // Terminated since its id was read
+                continue;
+            }
+            Key key = new Key(info);
+            Group group = map.get(key);
+            if (group == null) {
+                group = new Group(info);
+                map.put(key, group);
+                groups.add(group);
+            }
+            group.members.add(info);
+            count++;
+        }
+        threadCount = count;
+        Collections.sort(groups, sortOrder == BY_STATE ? STATE_ORDER : SIZE_ORDER);
+    }
+
+    int getThreadCount() {
+        return threadCount;
+    }
+
+    int getGroupCount() {
+        return groups.size();
+    }
+
+    /**
+     * Returns the groups as text, each with its size, its member threads
+     * and the stack of its first thread.
+     */
+    String getDump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(getText("StackGroups.summary", threadCount, groups.size()));
+        sb.append("\n\n");
+        for (Group group : groups) {
+            group.append(sb);
+        }
+        return sb.toString();
+    }
+
+    private static final Comparator<Group> SIZE_ORDER = new Comparator<Group>() {
+        public int compare(Group g1, Group g2) {
+            int n1 = g1.members.size();
+            int n2 = g2.members.size();
+            if (n1 != n2) {
+                return (n1 > n2) ? -1 : 1;
+            }
+            return g1.info.getThreadState().compareTo(g2.info.getThreadState());
+        }
+    };
+
+    private static final Comparator<Group> STATE_ORDER = new Comparator<Group>() {
+        public int compare(Group g1, Group g2) {
+            int c = g1.info.getThreadState().compareTo(g2.info.getThreadState());
+            return (c != 0) ? c : SIZE_ORDER.compare(g1, g2);
+        }
+    };
+
+    /**
+     * The frames and lock state of a thread
+     */
+    private static class Key {
+        private final Thread.State state;
+        private final boolean inNative;
+        private final boolean suspended;
+        private final StackTraceElement[] frames;
+        private final String lock;
+        // Class names of the monitors locked, each at its depth in
+        // lockDepths, then of the synchronizers locked
+        private final String[] locked;
+        private final int[] lockDepths;
+        private final int hash;
+
+        Key(ThreadInfo info) {
+            state = info.getThreadState();
+            inNative = info.isInNative();
+            suspended = info.isSuspended();
+            frames = info.getStackTrace();
+            LockInfo li = info.getLockInfo();
+            if (li == null) {
+                lock = null;
+            } else if (state == Thread.State.BLOCKED) {
+                lock = li.toString();
+            } else {
+                lock = li.getClassName();
+            }
+            MonitorInfo[] monitors = info.getLockedMonitors();
+            LockInfo[] synchronizers = info.getLockedSynchronizers();
+            locked = new String[monitors.length + synchronizers.length];
+            lockDepths = new int[monitors.length];
+            for (int i = 0; i < monitors.length; i++) {
+                locked[i] = monitors[i].getClassName();
+                lockDepths[i] = monitors[i].getLockedStackDepth();
+            }
+            for (int i = 0; i < synchronizers.length; i++) {
+                locked[monitors.length + i] = synchronizers[i].getClassName();
+            }
+
+            int h = state.hashCode();
+            h = 31 * h + Arrays.hashCode(frames);
+            h = 31 * h + (lock == null ? 0 : lock.hashCode());
+            h = 31 * h + Arrays.hashCode(locked);
+            h = 31 * h + Arrays.hashCode(lockDepths);
+            hash = 2 * h + (inNative ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key)o;
+            return hash == k.hash && state == k.state &&
+                   inNative == k.inNative && suspended == k.suspended &&
+                   (lock == null ? k.lock == null : lock.equals(k.lock)) &&
+                   Arrays.equals(lockDepths, k.lockDepths) &&
+                   Arrays.equals(locked, k.locked) &&
+                   Arrays.equals(frames, k.frames);
+        }
+    }
+
+    /**
+     * The threads with the same key, info being the first one
+     */
+    private static class Group {
+        final ThreadInfo info;
+        final List<ThreadInfo> members = new ArrayList<ThreadInfo>();
+
+        Group(ThreadInfo info) {
+            this.info = info;
+        }
+
+        void append(StringBuilder sb) {
+            Thread.State state = info.getThreadState();
+            sb.append(getText("StackGroups.header", members.size(), state));
+            LockInfo li = info.getLockInfo();
+            boolean blocked = state == Thread.State.BLOCKED;
+            if (li != null) {
+                sb.append(" on " + (blocked ? li.toString() : li.getClassName()));
+            }
+            if (blocked && info.getLockOwnerName() != null) {
+                sb.append(" owned by \"" + info.getLockOwnerName() +
+                          "\" Id=" + info.getLockOwnerId());
+            }
+            if (info.isSuspended()) {
+                sb.append(" (suspended)");
+            }
+            if (info.isInNative()) {
+                sb.append(" (in native)");
+            }
+            sb.append('\n');
+
+            int lineStart = sb.length();
+            sb.append('\t');
+            for (int i = 0; i < members.size(); i++) {
+                ThreadInfo t = members.get(i);
+                String name = "\"" + t.getThreadName() + "\" Id=" + t.getThreadId();
+                if (i > 0) {
+                    sb.append(',');
+                    if (sb.length() - lineStart + name.length() + 1 > NAMES_WIDTH) {
+                        sb.append("\n\t");
+                        lineStart = sb.length() - 1;
+                    } else {
+                        sb.append(' ');
+                    }
+                }
+                sb.append(name);
+            }
+            sb.append('\n');
+
+            StackTraceElement[] frames = info.getStackTrace();
+            MonitorInfo[] monitors = info.getLockedMonitors();
+            for (int i = 0; i < frames.length; i++) {
+                sb.append("\tat " + frames[i]);
+                sb.append('\n');
+                if (i == 0 && li != null && state != Thread.State.RUNNABLE) {
+                    sb.append(blocked ? "\t-  blocked on " + li
+                                      : "\t-  waiting on " + li.getClassName());
+                    sb.append('\n');
+                }
+                for (MonitorInfo mi : monitors) {
+                    if (mi.getLockedStackDepth() == i) {
+                        sb.append("\t-  locked " + mi.getClassName());
+                        sb.append('\n');
+                    }
+                }
+            }
+            LockInfo[] locks = info.getLockedSynchronizers();
+            if (locks.length > 0) {
+                sb.append("\n\tNumber of locked synchronizers = " + locks.length);
+                sb.append('\n');
+                for (LockInfo l : locks) {
+                    sb.append("\t- " + l.getClassName());
+                    sb.append('\n');
+                }
+            }
+            sb.append('\n');
+        }
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package sun.tools.jconsole;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+//
+// Stack profiler:
+//
+// A sampling CPU profiler working through the JMX connection, without an
+// agent. A thread reads the stacks of all the threads of the VM at a fixed
+// interval, with getThreadInfo(ids, depth), and merges the stacks of the
+// RUNNABLE ones in a call tree, optionally only the threads whose name
+// contains a filter text.
+//
+// - Frames are interned as "class.method" strings, so that the lines of a
+//   method are one node, and nodes refer to them by index.
+//
+// - The tree is kept in parallel int arrays, a node per call path, with
+//   its self count (samples where it is the top frame) and total count
+//   (samples where it is on the stack). Children are found by (parent,
+//   frame) in a LongHashMap.
+//
+// - Readers get immutable Tree copies, which also write the collapsed
+//   stack text format of flame graph tools: one line per stack, root
+//   frame first, frames separated by ';', followed by its sample count.
+//
+class StackProfiler {
+
+    static final int ROOT = 0;
+
+    // Guarded by this
+    private final Map<String, Integer> frameIds = new HashMap<String, Integer>();
+    private final List<String> frames = new ArrayList<String>();
+    private final LongHashMap<Integer> children = new LongHashMap<Integer>();
+    private int[] frame = new int[1024];
+    private int[] parent = new int[1024];
+    private int[] depth = new int[1024];
+    private int[] self = new int[1024];
+    private int[] total = new int[1024];
+    private int size = 1;
+    private int samples = 0;
+    private int stacks = 0;
+
+    private volatile Thread sampler = null;
+
+    StackProfiler() {
+        frame[ROOT] = -1;
+        parent[ROOT] = -1;
+    }
+
+    /**
+     * Starts sampling, does nothing if started.
+     *
+     * @param filter the lower case text the names of the threads sampled
+     *        contain, empty for all threads
+     * @param interval milliseconds between samples
+     * @param maxDepth frames sampled per stack
+     */
+    public synchronized void start(final ProxyClient proxyClient,
+                                   final ThreadRegistry registry,
+                                   final String filter,
+                                   final int interval, final int maxDepth) {
+        if (sampler != null) {
+            return;
+        }
+        sampler = new Thread("StackProfiler") {
+            public void run() {
+                try {
+                    while (sampler == this) {
+                        long start = System.currentTimeMillis();
+                        sample(proxyClient, registry, filter, maxDepth);
+                        long sleep = interval - (System.currentTimeMillis() - start);
+                        if (sleep > 0) {
+                            Thread.sleep(sleep);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // Stopped
+                } catch (IOException e) {
+                    if (JConsole.isDebug()) {
+                        e.printStackTrace();
+                    }
+                } catch (UndeclaredThrowableException e) {
+                    proxyClient.markAsDead();
+                } finally {
+                    synchronized (StackProfiler.this) {
+                        if (sampler == this) {
+                            sampler = null;
+                        }
+                    }
+                }
+            }
+        };
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    public synchronized void stop() {
+        if (sampler != null) {
+            sampler.interrupt();
+            sampler = null;
+        }
+    }
+
+    public boolean isRunning() {
+        return sampler != null;
+    }
+
+    private void sample(ProxyClient proxyClient, ThreadRegistry registry,
+                        String filter, int maxDepth) throws IOException {
+        ThreadMXBean tm = proxyClient.getThreadMXBean();
+        long[] ids = tm.getAllThreadIds();
+        if (filter.length() > 0) {
+            // Threads whose name is not known yet are checked below. The
+            // array may be cached by the connection, so it is copied.
+            long[] filtered = new long[ids.length];
+            int n = 0;
+            for (long id : ids) {
+                String name = registry.getName(id);
+                if (name == null || contains(name, filter)) {
+                    filtered[n++] = id;
+                }
+            }
+            ids = Arrays.copyOf(filtered, n);
+        }
+        ThreadInfo[] infos = tm.getThreadInfo(ids, maxDepth);
+        synchronized (this) {
+            for (ThreadInfo ti : infos) {
+                if (ti != null && ti.getThreadState() == Thread.State.RUNNABLE &&
+                    (filter.length() == 0 || contains(ti.getThreadName(), filter))) {
+                    add(ti.getStackTrace());
+                }
+            }
+            samples++;
+        }
+    }
+
+    private static boolean contains(String name, String filter) {
+        return name.toLowerCase(Locale.ENGLISH).indexOf(filter) >= 0;
+    }
+
+    // Adds a stack, top frame first
+    private void add(StackTraceElement[] stack) {
+        if (stack.length == 0) {
+            return;
+        }
+        int node = ROOT;
+        total[ROOT]++;
+        for (int i = stack.length - 1; i >= 0; i--) {
+            int f = getFrameId(stack[i]);
+            long key = ((long)node << 32) | f;
+            Integer child = children.get(key);
+            if (child == null) {
+                child = newNode(node, f);
+                children.put(key, child);
+            }
+            node = child;
+            total[node]++;
+        }
+        self[node]++;
+        stacks++;
+    }
+
+    private int getFrameId(StackTraceElement e) {
+        String name = e.getClassName() + "." + e.getMethodName();
+        Integer id = frameIds.get(name);
+        if (id == null) {
+            id = frames.size();
+            frames.add(name);
+            frameIds.put(name, id);
+        }
+        return id;
+    }
+
+    private int newNode(int parentNode, int f) {
+        if (size == frame.length) {
+            int length = size * 2;
+            frame = Arrays.copyOf(frame, length);
+            parent = Arrays.copyOf(parent, length);
+            depth = Arrays.copyOf(depth, length);
+            self = Arrays.copyOf(self, length);
+            total = Arrays.copyOf(total, length);
+        }
+        frame[size] = f;
+        parent[size] = parentNode;
+        depth[size] = depth[parentNode] + 1;
+        self[size] = 0;
+        total[size] = 0;
+        return size++;
+    }
+
+    /**
+     * Drops the samples taken so far.
+     */
+    public synchronized void reset() {
+        frameIds.clear();
+        frames.clear();
+        children.clear();
+        size = 1;
+        total[ROOT] = 0;
+        samples = 0;
+        stacks = 0;
+    }
+
+    public synchronized Tree getTree() {
+        return new Tree(this);
+    }
+
+    /**
+     * The call tree at some point in time. Node 0 is the root, the
+     * children of a node are sorted by frame name.
+     */
+    static class Tree {
+        final String[] frames;
+        final int size;
+        final int samples;
+        final int stacks;
+        final int maxDepth;
+        private final int[] frame;
+        private final int[] parent;
+        private final int[] depth;
+        private final int[] self;
+        private final int[] total;
+        // Children of node i are childList[childStart[i]] to
+        // childList[childStart[i + 1] - 1]
+        private final int[] childStart;
+        private final int[] childList;
+
+        private Tree(StackProfiler p) {
+            frames = p.frames.toArray(new String[p.frames.size()]);
+            size = p.size;
+            samples = p.samples;
+            stacks = p.stacks;
+            frame = Arrays.copyOf(p.frame, size);
+            parent = Arrays.copyOf(p.parent, size);
+            depth = Arrays.copyOf(p.depth, size);
+            self = Arrays.copyOf(p.self, size);
+            total = Arrays.copyOf(p.total, size);
+
+            int max = 0;
+            childStart = new int[size + 1];
+            for (int i = 1; i < size; i++) {
+                childStart[parent[i] + 1]++;
+                max = Math.max(max, depth[i]);
+            }
+            maxDepth = max;
+            for (int i = 0; i < size; i++) {
+                childStart[i + 1] += childStart[i];
+            }
+            childList = new int[Math.max(0, size - 1)];
+            int[] next = Arrays.copyOf(childStart, size);
+            for (int i = 1; i < size; i++) {
+                childList[next[parent[i]]++] = i;
+            }
+            for (int i = 0; i < size; i++) {
+                sortChildren(childStart[i], childStart[i + 1]);
+            }
+        }
+
+        // Insertion sort, nodes have few children
+        private void sortChildren(int from, int to) {
+            for (int i = from + 1; i < to; i++) {
+                int node = childList[i];
+                String name = frames[frame[node]];
+                int j = i - 1;
+                while (j >= from && frames[frame[childList[j]]].compareTo(name) > 0) {
+                    childList[j + 1] = childList[j];
+                    j--;
+                }
+                childList[j + 1] = node;
+            }
+        }
+
+        /**
+         * Returns the frame of a node, <tt>null</tt> for the root.
+         */
+        public String getFrame(int node) {
+            return (node == ROOT) ? null : frames[frame[node]];
+        }
+
+        /**
+         * Returns the parent of a node, -1 for the root.
+         */
+        public int getParent(int node) {
+            return parent[node];
+        }
+
+        public int getDepth(int node) {
+            return depth[node];
+        }
+
+        public int getSelf(int node) {
+            return self[node];
+        }
+
+        public int getTotal(int node) {
+            return total[node];
+        }
+
+        public int getChildCount(int node) {
+            return childStart[node + 1] - childStart[node];
+        }
+
+        public int getChild(int node, int i) {
+            return childList[childStart[node] + i];
+        }
+
+        /**
+         * Writes the stacks in the collapsed stack format.
+         */
+        public void writeCollapsed(Writer w) throws IOException {
+            // Depth first, with the frames of the current path
+            String[] path = new String[maxDepth + 1];
+            int[] stack = new int[size];
+            int top = 0;
+            stack[top++] = ROOT;
+            StringBuilder line = new StringBuilder();
+            while (top > 0) {
+                int node = stack[--top];
+                int d = depth[node];
+                if (node != ROOT) {
+                    path[d] = frames[frame[node]];
+                }
+                if (self[node] > 0 && node != ROOT) {
+                    line.setLength(0);
+                    for (int i = 1; i <= d; i++) {
+                        if (i > 1) {
+                            line.append(';');
+                        }
+                        line.append(path[i]);
+                    }
+                    line.append(' ').append(self[node]).append('\n');
+                    w.write(line.toString());
+                }
+                for (int i = childStart[node + 1] - 1; i >= childStart[node]; i--) {
+                    stack[top++] = childList[i];
+                }
+            }
+        }
+    }
+}
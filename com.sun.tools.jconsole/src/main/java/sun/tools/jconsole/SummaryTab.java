@@ -128,14 +128,7 @@ class SummaryTab extends Tab {
         append("<table cellpadding=1>");
 
         try {
-            RuntimeMXBean         rmBean     = proxyClient.getRuntimeMXBean();
-            CompilationMXBean     cmpMBean   = proxyClient.getCompilationMXBean();
-            ThreadMXBean          tmBean     = proxyClient.getThreadMXBean();
-            MemoryMXBean          memoryBean = proxyClient.getMemoryMXBean();
-            ClassLoadingMXBean    clMBean    = proxyClient.getClassLoadingMXBean();
-            OperatingSystemMXBean osMBean    = proxyClient.getOperatingSystemMXBean();
-            com.sun.management.OperatingSystemMXBean sunOSMBean  =
-               proxyClient.getSunOperatingSystemMXBean();
+            PlatformSnapshot snapshot = proxyClient.getPlatformSnapshot();
 
             append("<tr><td colspan=4>");
             append("<center><b>" + getText("SummaryTab.tabName") + "</b></center>");
@@ -150,24 +143,24 @@ class SummaryTab extends Tab {
                 append("Connection name", vmPanel.getDisplayName());
                 append("Virtual Machine",
                        getText("SummaryTab.vmVersion",
-                               rmBean.getVmName(), rmBean.getVmVersion()));
-                append("Vendor", rmBean.getVmVendor());
-                append("Name", rmBean.getName());
+                               snapshot.getVmName(), snapshot.getVmVersion()));
+                append("Vendor", snapshot.getVmVendor());
+                append("Name", snapshot.getName());
                 append(endTable);
 
                 append(newRightTable);
-                result.upTime = rmBean.getUptime();
+                result.upTime = snapshot.getUptime();
                 append("Uptime", formatTime(result.upTime));
-                if (sunOSMBean != null) {
-                    result.processCpuTime = sunOSMBean.getProcessCpuTime();
+                if (snapshot.getProcessCpuTime() >= 0L) {
+                    result.processCpuTime = snapshot.getProcessCpuTime();
                     append("Process CPU time", formatNanoTime(result.processCpuTime));
                 }
 
-                if (cmpMBean != null) {
-                    append("JIT compiler", cmpMBean.getName());
+                if (snapshot.getCompilerName() != null) {
+                    append("JIT compiler", snapshot.getCompilerName());
                     append("Total compile time",
-                           cmpMBean.isCompilationTimeMonitoringSupported()
-                                    ? formatTime(cmpMBean.getTotalCompilationTime())
+                           snapshot.isCompilationTimeMonitoringSupported()
+                                    ? formatTime(snapshot.getTotalCompilationTime())
                                     : getText("Unavailable"));
                 } else {
                     append("JIT compiler", getText("Unavailable"));
@@ -179,10 +172,10 @@ class SummaryTab extends Tab {
 
             {  // Threads and Classes
                 append(newLeftTable);
-                int tlCount = tmBean.getThreadCount();
-                int tdCount = tmBean.getDaemonThreadCount();
-                int tpCount = tmBean.getPeakThreadCount();
-                long ttCount = tmBean.getTotalStartedThreadCount();
+                int tlCount = snapshot.getThreadCount();
+                int tdCount = snapshot.getDaemonThreadCount();
+                int tpCount = snapshot.getPeakThreadCount();
+                long ttCount = snapshot.getTotalStartedThreadCount();
                 String[] strings1 = formatLongs(tlCount, tpCount,
                                                 tdCount, ttCount);
                 append("Live Threads",          strings1[0]);
@@ -192,9 +185,9 @@ class SummaryTab extends Tab {
                 append(endTable);
 
                 append(newRightTable);
-                long clCount = clMBean.getLoadedClassCount();
-                long cuCount = clMBean.getUnloadedClassCount();
-                long ctCount = clMBean.getTotalLoadedClassCount();
+                long clCount = snapshot.getLoadedClassCount();
+                long cuCount = snapshot.getUnloadedClassCount();
+                long ctCount = snapshot.getTotalLoadedClassCount();
                 String[] strings2 = formatLongs(clCount, cuCount, ctCount);
                 append("Current classes loaded", strings2[0]);
                 append("Total classes loaded",   strings2[2]);
@@ -206,7 +199,10 @@ class SummaryTab extends Tab {
             append(newDivider);
 
             {  // Memory
-                MemoryUsage u = memoryBean.getHeapMemoryUsage();
+                MemoryUsage u = snapshot.getHeapMemoryUsage();
+                if (u == null) {
+                    u = new MemoryUsage(-1L, 0L, 0L, -1L);
+                }
 
                 append(newLeftTable);
                 String[] strings1 = formatKByteStrings(u.getUsed(), u.getMax());
@@ -219,16 +215,15 @@ class SummaryTab extends Tab {
                 append("Committed memory",  strings2[0]);
                 append("SummaryTab.pendingFinalization.label",
                        getText("SummaryTab.pendingFinalization.value",
-                               memoryBean.getObjectPendingFinalizationCount()));
+                               snapshot.getObjectPendingFinalizationCount()));
                 append(endTable);
 
                 append(newTable);
-                Collection<GarbageCollectorMXBean> garbageCollectors =
-                                            proxyClient.getGarbageCollectorMXBeans();
-                for (GarbageCollectorMXBean garbageCollectorMBean : garbageCollectors) {
-                    String gcName = garbageCollectorMBean.getName();
-                    long gcCount = garbageCollectorMBean.getCollectionCount();
-                    long gcTime = garbageCollectorMBean.getCollectionTime();
+                for (PlatformSnapshot.GarbageCollector gc :
+                         snapshot.getGarbageCollectors()) {
+                    String gcName = gc.getName();
+                    long gcCount = gc.getCollectionCount();
+                    long gcTime = gc.getCollectionTime();
 
                     append("Garbage collector",
                            getText("GcInfo", gcName, gcCount,
@@ -243,30 +238,30 @@ class SummaryTab extends Tab {
 
             {  // Operating System info
                 append(newLeftTable);
-                String osName = osMBean.getName();
-                String osVersion = osMBean.getVersion();
-                String osArch = osMBean.getArch();
-                result.nCPUs = osMBean.getAvailableProcessors();
+                String osName = snapshot.getOsName();
+                String osVersion = snapshot.getOsVersion();
+                String osArch = snapshot.getOsArch();
+                result.nCPUs = snapshot.getAvailableProcessors();
                 append("Operating System", osName + " " + osVersion);
                 append("Architecture", osArch);
                 append("Number of processors", result.nCPUs+"");
 
-                if (pathSeparator == null) {
+                if (pathSeparator == null && osName != null) {
                     // Must use separator of remote OS, not File.pathSeparator
                     // from this local VM. In the future, consider using
                     // RuntimeMXBean to get the remote system property.
                     pathSeparator = osName.startsWith("Windows ") ? ";" : ":";
                 }
 
-                if (sunOSMBean != null) {
+                if (snapshot.hasSunOperatingSystemMXBean()) {
                     String[] kbStrings1 =
-                        formatKByteStrings(sunOSMBean.getCommittedVirtualMemorySize());
+                        formatKByteStrings(snapshot.getCommittedVirtualMemorySize());
 
                     String[] kbStrings2 =
-                        formatKByteStrings(sunOSMBean.getTotalPhysicalMemorySize(),
-                                           sunOSMBean.getFreePhysicalMemorySize(),
-                                           sunOSMBean.getTotalSwapSpaceSize(),
-                                           sunOSMBean.getFreeSwapSpaceSize());
+                        formatKByteStrings(snapshot.getTotalPhysicalMemorySize(),
+                                           snapshot.getFreePhysicalMemorySize(),
+                                           snapshot.getTotalSwapSpaceSize(),
+                                           snapshot.getFreeSwapSpaceSize());
 
                     append("Committed virtual memory", kbStrings1[0]);
                     append(endTable);
@@ -286,16 +281,15 @@ class SummaryTab extends Tab {
             {  // VM arguments and paths
                 append(newTable);
                 String args = "";
-                java.util.List<String> inputArguments = rmBean.getInputArguments();
-                for (String arg : inputArguments) {
+                for (String arg : snapshot.getInputArguments()) {
                     args += arg + " ";
                 }
                 append("VM arguments", args, 4);
-                append("Class path",   rmBean.getClassPath(), 4);
-                append("Library path", rmBean.getLibraryPath(), 4);
+                append("Class path",   snapshot.getClassPath(), 4);
+                append("Library path", snapshot.getLibraryPath(), 4);
                 append("Boot class path",
-                       rmBean.isBootClassPathSupported()
-                                    ? rmBean.getBootClassPath()
+                       snapshot.isBootClassPathSupported()
+                                    ? snapshot.getBootClassPath()
                                     : getText("Unavailable"),
                        4);
                 append(endTable);
@@ -331,7 +325,7 @@ class SummaryTab extends Tab {
     }
 
     private void append(String label, String value, int columnPerRow) {
-        if (columnPerRow == 4 && pathSeparator != null) {
+        if (columnPerRow == 4 && pathSeparator != null && value != null) {
             value = value.replace(pathSeparator,
                                   "<b></b>" + pathSeparator);
         }
@@ -28,6 +28,8 @@ package sun.tools.jconsole;
 import java.awt.*;
 import java.awt.event.*;
 import java.beans.*;
+import java.util.*;
+import java.util.List;
 
 import javax.swing.*;
 
@@ -62,7 +64,7 @@ public abstract class Tab extends JPanel {
             if (sw == null || sw.getState() == SwingWorker.StateValue.PENDING) {
                 prevSW = sw;
                 if (sw != null) {
-                    sw.execute();
+                    vmPanel.getUpdateLane().execute(sw);
                 }
             }
         }
@@ -83,12 +85,47 @@ public abstract class Tab extends JPanel {
         return null;
     }
 
-    public synchronized void workerAdd(Runnable job) {
+    /**
+     * Returns the charts of this tab, including its overview charts.
+     * Call on the EDT.
+     */
+    List<Plotter> getPlotters() {
+        List<Plotter> plotters = new ArrayList<Plotter>();
+        OverviewPanel[] ops = getOverviewPanels();
+        if (ops != null) {
+            for (OverviewPanel op : ops) {
+                if (op.getPlotter() != null) {
+                    plotters.add(op.getPlotter());
+                }
+            }
+        }
+        return plotters;
+    }
+
+    public void workerAdd(Runnable job) {
+        workerAdd(null, job);
+    }
+
+    /**
+     * Adds a job to this tab's worker. A job added with a key replaces the
+     * queued job and cancels the running job having the same key.
+     *
+     * @see Worker#add(Object, Runnable)
+     */
+    public synchronized void workerAdd(Object key, Runnable job) {
         if (worker == null) {
-            worker = new Worker(name+"-"+vmPanel.getConnectionName());
-            worker.start();
+            worker = new Worker(name+"-"+vmPanel.getConnectionName(),
+                                vmPanel.getUpdateLane());
         }
-        worker.add(job);
+        worker.add(key, job);
+    }
+
+    /**
+     * Returns the lane of the console-wide update scheduler through which
+     * the work of this tab's VMPanel is run.
+     */
+    public UpdateScheduler.Lane getUpdateLane() {
+        return vmPanel.getUpdateLane();
     }
 
     public Dimension getPreferredSize() {
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package sun.tools.jconsole;
+
+import java.lang.management.ThreadInfo;
+import java.util.Arrays;
+
+import javax.swing.AbstractListModel;
+
+//
+// Thread registry:
+//
+// The thread names of the thread list of the Threads tab, and the list
+// itself, kept so that a tick costs a few passes over primitive arrays
+// even with tens of thousands of threads.
+//
+// - Only the name of each live thread is cached, fetched once when the
+//   thread shows up. Names of dead threads are dropped.
+//
+// - The threads shown, filtered and diffed against the previous ones, are
+//   computed on the tab worker thread. The resulting Diff is applied to a
+//   ThreadListModel on the event dispatch thread in one step. A tick
+//   where the thread IDs, the filter and the names are unchanged costs
+//   one array comparison.
+//
+class ThreadRegistry {
+
+    private static final long[] NONE = new long[0];
+
+    // Guarded by this
+    private final LongHashMap<String> names = new LongHashMap<String>();
+    private final LongHashSet live = new LongHashSet();
+    private final LongHashSet shown = new LongHashSet();
+    // The IDs of the list model, once the last Diff is applied
+    private long[] list = new long[0];
+    private final LongHashSet listed = new LongHashSet();
+    private int[] removed = new int[16];
+    private final StringBuilder label = new StringBuilder();
+    // The arguments of the last update, and whether names were added since
+    private long[] lastIds = new long[0];
+    private String lastFilter = "";
+    private boolean named = false;
+
+    /**
+     * Returns the IDs of the threads whose name is not known yet.
+     */
+    public synchronized long[] getUnnamed(long[] ids) {
+        int n = 0;
+        for (long id : ids) {
+            if (!names.containsKey(id)) {
+                n++;
+            }
+        }
+        if (n == 0) {
+            return NONE;
+        }
+        long[] unnamed = new long[n];
+        n = 0;
+        for (long id : ids) {
+            if (!names.containsKey(id)) {
+                unnamed[n++] = id;
+            }
+        }
+        return unnamed;
+    }
+
+    public synchronized void putNames(ThreadInfo[] infos) {
+        for (ThreadInfo ti : infos) {
+            if (ti != null && ti.getThreadName() != null) {
+                names.put(ti.getThreadId(), ti.getThreadName());
+                named = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the name of a thread, or <tt>null</tt> if it is not known.
+     */
+    public synchronized String getName(long id) {
+        return names.get(id);
+    }
+
+    /**
+     * Returns the label of a thread in the list, its ID if its name is
+     * not known.
+     */
+    public synchronized String getLabel(long id) {
+        String name = names.get(id);
+        return (name != null) ? getLabel(id, name) : Long.toString(id);
+    }
+
+    private static String getLabel(long id, String name) {
+        return id + "\t " + name;
+    }
+
+    /**
+     * Records the live threads and computes the change of the thread list.
+     *
+     * @param ids the live threads, in reverse chronological order
+     * @param filter the lower case text the labels of the threads shown
+     *        contain, threads without a name are always shown
+     * @return the change, or <tt>null</tt> if there is none
+     */
+    public synchronized Diff update(long[] ids, String filter) {
+        if (!named && filter.equals(lastFilter) && Arrays.equals(ids, lastIds)) {
+            return null;
+        }
+        named = false;
+        lastFilter = filter;
+        lastIds = ids.clone();
+
+        int n = 0;
+        for (long id : ids) {
+            if (names.containsKey(id)) {
+                n++;
+            }
+        }
+        if (n < names.size()) {
+            live.clear();
+            live.addAll(ids, 0, ids.length);
+            names.retainAll(live);
+        }
+
+        shown.clear();
+        for (long id : ids) {
+            String name = names.get(id);
+            if (name == null || filter.length() == 0 || contains(id, name, filter)) {
+                shown.add(id);
+            }
+        }
+        int nRemoved = 0;
+        for (int i = 0; i < list.length; i++) {
+            if (!shown.contains(list[i])) {
+                if (nRemoved == removed.length) {
+                    removed = Arrays.copyOf(removed, nRemoved * 2);
+                }
+                removed[nRemoved++] = i;
+            }
+        }
+        int added = shown.size() - (list.length - nRemoved);
+        if (nRemoved == 0 && added == 0) {
+            return null;
+        }
+
+        long[] newList = new long[shown.size()];
+        n = 0;
+        for (int i = 0, r = 0; i < list.length; i++) {
+            if (r < nRemoved && removed[r] == i) {
+                r++;
+            } else {
+                newList[n++] = list[i];
+            }
+        }
+        if (added > 0) {
+            for (int i = ids.length - 1; i >= 0; i--) {
+                if (shown.contains(ids[i]) && !listed.contains(ids[i])) {
+                    newList[n++] = ids[i];
+                }
+            }
+        }
+        Diff diff = new Diff(list.length, Arrays.copyOf(removed, nRemoved), newList);
+        list = newList;
+        listed.clear();
+        listed.addAll(list, 0, list.length);
+        return diff;
+    }
+
+    // Whether the label of a thread contains a lower case text, without
+    // building the label string
+    private boolean contains(long id, String name, String filter) {
+        label.setLength(0);
+        label.append(id).append("\t ").append(name);
+        int n = filter.length();
+        for (int i = 0, last = label.length() - n; i <= last; i++) {
+            int j = 0;
+            while (j < n &&
+                   Character.toLowerCase(label.charAt(i + j)) == filter.charAt(j)) {
+                j++;
+            }
+            if (j == n) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A change of the thread list: the indices removed from the old list,
+     * in increasing order, and the new list, where the threads added
+     * follow the ones kept.
+     */
+    static class Diff {
+        final int oldSize;
+        final int[] removed;
+        final long[] ids;
+
+        private Diff(int oldSize, int[] removed, long[] ids) {
+            this.oldSize = oldSize;
+            this.removed = removed;
+            this.ids = ids;
+        }
+    }
+
+    /**
+     * The thread list, elements are Long thread IDs.
+     */
+    @SuppressWarnings("serial")
+    static class ThreadListModel extends AbstractListModel {
+        private long[] ids = new long[0];
+
+        public int getSize() {
+            return ids.length;
+        }
+
+        public Object getElementAt(int index) {
+            return Long.valueOf(ids[index]);
+        }
+
+        /**
+         * Applies a change, on the event dispatch thread.
+         */
+        public void apply(Diff diff) {
+            int oldSize = ids.length;
+            ids = diff.ids;
+            if (diff.oldSize != oldSize) {
+                // A change was lost, notify a change of the whole list
+                if (oldSize > ids.length) {
+                    fireIntervalRemoved(this, ids.length, oldSize - 1);
+                }
+                if (ids.length > 0) {
+                    fireContentsChanged(this, 0, ids.length - 1);
+                }
+                return;
+            }
+            // Runs of removed rows, last one first so that the indices of
+            // the ones before hold
+            int[] removed = diff.removed;
+            for (int r = removed.length - 1; r >= 0; ) {
+                int to = removed[r];
+                int from = to;
+                while (--r >= 0 && removed[r] == from - 1) {
+                    from--;
+                }
+                fireIntervalRemoved(this, from, to);
+            }
+            int kept = oldSize - removed.length;
+            if (ids.length > kept) {
+                fireIntervalAdded(this, kept, ids.length - 1);
+            }
+        }
+    }
+}
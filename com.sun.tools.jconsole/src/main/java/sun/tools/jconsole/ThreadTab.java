@@ -40,15 +40,18 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.lang.management.MonitorInfo;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.ExecutionException;
@@ -57,21 +60,36 @@ import javax.swing.AbstractButton;
 import javax.swing.BorderFactory;
 import javax.swing.DefaultListCellRenderer;
 import javax.swing.DefaultListModel;
+import javax.swing.DefaultRowSorter;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JList;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSeparator;
+import javax.swing.JSpinner;
 import javax.swing.JSplitPane;
 import javax.swing.JTabbedPane;
+import javax.swing.JTable;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.ListModel;
+import javax.swing.ListSelectionModel;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.border.Border;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionEvent;
@@ -85,11 +103,25 @@ class ThreadTab extends Tab implements ActionListener, DocumentListener, ListSel
     PlotterPanel threadMeter;
     TimeComboBox timeComboBox;
     JTabbedPane threadListTabbedPane;
-    DefaultListModel listModel;
+    ThreadRegistry.ThreadListModel listModel;
     JTextField filterTF;
     JLabel messageLabel;
     JSplitPane threadsSplitPane;
-    HashMap<Long, ThreadInfo> nameCache = new HashMap<Long, ThreadInfo>();
+    private final ThreadRegistry registry = new ThreadRegistry();
+    // The lower case filter text, set on the EDT
+    private volatile String filter = "";
+    private final TopThreads topThreads = new TopThreads();
+    private ThreadTablePanel topThreadsPanel;
+    private ThreadTablePanel allocationPanel;
+    private PlotterPanel allocationMeter;
+    // Names of the pools plotted by the allocation meter, by slot
+    private final String[] allocationPools = new String[TopThreads.POOL_SLOTS];
+    // Whether the Top or Allocation tab is selected, the threads are only
+    // sampled then
+    private volatile boolean topEnabled = false;
+    private final StackProfiler profiler = new StackProfiler();
+    private FlameGraph flameGraph;
+    private JFileChooser profileFC;
 
     private ThreadOverviewPanel overviewPanel;
     private boolean plotterListening = false;
@@ -167,7 +199,7 @@ class ThreadTab extends Tab implements ActionListener, DocumentListener, ListSel
                                               getMnemonicInt("Time Range:"),
                                               timeComboBox));
 
-        listModel = new DefaultListModel();
+        listModel = new ThreadRegistry.ThreadListModel();
 
         JTextArea textArea = new JTextArea();
         textArea.setBorder(thinEmptyBorder);
@@ -196,6 +228,31 @@ class ThreadTab extends Tab implements ActionListener, DocumentListener, ListSel
 
         threadListTabbedPane.addTab("Stack traces", getStackTracesPanel());
 
+        topThreadsPanel = new ThreadTablePanel(new TopThreads.TopTableModel(),
+                                               TopThreads.TopTableModel.CPU_COLUMN);
+        topThreadsPanel.table.setDefaultRenderer(float[].class, new TopThreads.HistoryRenderer());
+        topThreadsPanel.table.getColumnModel().getColumn(TopThreads.TopTableModel.HISTORY_COLUMN)
+            .setPreferredWidth(2 * TopThreads.HISTORY + 4);
+        ((DefaultRowSorter<?, ?>)topThreadsPanel.table.getRowSorter())
+            .setSortable(TopThreads.TopTableModel.HISTORY_COLUMN, false);
+        threadListTabbedPane.addTab(getText("TopThreads.tabName"), topThreadsPanel);
+
+        final Component allocationTab = getAllocationPanel();
+        threadListTabbedPane.addTab(getText("TopThreads.allocationTabName"), allocationTab);
+        threadListTabbedPane.addTab(getText("StackProfiler.tabName"), getProfilerPanel());
+        threadListTabbedPane.addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                Component c = threadListTabbedPane.getSelectedComponent();
+                boolean enabled = (c == topThreadsPanel || c == allocationTab);
+                if (enabled != topEnabled) {
+                    topEnabled = enabled;
+                    if (enabled) {
+                        doUpdate();
+                    }
+                }
+            }
+        });
+
         splitPane.add(threadListTabbedPane, JSplitPane.BOTTOM, 0);
     }
 
@@ -214,6 +271,26 @@ class ThreadTab extends Tab implements ActionListener, DocumentListener, ListSel
 		});
         tabToolPanel.add(getStackTracesButton);
 
+        groupStacksCB = new JCheckBox(getText("StackGroups.group"));
+        groupStacksCB.setToolTipText(getText("StackGroups.group.toolTip"));
+        groupStacksCB.setOpaque(false);
+        stackOrderCB = new JComboBox<String>(new String[] {
+            getText("StackGroups.bySize"), getText("StackGroups.byState")
+        });
+        stackOrderCB.setEnabled(false);
+        ActionListener groupListener = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                stackOrderCB.setEnabled(groupStacksCB.isSelected());
+                // Shows the last dump again, grouped or not
+                showStackTraces(stackTraceInfos, groupStacksCB.isSelected(),
+                                getStackOrder());
+            }
+        };
+        groupStacksCB.addActionListener(groupListener);
+        stackOrderCB.addActionListener(groupListener);
+        tabToolPanel.add(groupStacksCB);
+        tabToolPanel.add(stackOrderCB);
+
         stackTraceDisplay = new JTextArea();
         JScrollPane stackTraceDisplayScrollPane = new JScrollPane(stackTraceDisplay);
         
@@ -223,6 +300,170 @@ class ThreadTab extends Tab implements ActionListener, DocumentListener, ListSel
 		return secondTabPanel;
 	}
 
+    private Component getAllocationPanel() {
+        allocationMeter = new PlotterPanel(getText("TopThreads.allocationPlotter.title"),
+                                           Plotter.Unit.NONE, true);
+        Plotter plotter = allocationMeter.plotter;
+        // The other pools first, as the chart is scaled to the plotted
+        // sequences up to the first one that is not
+        plotter.createSequence("other", getText("TopThreads.otherPools"),
+                               Color.gray, true);
+        for (int i = 0; i < TopThreads.POOL_SLOTS; i++) {
+            plotter.createSequence("pool" + i, "",
+                                   poolColors[i % poolColors.length], false);
+        }
+        setAccessibleName(plotter,
+                          getText("TopThreads.allocationPlotter.accessibleName"));
+
+        allocationPanel =
+            new ThreadTablePanel(new TopThreads.AllocationTableModel(),
+                                 TopThreads.AllocationTableModel.RATE_COLUMN);
+        JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT,
+                                              allocationMeter, allocationPanel);
+        splitPane.setResizeWeight(0.4);
+        splitPane.setBorder(null);
+        return splitPane;
+    }
+
+    private Component getProfilerPanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setOpaque(false);
+
+        flameGraph = new FlameGraph();
+        JScrollPane flameGraphSP = new JScrollPane(flameGraph);
+        flameGraphSP.setBorder(null);
+
+        JPanel toolPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 2));
+        toolPanel.setOpaque(false);
+
+        final JButton startButton = new JButton(getText("StackProfiler.start"));
+        final JSpinner intervalSpinner = new JSpinner(new SpinnerNumberModel(
+            Math.max(10, Settings.getInt(Settings.KEY_PROFILER_INTERVAL, 100)),
+            10, 60000, 10));
+        final JTextField nameFilterTF =
+            new PromptingTextField(getText("StackProfiler.filter"), 15);
+        JButton resetButton = new JButton(getText("StackProfiler.reset"));
+        JButton exportButton = new JButton(getText("StackProfiler.export"));
+        exportButton.setToolTipText(getText("StackProfiler.export.toolTip"));
+        final JLabel statusLabel = new JLabel();
+
+        // Shows the samples taken so far while sampling
+        final Timer refreshTimer = new Timer(1000, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                refreshProfile(statusLabel);
+                if (!profiler.isRunning()) {
+                    // Stopped by a connection failure
+                    ((Timer)e.getSource()).stop();
+                    startButton.setText(getText("StackProfiler.start"));
+                }
+            }
+        });
+        startButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (profiler.isRunning()) {
+                    profiler.stop();
+                    refreshTimer.stop();
+                    startButton.setText(getText("StackProfiler.start"));
+                    refreshProfile(statusLabel);
+                } else {
+                    profiler.start(vmPanel.getProxyClient(false), registry,
+                                   nameFilterTF.getText().toLowerCase(Locale.ENGLISH),
+                                   (Integer)intervalSpinner.getValue(),
+                                   Math.max(1, Settings.getInt(Settings.KEY_PROFILER_DEPTH, 256)));
+                    startButton.setText(getText("StackProfiler.stop"));
+                    refreshTimer.start();
+                }
+            }
+        });
+        resetButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                profiler.reset();
+                refreshProfile(statusLabel);
+            }
+        });
+        exportButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                exportProfile();
+            }
+        });
+
+        toolPanel.add(startButton);
+        toolPanel.add(new LabeledComponent(getText("StackProfiler.interval"),
+                                           intervalSpinner));
+        toolPanel.add(nameFilterTF);
+        toolPanel.add(resetButton);
+        toolPanel.add(exportButton);
+        toolPanel.add(statusLabel);
+
+        panel.add(flameGraphSP, BorderLayout.CENTER);
+        panel.add(toolPanel, BorderLayout.SOUTH);
+        return panel;
+    }
+
+    private void refreshProfile(JLabel statusLabel) {
+        StackProfiler.Tree tree = profiler.getTree();
+        flameGraph.setTree(tree);
+        statusLabel.setText(getText("StackProfiler.status",
+                                    tree.samples, tree.stacks, tree.size - 1));
+    }
+
+    private void exportProfile() {
+        if (profileFC == null) {
+            profileFC = new Plotter.SaveDataFileChooser(
+                getText("StackProfiler.fileType"), "txt");
+        }
+        if (profileFC.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+            final File file = profileFC.getSelectedFile();
+            final StackProfiler.Tree tree = profiler.getTree();
+            workerAdd(new Runnable() {
+                public void run() {
+                    saveProfile(tree, file);
+                }
+            });
+        }
+    }
+
+    private void saveProfile(StackProfiler.Tree tree, final File file) {
+        IOException failure = null;
+        try {
+            Writer w = new BufferedWriter(new FileWriter(file));
+            try {
+                tree.writeCollapsed(w);
+            } finally {
+                w.close();
+            }
+        } catch (IOException ex) {
+            failure = ex;
+        }
+        final IOException ex = failure;
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                if (ex == null) {
+                    JOptionPane.showMessageDialog(ThreadTab.this,
+                        getText("FileChooser.savedFile",
+                                file.getAbsolutePath(), file.length()));
+                } else {
+                    JOptionPane.showMessageDialog(ThreadTab.this,
+                        getText("FileChooser.saveFailed.message",
+                                file.getAbsolutePath(), ex.getLocalizedMessage()),
+                        getText("FileChooser.saveFailed.title"),
+                        JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void dispose() {
+        profiler.stop();
+        super.dispose();
+    }
+
+    private static final Color[] poolColors = {
+        Plotter.defaultColor, Color.red, Color.green.darker(), Color.orange,
+        Color.magenta, Color.cyan.darker(), Color.pink.darker(), Color.black
+    };
+
     private Component getThreadsPanel() {
         JPanel firstTabPanel = new JPanel(new BorderLayout());
         firstTabPanel.setOpaque(false);
@@ -255,37 +496,78 @@ class ThreadTab extends Tab implements ActionListener, DocumentListener, ListSel
         return firstTabPanel;
     }
     
+	// Called on the EDT
 	private void refreshStackTraces() {
+		final boolean grouped = groupStacksCB.isSelected();
+		final int order = getStackOrder();
 		workerAdd(new Runnable() {
 			public void run() {
 				ProxyClient proxyClient = vmPanel.getProxyClient();
-				final StringBuilder sb = new StringBuilder();
 				ThreadMXBean threadMBean;
 				try {
 					threadMBean = proxyClient.getThreadMXBean();
 					ThreadInfo[] infos = threadMBean.dumpAllThreads(true, true);
-					for (ThreadInfo t : infos) {
-						sb.append(new CustomThreadInfo(t).toString());
-					}
-					SwingUtilities.invokeLater(new Runnable() {
-						public void run() {
-							stackTraceDisplay.setText(sb.toString());
-						}
-					});
+					stackTraceInfos = infos;
+					showStackTraces(infos, grouped, order);
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
 			}
 		});
 	}
-    
-    private long oldThreads[] = new long[0];
+
+    // The selected order of the stack groups, call on the EDT
+    private int getStackOrder() {
+        return (stackOrderCB.getSelectedIndex() == 1)
+            ? StackGroups.BY_STATE : StackGroups.BY_SIZE;
+    }
+
+    /**
+     * Formats a thread dump on the worker thread and shows it, grouped by
+     * stack in the given order if grouped. The options are read on the
+     * EDT by the caller.
+     */
+    private void showStackTraces(final ThreadInfo[] infos,
+                                 final boolean grouped, final int order) {
+        if (infos == null) {
+            return;
+        }
+        workerAdd(new Runnable() {
+            public void run() {
+                final String text;
+                if (grouped) {
+                    text = new StackGroups(infos, order).getDump();
+                } else {
+                    StringBuilder sb = new StringBuilder();
+                    for (ThreadInfo t : infos) {
+                        if (t != null) {
+                            sb.append(new CustomThreadInfo(t).toString());
+                        }
+                    }
+                    text = sb.toString();
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        stackTraceDisplay.setText(text);
+                        stackTraceDisplay.setCaretPosition(0);
+                    }
+                });
+            }
+        });
+    }
 
     public SwingWorker<?, ?> newSwingWorker() {
         final ProxyClient proxyClient = vmPanel.getProxyClient();
 
         if (!plotterListening) {
             proxyClient.addWeakPropertyChangeListener(threadMeter.plotter);
+            proxyClient.addWeakPropertyChangeListener(allocationMeter.plotter);
+            workerAdd(new Runnable() {
+                public void run() {
+                    threadMeter.plotter.setHistory(
+                        vmPanel.getPlotHistory(), "threads");
+                }
+            });
             plotterListening = true;
         }
 
@@ -294,42 +576,35 @@ class ThreadTab extends Tab implements ActionListener, DocumentListener, ListSel
             private int tpCount;
             private long ttCount;
             private long[] threadIds;
+            private ThreadRegistry.Diff diff;
+            private TopThreads.Snapshot top;
             private long timeStamp;
 
             public Boolean doInBackground() {
                 try {
                     ThreadMXBean threadMBean = proxyClient.getThreadMXBean();
+                    PlatformSnapshot snapshot = proxyClient.getPlatformSnapshot();
 
-                    tlCount = threadMBean.getThreadCount();
-                    tpCount = threadMBean.getPeakThreadCount();
+                    tlCount = snapshot.getThreadCount();
+                    tpCount = snapshot.getPeakThreadCount();
                     if (overviewPanel != null) {
-                        ttCount = threadMBean.getTotalStartedThreadCount();
+                        ttCount = snapshot.getTotalStartedThreadCount();
                     } else {
                         ttCount = 0L;
                     }
 
-                    threadIds = threadMBean.getAllThreadIds();
-                    long[] newThreadIds = new long[threadIds.length];
-                    int numNewThreads = 0;
-                    for (long newThread : threadIds) {
-                        if (nameCache.get(newThread) == null) {
-                        	newThreadIds[numNewThreads++] = newThread;
-                        }
+                    threadIds = snapshot.getAllThreadIds();
+                    if (threadIds == null) {
+                        threadIds = threadMBean.getAllThreadIds();
+                    }
+                    long[] unnamed = registry.getUnnamed(threadIds);
+                    if (unnamed.length > 0) {
+                        registry.putNames(threadMBean.getThreadInfo(unnamed));
+                    }
+                    diff = registry.update(threadIds, filter);
+                    if (topEnabled) {
+                        top = topThreads.sample(proxyClient, threadIds, registry);
                     }
-                    
-                    long[] newThreadIdsTrimmed = new long[numNewThreads];
-                    System.arraycopy(newThreadIds, 0, newThreadIdsTrimmed, 0, numNewThreads);
-                    
-                    ThreadInfo[] threadInfos = threadMBean.getThreadInfo(newThreadIdsTrimmed);
-                    
-					for (ThreadInfo threadInfo : threadInfos) {
-						if (threadInfo != null) {
-							String name = threadInfo.getThreadName();
-							if (name != null) {
-								nameCache.put(threadInfo.getThreadId(), threadInfo);
-							}
-						}
-					}
                     timeStamp = System.currentTimeMillis();
                     return true;
                 } catch (IOException e) {
@@ -360,70 +635,34 @@ class ThreadTab extends Tab implements ActionListener, DocumentListener, ListSel
                     overviewPanel.updateThreadsInfo(tlCount, tpCount, ttCount, timeStamp);
                 }
 
-                String filter = filterTF.getText().toLowerCase(Locale.ENGLISH);
-                boolean doFilter = (filter.length() > 0);
-
-                ArrayList<Long> threadIdList = new ArrayList<Long>();
-                for (long t : threadIds) {
-                    threadIdList.add(t);
-                }
-                Iterator<Long> iterator = threadIdList.iterator();
-                while (iterator.hasNext()) {
-                    long newThread = iterator.next();
-                    ThreadInfo threadInfo = nameCache.get(newThread);
-                    String name = getThreadListLabel(threadInfo);
-                    if (doFilter && name != null &&
-                        name.toLowerCase(Locale.ENGLISH).indexOf(filter) < 0) {
-
-                        iterator.remove();
-                    }
-                }
-                long[] newThreads = threadIds;
-                if (threadIdList.size() < threadIds.length) {
-                    newThreads = new long[threadIdList.size()];
-                    for (int i = 0; i < newThreads.length; i++) {
-                        newThreads[i] = threadIdList.get(i);
-                    }
+                if (diff != null) {
+                    listModel.apply(diff);
                 }
-
-
-                for (long oldThread : oldThreads) {
-                    boolean found = false;
-                    for (long newThread : newThreads) {
-                        if (newThread == oldThread) {
-                            found = true;
-                            break;
-                        }
-                    }
-                    if (!found) {
-                        listModel.removeElement(oldThread);
-                        if (!doFilter) {
-                            nameCache.remove(oldThread);
-                        }
-                    }
-                }
-
-                // Threads are in reverse chronological order
-                for (int i = newThreads.length - 1; i >= 0; i--) {
-                    long newThread = newThreads[i];
-                    boolean found = false;
-                    for (long oldThread : oldThreads) {
-                        if (newThread == oldThread) {
-                            found = true;
-                            break;
+                if (top != null) {
+                    topThreadsPanel.setSnapshot(top);
+                    allocationPanel.setSnapshot(top);
+                    if (top.poolRates != null) {
+                        Plotter plotter = allocationMeter.plotter;
+                        for (int i = 0; i < allocationPools.length; i++) {
+                            if (allocationPools[i] == null && top.poolNames[i] != null) {
+                                allocationPools[i] = top.poolNames[i];
+                                plotter.setSequenceName("pool" + i, top.poolNames[i]);
+                                plotter.setIsPlotted("pool" + i, true);
+                            }
                         }
-                    }
-                    if (!found) {
-                        listModel.addElement(newThread);
+                        plotter.addValues(timeStamp, top.poolRates);
                     }
                 }
-                oldThreads = newThreads;
             }
         };
     }
 
     long lastSelected = -1;
 	private JTextArea stackTraceDisplay;
+    private JCheckBox groupStacksCB;
+    private JComboBox<String> stackOrderCB;
+    // The last dump of the Stack traces tab
+    private volatile ThreadInfo[] stackTraceInfos;
 
     public void valueChanged(ListSelectionEvent ev) {
         ThreadJList list = (ThreadJList)ev.getSource();
@@ -439,87 +678,92 @@ class ThreadTab extends Tab implements ActionListener, DocumentListener, ListSel
         }
         textArea.setText("");
         if (selected != null) {
-            final long threadID = selected;
-            workerAdd(new Runnable() {
-                public void run() {
-                    ProxyClient proxyClient = vmPanel.getProxyClient();
-                    StringBuilder sb = new StringBuilder();
-                    try {
-                        ThreadMXBean threadMBean = proxyClient.getThreadMXBean();
-                        ThreadInfo ti = null;
-                        MonitorInfo[] monitors = null;
-                        if (proxyClient.isLockUsageSupported() &&
-                              threadMBean.isObjectMonitorUsageSupported()) {
-                            // VMs that support the monitor usage monitoring
-                            ThreadInfo[] infos = threadMBean.getThreadInfo(new long[] {threadID}, true, false);
-                            for (ThreadInfo info : infos) {
-                                if (info.getThreadId() == threadID) {
-                                    ti = info;
-                                    monitors = info.getLockedMonitors();
-                                    break;
-                                }
+            showThreadInfo(selected, textArea);
+        }
+    }
+
+    // Shows the state and stack of a thread in a text area
+    private void showThreadInfo(final long threadID, final JTextArea textArea) {
+        // Keyed, so that moving through the list only fetches the
+        // stack of the thread that ends up selected
+        workerAdd("valueChanged", new Worker.Job() {
+            public void run() {
+                ProxyClient proxyClient = vmPanel.getProxyClient();
+                StringBuilder sb = new StringBuilder();
+                try {
+                    ThreadMXBean threadMBean = proxyClient.getThreadMXBean();
+                    ThreadInfo ti = null;
+                    MonitorInfo[] monitors = null;
+                    if (proxyClient.isLockUsageSupported() &&
+                          threadMBean.isObjectMonitorUsageSupported()) {
+                        // VMs that support the monitor usage monitoring
+                        ThreadInfo[] infos = threadMBean.getThreadInfo(new long[] {threadID}, true, false);
+                        for (ThreadInfo info : infos) {
+                            if (info.getThreadId() == threadID) {
+                                ti = info;
+                                monitors = info.getLockedMonitors();
+                                break;
                             }
+                        }
+                    } else {
+                        // VM doesn't support monitor usage monitoring
+                        ti = threadMBean.getThreadInfo(threadID, Integer.MAX_VALUE);
+                    }
+                    if (ti != null) {
+                        if (ti.getLockName() == null) {
+                            sb.append(Resources.getText("Name State",
+                                          ti.getThreadName(),
+                                          ti.getThreadState().toString()));
+                        } else if (ti.getLockOwnerName() == null) {
+                            sb.append(Resources.getText("Name State LockName",
+                                          ti.getThreadName(),
+                                          ti.getThreadState().toString(),
+                                          ti.getLockName()));
                         } else {
-                            // VM doesn't support monitor usage monitoring
-                            ti = threadMBean.getThreadInfo(threadID, Integer.MAX_VALUE);
+                            sb.append(Resources.getText("Name State LockName LockOwner",
+                                          ti.getThreadName(),
+                                          ti.getThreadState().toString(),
+                                          ti.getLockName(),
+                                          ti.getLockOwnerName()));
                         }
-                        if (ti != null) {
-                            if (ti.getLockName() == null) {
-                                sb.append(Resources.getText("Name State",
-                                              ti.getThreadName(),
-                                              ti.getThreadState().toString()));
-                            } else if (ti.getLockOwnerName() == null) {
-                                sb.append(Resources.getText("Name State LockName",
-                                              ti.getThreadName(),
-                                              ti.getThreadState().toString(),
-                                              ti.getLockName()));
-                            } else {
-                                sb.append(Resources.getText("Name State LockName LockOwner",
-                                              ti.getThreadName(),
-                                              ti.getThreadState().toString(),
-                                              ti.getLockName(),
-                                              ti.getLockOwnerName()));
-                            }
-                            sb.append(Resources.getText("BlockedCount WaitedCount",
-                                              ti.getBlockedCount(),
-                                              ti.getWaitedCount()));
-                            sb.append(Resources.getText("Stack trace"));
-                            int index = 0;
-                            for (StackTraceElement e : ti.getStackTrace()) {
-                                sb.append(e.toString()+"\n");
-                                if (monitors != null) {
-                                    for (MonitorInfo mi : monitors) {
-                                        if (mi.getLockedStackDepth() == index) {
-                                            sb.append(Resources.getText("Monitor locked", mi.toString()));
-                                        }
+                        sb.append(Resources.getText("BlockedCount WaitedCount",
+                                          ti.getBlockedCount(),
+                                          ti.getWaitedCount()));
+                        sb.append(Resources.getText("Stack trace"));
+                        int index = 0;
+                        for (StackTraceElement e : ti.getStackTrace()) {
+                            sb.append(e.toString()+"\n");
+                            if (monitors != null) {
+                                for (MonitorInfo mi : monitors) {
+                                    if (mi.getLockedStackDepth() == index) {
+                                        sb.append(Resources.getText("Monitor locked", mi.toString()));
                                     }
                                 }
-                                index++;
                             }
+                            index++;
                         }
-                    } catch (IOException ex) {
-                        // Ignore
-                    } catch (UndeclaredThrowableException e) {
-                        proxyClient.markAsDead();
                     }
-                    final String text = sb.toString();
-                    SwingUtilities.invokeLater(new Runnable() {
-                        public void run() {
-                            textArea.setText(text);
-                            textArea.setCaretPosition(0);
-                        }
-                    });
+                } catch (IOException ex) {
+                    // Ignore
+                } catch (UndeclaredThrowableException e) {
+                    proxyClient.markAsDead();
                 }
-            });
-        }
+                if (isCancelled()) {
+                    return;
+                }
+                final String text = sb.toString();
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        textArea.setText(text);
+                        textArea.setCaretPosition(0);
+                    }
+                });
+            }
+        });
     }
 
-    private String getThreadListLabel(ThreadInfo threadInfo) {
-    	return threadInfo.getThreadId() + "\t " + threadInfo.getThreadName();
-    }
-    
     private void doUpdate() {
-        workerAdd(new Runnable() {
+        workerAdd("doUpdate", new Runnable() {
             public void run() {
                 update();
             }
@@ -566,8 +810,8 @@ class ThreadTab extends Tab implements ActionListener, DocumentListener, ListSel
                     SwingUtilities.invokeLater(new Runnable() {
                         public void run() {
                             // Remove old deadlock tabs
-                            while (threadListTabbedPane.getTabCount() > 2) {
-                                threadListTabbedPane.removeTabAt(2);
+                            while (threadListTabbedPane.getTabCount() > 5) {
+                                threadListTabbedPane.removeTabAt(5);
                             }
 
                             if (deadlockedThreads != null) {
@@ -691,23 +935,98 @@ class ThreadTab extends Tab implements ActionListener, DocumentListener, ListSel
     // DocumentListener interface
 
     public void insertUpdate(DocumentEvent e) {
-        doUpdate();
+        filterChanged();
     }
 
     public void removeUpdate(DocumentEvent e) {
-        doUpdate();
+        filterChanged();
     }
 
     public void changedUpdate(DocumentEvent e) {
+        filterChanged();
+    }
+
+    private void filterChanged() {
+        filter = filterTF.getText().toLowerCase(Locale.ENGLISH);
         doUpdate();
     }
 
 
 
+    /**
+     * A table of threads, with the state and stack of the selected one
+     * next to it.
+     */
+    private class ThreadTablePanel extends JSplitPane {
+        final TopThreads.ThreadTableModel model;
+        final JTable table;
+        private final JTextArea textArea = new JTextArea();
+        private long selected = -1;
+
+        ThreadTablePanel(TopThreads.ThreadTableModel model, int sortColumn) {
+            super(JSplitPane.HORIZONTAL_SPLIT);
+            this.model = model;
+
+            table = new JTable(model);
+            table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+            table.setAutoCreateRowSorter(true);
+            table.getColumnModel().getColumn(1).setPreferredWidth(250);
+            DefaultRowSorter<?, ?> sorter = (DefaultRowSorter<?, ?>)table.getRowSorter();
+            sorter.setSortsOnUpdates(true);
+            sorter.setSortKeys(Collections.singletonList(
+                new RowSorter.SortKey(sortColumn, SortOrder.DESCENDING)));
+            setAccessibleName(table, getText("TopThreads.table.accessibleName"));
+
+            textArea.setBorder(thinEmptyBorder);
+            textArea.setEditable(false);
+            setAccessibleName(textArea, getText("ThreadTab.threadInfo.accessibleName"));
+
+            // Rows move as they are sorted again, only a selection of
+            // another thread fetches its stack
+            table.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
+                public void valueChanged(ListSelectionEvent e) {
+                    int row = table.getSelectedRow();
+                    if (e.getValueIsAdjusting() || row < 0) {
+                        return;
+                    }
+                    long id = ThreadTablePanel.this.model.getThreadId(
+                        table.convertRowIndexToModel(row));
+                    if (id != selected) {
+                        selected = id;
+                        textArea.setText("");
+                        showThreadInfo(id, textArea);
+                    }
+                }
+            });
+
+            JScrollPane tableSP = new JScrollPane(table);
+            tableSP.setBorder(null);
+            JScrollPane textAreaSP = new JScrollPane(textArea);
+            textAreaSP.setBorder(null);
+            setLeftComponent(tableSP);
+            setRightComponent(textAreaSP);
+            setOneTouchExpandable(true);
+            setResizeWeight(0.6);
+            setBorder(null);
+        }
+
+        void setSnapshot(TopThreads.Snapshot s) {
+            model.setSnapshot(s);
+            if (table.getSelectedRow() < 0 && selected != -1) {
+                // Another set of threads clears the selection
+                int row = model.getRow(selected);
+                if (row >= 0) {
+                    row = table.convertRowIndexToView(row);
+                    table.getSelectionModel().setSelectionInterval(row, row);
+                }
+            }
+        }
+    }
+
     private class ThreadJList extends JList {
         private JTextArea textArea;
 
-        ThreadJList(DefaultListModel listModel, JTextArea textArea) {
+        ThreadJList(ListModel listModel, JTextArea textArea) {
             super(listModel);
 
             this.textArea = textArea;
@@ -722,12 +1041,7 @@ class ThreadTab extends Tab implements ActionListener, DocumentListener, ListSel
                     super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
 
                     if (value != null) {
-                    	String name = value.toString();
-                        ThreadInfo threadInfo = nameCache.get(value);
-                        if (threadInfo != null) {
-                        	name = getThreadListLabel(threadInfo);
-                        }
-                        setText(name);
+                        setText(registry.getLabel((Long)value));
                     }
                     return this;
                 }
@@ -788,14 +1102,24 @@ class ThreadTab extends Tab implements ActionListener, DocumentListener, ListSel
 
         public void focusLost(FocusEvent e) {
             if (promptRemoved && getText().equals("")) {
+                // Not removed while the prompt is set, so that it is not
+                // taken as a filter
+                promptRemoved = false;
                 setText(prompt);
                 setForeground(Color.gray);
-                promptRemoved = false;
             }
         }
 
     }
 
+    @Override
+    List<Plotter> getPlotters() {
+        List<Plotter> plotters = super.getPlotters();
+        plotters.add(0, threadMeter.plotter);
+        plotters.add(1, allocationMeter.plotter);
+        return plotters;
+    }
+
     OverviewPanel[] getOverviewPanels() {
         if (overviewPanel == null) {
             overviewPanel = new ThreadOverviewPanel();
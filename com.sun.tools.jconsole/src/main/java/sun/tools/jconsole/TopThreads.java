@@ -0,0 +1,553 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package sun.tools.jconsole;
+
+import static sun.tools.jconsole.Resources.getText;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.io.IOException;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.swing.JComponent;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableCellRenderer;
+
+import andrask.sun.tools.jconsole.Settings;
+
+//
+// Top threads:
+//
+// The CPU usage and allocation rate of each thread of the Threads tab,
+// sampled on every update while the Top or the Allocation tab is
+// selected. The first sample after a selection averages the usage
+// since the previous sample.
+//
+// - The CPU and user times and the allocated bytes of all the threads are
+//   read with one bulk call each, with the long[] operations of
+//   com.sun.management.ThreadMXBean. VMs without them are read one thread
+//   at a time, without allocated bytes.
+//
+// - Usage is the CPU time delta over the wall clock delta between two
+//   samples. The last HISTORY usages of each thread are kept.
+//
+// - Threads are grouped in pools by name: the first group, or the whole
+//   match, of the myjconsole.threads.poolpattern regular expression, or
+//   the name without its trailing number, e.g. "pool-3-thread" for
+//   "pool-3-thread-7". The allocation rates of the first POOL_SLOTS pools
+//   that allocate are plotted, the ones of the other pools are summed.
+//
+class TopThreads {
+
+    static final int HISTORY = 60;
+    static final int POOL_SLOTS = 8;
+
+    private static Pattern poolPattern = null;
+    private static boolean poolPatternRead = false;
+
+    // Capabilities of the VM, read on the first sample
+    private volatile Boolean cpuTimeSupported = null;
+    private volatile Boolean allocatedMemorySupported = null;
+
+    // Guarded by this
+    private final LongHashMap<Entry> entries = new LongHashMap<Entry>();
+    private final LongHashSet live = new LongHashSet();
+    private long lastSampleTime = 0L;
+    private final Map<String, Pool> pools = new HashMap<String, Pool>();
+    // The pools plotted, by slot
+    private final Pool[] slots = new Pool[POOL_SLOTS];
+
+    private static class Pool {
+        final String name;
+        int slot = -1;
+        // Allocation rate of the current sample, in bytes per second
+        double rate;
+
+        Pool(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Entry {
+        long cpuTime = -1L;
+        long userTime = -1L;
+        long allocatedBytes = -1L;
+        // null until the name of the thread is known
+        Pool pool = null;
+        // Ring of CPU usages, NaN where unknown
+        final float[] history = new float[HISTORY];
+        int count = 0;
+
+        void add(float usage) {
+            history[count++ % HISTORY] = usage;
+        }
+
+        // Copies the history into dst at off, oldest first, and returns
+        // the number of usages copied
+        int copyHistory(float[] dst, int off) {
+            int n = Math.min(count, HISTORY);
+            for (int i = 0; i < n; i++) {
+                dst[off + i] = history[(count - n + i) % HISTORY];
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Samples the CPU times of the given threads, on the tab worker thread.
+     * The lock is only held to merge the times read, not during the remote
+     * calls.
+     *
+     * @return the rows of the table, or <tt>null</tt> if the VM does not
+     *         support thread CPU time
+     */
+    public Snapshot sample(ProxyClient proxyClient, long[] ids,
+                           ThreadRegistry registry)
+            throws IOException {
+        ThreadMXBean tm = proxyClient.getThreadMXBean();
+        if (cpuTimeSupported == null) {
+            cpuTimeSupported = tm.isThreadCpuTimeSupported();
+        }
+        if (!cpuTimeSupported) {
+            return null;
+        }
+        long[] cpu;
+        long[] user;
+        long[] allocated = null;
+        com.sun.management.ThreadMXBean sun = proxyClient.getSunThreadMXBean();
+        if (sun != null) {
+            if (allocatedMemorySupported == null) {
+                allocatedMemorySupported = sun.isThreadAllocatedMemorySupported();
+            }
+            cpu = sun.getThreadCpuTime(ids);
+            user = sun.getThreadUserTime(ids);
+            if (allocatedMemorySupported) {
+                allocated = sun.getThreadAllocatedBytes(ids);
+            }
+        } else {
+            cpu = new long[ids.length];
+            user = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                cpu[i] = tm.getThreadCpuTime(ids[i]);
+                user[i] = tm.getThreadUserTime(ids[i]);
+            }
+        }
+        return merge(ids, cpu, user, allocated, registry);
+    }
+
+    private synchronized Snapshot merge(long[] ids, long[] cpu, long[] user,
+                                        long[] allocated,
+                                        ThreadRegistry registry) {
+        long now = System.nanoTime();
+        long elapsed = (lastSampleTime != 0L) ? now - lastSampleTime : 0L;
+        lastSampleTime = now;
+
+        Snapshot s = new Snapshot(ids.length);
+        Entry[] rows = new Entry[ids.length];
+        for (Pool p : pools.values()) {
+            p.rate = 0.0;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            Entry e = entries.get(ids[i]);
+            if (e == null) {
+                e = new Entry();
+                entries.put(ids[i], e);
+            }
+            s.ids[i] = ids[i];
+            s.names[i] = registry.getName(ids[i]);
+            s.cpuUsages[i] = usage(e.cpuTime, cpu[i], elapsed);
+            s.userUsages[i] = usage(e.userTime, user[i], elapsed);
+            s.cpuTimes[i] = cpu[i];
+            rows[i] = e;
+            e.cpuTime = cpu[i];
+            e.userTime = user[i];
+            e.add(s.cpuUsages[i]);
+            s.historyLengths[i] = e.copyHistory(s.histories, i * HISTORY);
+
+            if (e.pool == null && s.names[i] != null) {
+                e.pool = getPool(s.names[i]);
+            }
+            s.pools[i] = (e.pool != null) ? e.pool.name : null;
+            if (allocated != null) {
+                s.allocationRates[i] = rate(e.allocatedBytes, allocated[i], elapsed);
+                s.allocatedBytes[i] = allocated[i];
+                e.allocatedBytes = allocated[i];
+                if (e.pool != null && !Float.isNaN(s.allocationRates[i])) {
+                    e.pool.rate += s.allocationRates[i];
+                }
+            } else {
+                s.allocationRates[i] = Float.NaN;
+                s.allocatedBytes[i] = -1L;
+            }
+        }
+        if (allocated != null) {
+            s.poolRates = getPoolRates(s.poolNames);
+        }
+        if (entries.size() > ids.length) {
+            // Drop the dead threads, and the pools left without threads
+            // unless plotted
+            live.clear();
+            live.addAll(ids, 0, ids.length);
+            entries.retainAll(live);
+            Map<String, Pool> used = new HashMap<String, Pool>();
+            for (Entry e : rows) {
+                if (e.pool != null) {
+                    used.put(e.pool.name, e.pool);
+                }
+            }
+            for (Pool p : slots) {
+                if (p != null) {
+                    used.put(p.name, p);
+                }
+            }
+            pools.keySet().retainAll(used.keySet());
+        }
+        return s;
+    }
+
+    // CPU usage in percent of one CPU, NaN if unknown
+    private static float usage(long oldTime, long newTime, long elapsed) {
+        if (oldTime < 0L || newTime < oldTime || elapsed <= 0L) {
+            return Float.NaN;
+        }
+        return 100.0f * (newTime - oldTime) / elapsed;
+    }
+
+    // Allocation rate in bytes per second, NaN if unknown
+    private static float rate(long oldBytes, long newBytes, long elapsed) {
+        if (oldBytes < 0L || newBytes < oldBytes || elapsed <= 0L) {
+            return Float.NaN;
+        }
+        return (newBytes - oldBytes) * 1.0e9f / elapsed;
+    }
+
+    private Pool getPool(String threadName) {
+        String name = getPoolName(threadName);
+        Pool p = pools.get(name);
+        if (p == null) {
+            p = new Pool(name);
+            pools.put(name, p);
+        }
+        return p;
+    }
+
+    static String getPoolName(String threadName) {
+        synchronized (TopThreads.class) {
+            if (!poolPatternRead) {
+                String regex = Settings.getProperty(Settings.KEY_THREAD_POOL_PATTERN, "");
+                if (regex.length() > 0) {
+                    try {
+                        poolPattern = Pattern.compile(regex);
+                    } catch (PatternSyntaxException e) {
+                        if (JConsole.isDebug()) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+                poolPatternRead = true;
+            }
+        }
+        if (poolPattern != null) {
+            Matcher m = poolPattern.matcher(threadName);
+            if (m.find()) {
+                return (m.groupCount() > 0 && m.group(1) != null) ? m.group(1)
+                                                                  : m.group();
+            }
+        }
+        int end = threadName.length();
+        while (end > 0 && Character.isDigit(threadName.charAt(end - 1))) {
+            end--;
+        }
+        while (end > 0 && "-_#. ".indexOf(threadName.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return (end > 0) ? threadName.substring(0, end) : threadName;
+    }
+
+    // Assigns free slots to the pools allocating the most, and returns the
+    // rates of the slots in KB per second, the other pools first
+    private long[] getPoolRates(String[] slotNames) {
+        List<Pool> others = new ArrayList<Pool>();
+        for (Pool p : pools.values()) {
+            if (p.slot < 0 && p.rate > 0.0) {
+                others.add(p);
+            }
+        }
+        Collections.sort(others, new Comparator<Pool>() {
+            public int compare(Pool p1, Pool p2) {
+                return Double.compare(p2.rate, p1.rate);
+            }
+        });
+        for (Pool p : others) {
+            int slot = Arrays.asList(slots).indexOf(null);
+            if (slot < 0) {
+                break;
+            }
+            p.slot = slot;
+            slots[slot] = p;
+        }
+        long[] rates = new long[POOL_SLOTS + 1];
+        for (Pool p : pools.values()) {
+            rates[p.slot + 1] += Math.round(p.rate / 1024.0);
+        }
+        for (int i = 0; i < POOL_SLOTS; i++) {
+            slotNames[i] = (slots[i] != null) ? slots[i].name : null;
+        }
+        return rates;
+    }
+
+    /**
+     * The rows of the table at one sample, in the thread list order.
+     */
+    static class Snapshot {
+        final long[] ids;
+        final String[] names;
+        final float[] cpuUsages;
+        final float[] userUsages;
+        final long[] cpuTimes;
+        final String[] pools;
+        final float[] allocationRates;
+        final long[] allocatedBytes;
+        // The names of the pools plotted, null for free slots, and the
+        // allocation rates of the other pools and of each slot, null if
+        // allocated bytes are not supported
+        final String[] poolNames = new String[POOL_SLOTS];
+        long[] poolRates = null;
+        // The CPU usage histories, oldest first, HISTORY floats per row
+        private final float[] histories;
+        private final int[] historyLengths;
+
+        private Snapshot(int size) {
+            ids = new long[size];
+            names = new String[size];
+            cpuUsages = new float[size];
+            userUsages = new float[size];
+            cpuTimes = new long[size];
+            pools = new String[size];
+            allocationRates = new float[size];
+            allocatedBytes = new long[size];
+            histories = new float[size * HISTORY];
+            historyLengths = new int[size];
+        }
+    }
+
+    /**
+     * A table with a row per thread of a Snapshot.
+     */
+    @SuppressWarnings("serial")
+    abstract static class ThreadTableModel extends AbstractTableModel {
+        private final String[] columnKeys;
+        Snapshot snapshot = new Snapshot(0);
+
+        ThreadTableModel(String... columnKeys) {
+            this.columnKeys = columnKeys;
+        }
+
+        /**
+         * Shows a sample, on the event dispatch thread. The selection is
+         * kept when the threads are the same ones.
+         */
+        void setSnapshot(Snapshot s) {
+            boolean same = Arrays.equals(s.ids, snapshot.ids);
+            snapshot = s;
+            if (same && s.ids.length > 0) {
+                fireTableRowsUpdated(0, s.ids.length - 1);
+            } else {
+                fireTableDataChanged();
+            }
+        }
+
+        long getThreadId(int row) {
+            return snapshot.ids[row];
+        }
+
+        int getRow(long id) {
+            for (int i = 0; i < snapshot.ids.length; i++) {
+                if (snapshot.ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public int getRowCount() {
+            return snapshot.ids.length;
+        }
+
+        public int getColumnCount() {
+            return columnKeys.length;
+        }
+
+        public String getColumnName(int column) {
+            return getText(columnKeys[column]);
+        }
+    }
+
+    /**
+     * The table of the Top tab.
+     */
+    @SuppressWarnings("serial")
+    static class TopTableModel extends ThreadTableModel {
+        static final int CPU_COLUMN = 2;
+        static final int HISTORY_COLUMN = 5;
+
+        TopTableModel() {
+            super("TopThreads.column.id",
+                  "TopThreads.column.name",
+                  "TopThreads.column.cpu",
+                  "TopThreads.column.user",
+                  "TopThreads.column.cpuTime",
+                  "TopThreads.column.history");
+        }
+
+        public Class<?> getColumnClass(int column) {
+            switch (column) {
+                case 0:
+                    return Long.class;
+                case 1:
+                    return String.class;
+                case 2:
+                case 3:
+                    return Float.class;
+                case 4:
+                    return Double.class;
+                default:
+                    return float[].class;
+            }
+        }
+
+        public Object getValueAt(int row, int column) {
+            Snapshot s = snapshot;
+            switch (column) {
+                case 0: return s.ids[row];
+                case 1: return s.names[row];
+                case 2: return round(s.cpuUsages[row]);
+                case 3: return round(s.userUsages[row]);
+                case 4: return (s.cpuTimes[row] >= 0L) ?
+                            Math.round(s.cpuTimes[row] / 1000000.0) / 1000.0 : null;
+                case 5: return Arrays.copyOfRange(s.histories, row * HISTORY,
+                                                  row * HISTORY + s.historyLengths[row]);
+                default: return null;
+            }
+        }
+    }
+
+    private static Float round(float value) {
+        return Float.isNaN(value) ? null : Math.round(value * 10.0f) / 10.0f;
+    }
+
+    /**
+     * The table of the Allocation tab.
+     */
+    @SuppressWarnings("serial")
+    static class AllocationTableModel extends ThreadTableModel {
+        static final int RATE_COLUMN = 3;
+
+        AllocationTableModel() {
+            super("TopThreads.column.id",
+                  "TopThreads.column.name",
+                  "TopThreads.column.pool",
+                  "TopThreads.column.allocationRate",
+                  "TopThreads.column.allocated");
+        }
+
+        public Class<?> getColumnClass(int column) {
+            switch (column) {
+                case 0:
+                    return Long.class;
+                case 1:
+                case 2:
+                    return String.class;
+                default:
+                    return Float.class;
+            }
+        }
+
+        public Object getValueAt(int row, int column) {
+            Snapshot s = snapshot;
+            switch (column) {
+                case 0: return s.ids[row];
+                case 1: return s.names[row];
+                case 2: return s.pools[row];
+                case 3: return round(s.allocationRates[row] / 1024.0f);
+                case 4: return (s.allocatedBytes[row] >= 0L) ?
+                            round(s.allocatedBytes[row] / (1024.0f * 1024.0f)) : null;
+                default: return null;
+            }
+        }
+    }
+
+    /**
+     * Draws a usage history as bars, 100% at the top of the cell.
+     */
+    @SuppressWarnings("serial")
+    static class HistoryRenderer extends JComponent implements TableCellRenderer {
+        private float[] history = new float[0];
+        private Color color;
+
+        public Component getTableCellRendererComponent(JTable table, Object value,
+                                                       boolean isSelected,
+                                                       boolean hasFocus,
+                                                       int row, int column) {
+            history = (value instanceof float[]) ? (float[])value : new float[0];
+            setBackground(isSelected ? table.getSelectionBackground()
+                                     : table.getBackground());
+            color = isSelected ? table.getSelectionForeground() : Plotter.defaultColor;
+            return this;
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            int w = getWidth();
+            int h = getHeight() - 2;
+            g.setColor(getBackground());
+            g.fillRect(0, 0, w, getHeight());
+            g.setColor(color);
+            // Newest usage at the right
+            int x = w - 2 * history.length;
+            for (float usage : history) {
+                if (!Float.isNaN(usage) && x >= 0) {
+                    int bar = Math.max(1, Math.round(h * Math.min(usage, 100.0f) / 100.0f));
+                    g.fillRect(x, h + 1 - bar, 1, bar);
+                }
+                x += 2;
+            }
+        }
+    }
+}
@@ -0,0 +1,477 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sun.tools.jconsole;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.management.*;
+
+import andrask.sun.tools.jconsole.Settings;
+
+//
+// Update scheduler:
+//
+// One scheduler for the whole console runs the update ticks of every
+// VMPanel, the tab SwingWorkers and the tab Worker jobs on a bounded pool
+// of threads, so that the number of threads no longer grows with the
+// number of connections.
+//
+// - Each VMPanel submits its work to its own Lane. The pool threads take
+//   tasks from the lanes that have work in round-robin order, one task at
+//   a time, so a connection with a long backlog cannot starve the others.
+//
+// - A lane runs at most myjconsole.scheduler.lanetasks tasks at once, the
+//   others wait in the lane. Tasks block in remote calls, so a hung
+//   connection holds at most that many pool threads.
+//
+// - Fixed-rate tasks are fired by a single dispatcher thread at
+//   start + n * period, so ticks do not drift. A tick is skipped and
+//   counted as missed when the previous tick of the same task is still
+//   queued or running, or when the tick could not be fired in time;
+//   missed ticks are never run late in a burst.
+//
+// - When the myjconsole.scheduler.virtualthreads setting is true and the
+//   JVM running the console supports them, there is no pool: each task
+//   runs on a virtual thread of its own, within the limit of its lane.
+//
+public class UpdateScheduler implements UpdateSchedulerMXBean {
+
+    private static UpdateScheduler instance;
+
+    private final int poolSize;
+    private final int laneTasks;
+    // Creates one thread per task, null when tasks run on the pool
+    private final ThreadFactory taskThreads;
+    private final ScheduledExecutorService dispatcher;
+
+    // Lanes having queued tasks, in round-robin order. Guarded by this.
+    private final LinkedList<Lane> ready = new LinkedList<Lane>();
+    private int queueDepth = 0;
+    private int laneCount = 0;
+    private int runningCount = 0;
+
+    private final AtomicLong taskCount = new AtomicLong();
+    private final AtomicLong tickCount = new AtomicLong();
+    private final AtomicLong missedTickCount = new AtomicLong();
+    private final AtomicLong rejectedTaskCount = new AtomicLong();
+    private volatile long lastQueueWait = 0L;
+    private volatile long maxQueueWait = 0L;
+    private volatile long lastTickLag = 0L;
+    private volatile long maxTickLag = 0L;
+
+    public static synchronized UpdateScheduler getInstance() {
+        if (instance == null) {
+            int threads = Settings.getInt(Settings.KEY_SCHEDULER_THREADS,
+                    Math.max(4, Runtime.getRuntime().availableProcessors()));
+            boolean virtual = Boolean.valueOf(Settings.getProperty(
+                    Settings.KEY_SCHEDULER_VIRTUAL_THREADS, "false"));
+            int laneTasks = Settings.getInt(Settings.KEY_SCHEDULER_LANE_TASKS, 2);
+            instance = new UpdateScheduler(Math.max(1, threads),
+                                           Math.max(1, laneTasks), virtual);
+            instance.register();
+        }
+        return instance;
+    }
+
+    private UpdateScheduler(int poolSize, int laneTasks, boolean virtual) {
+        this.laneTasks = laneTasks;
+        this.taskThreads = virtual ? newVirtualThreadFactory() : null;
+        if (taskThreads == null) {
+            ThreadFactory factory = new ThreadFactory() {
+                private int count = 0;
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "UpdateScheduler-" + (++count));
+                    t.setDaemon(true);
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                }
+            };
+            this.poolSize = poolSize;
+            for (int i = 0; i < poolSize; i++) {
+                factory.newThread(new Runnable() {
+                    public void run() {
+                        runTasks();
+                    }
+                }).start();
+            }
+        } else {
+            this.poolSize = 0;
+        }
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "UpdateScheduler-Dispatcher");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+    }
+
+    // Thread.ofVirtual().factory(), looked up reflectively as the console
+    // is built for, and may run on, JVMs without virtual threads.
+    private static ThreadFactory newVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            if (JConsole.isDebug()) {
+                e.printStackTrace();
+            }
+            return null;
+        }
+    }
+
+    private void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                new ObjectName("myjconsole:type=UpdateScheduler"));
+        } catch (JMException e) {
+            if (JConsole.isDebug()) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Creates a lane, the queue through which one VMPanel submits its work.
+     */
+    public Lane newLane(String name) {
+        synchronized (this) {
+            laneCount++;
+        }
+        return new Lane(name);
+    }
+
+    /**
+     * Runs <tt>task</tt> on <tt>lane</tt> every <tt>period</tt>
+     * milliseconds, starting now.
+     */
+    public Ticker scheduleAtFixedRate(Lane lane, Runnable task, long period) {
+        Ticker ticker = new Ticker(lane, task, period);
+        ticker.scheduleNext();
+        return ticker;
+    }
+
+    // The loop of a pool thread
+    private void runTasks() {
+        while (true) {
+            Lane lane;
+            QueuedTask t;
+            synchronized (this) {
+                while (ready.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        // Ignore
+                    }
+                }
+                lane = ready.removeFirst();
+                lane.isReady = false;
+                t = lane.take();
+                schedule(lane);
+            }
+            runTask(lane, t);
+        }
+    }
+
+    // Makes the queued tasks of a lane runnable, as far as its limit
+    // allows: on a thread of their own, or by queueing the lane for the
+    // pool threads. Called with this locked.
+    private void schedule(final Lane lane) {
+        if (lane.closed) {
+            return;
+        }
+        if (taskThreads != null) {
+            while (!lane.tasks.isEmpty() && lane.running < laneTasks) {
+                final QueuedTask t = lane.take();
+                taskThreads.newThread(new Runnable() {
+                    public void run() {
+                        runTask(lane, t);
+                    }
+                }).start();
+            }
+        } else if (!lane.isReady && !lane.tasks.isEmpty() &&
+                   lane.running < laneTasks) {
+            lane.isReady = true;
+            ready.addLast(lane);
+            notify();
+        }
+    }
+
+    private void runTask(Lane lane, QueuedTask t) {
+        try {
+            long wait = System.currentTimeMillis() - t.enqueued;
+            lastQueueWait = wait;
+            if (wait > maxQueueWait) {
+                maxQueueWait = wait;
+            }
+            taskCount.incrementAndGet();
+            try {
+                t.task.run();
+            } catch (Throwable e) {
+                if (JConsole.isDebug()) {
+                    e.printStackTrace();
+                }
+            }
+            // Do not let a cancelled task interrupt the next one
+            Thread.interrupted();
+        } finally {
+            synchronized (this) {
+                lane.running--;
+                runningCount--;
+                schedule(lane);
+            }
+        }
+    }
+
+    private static class QueuedTask {
+        final Runnable task;
+        final long enqueued = System.currentTimeMillis();
+
+        QueuedTask(Runnable task) {
+            this.task = task;
+        }
+    }
+
+    /**
+     * The queue of work of one VMPanel. Tasks of a lane are started in
+     * submission order, and at most myjconsole.scheduler.lanetasks of
+     * them run concurrently.
+     */
+    public class Lane implements Executor {
+        private final String name;
+        // Guarded by the enclosing UpdateScheduler
+        private final LinkedList<QueuedTask> tasks = new LinkedList<QueuedTask>();
+        private boolean isReady = false;
+        private boolean closed = false;
+        private int running = 0;
+
+        private Lane(String name) {
+            this.name = name;
+        }
+
+        public void execute(Runnable task) {
+            synchronized (UpdateScheduler.this) {
+                if (!closed) {
+                    tasks.addLast(new QueuedTask(task));
+                    queueDepth++;
+                    schedule(this);
+                    return;
+                }
+            }
+            // Such as a tab SwingWorker or Worker job after its VMPanel
+            // was closed, nothing will ever run it
+            rejectedTaskCount.incrementAndGet();
+            if (JConsole.isDebug()) {
+                System.err.println("UpdateScheduler: task submitted to the closed lane " +
+                                   name + ": " + task);
+            }
+        }
+
+        // Removes the next task to run it. Called with the scheduler locked.
+        private QueuedTask take() {
+            queueDepth--;
+            running++;
+            runningCount++;
+            return tasks.removeFirst();
+        }
+
+        /**
+         * Discards the queued tasks and rejects any further ones.
+         */
+        public void close() {
+            synchronized (UpdateScheduler.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                laneCount--;
+                queueDepth -= tasks.size();
+                tasks.clear();
+                if (isReady) {
+                    isReady = false;
+                    ready.remove(this);
+                }
+            }
+        }
+
+        public int getQueueDepth() {
+            synchronized (UpdateScheduler.this) {
+                return tasks.size();
+            }
+        }
+
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * A task run at a fixed rate on a lane, see scheduleAtFixedRate().
+     */
+    public class Ticker implements Runnable {
+        private final Lane lane;
+        private final Runnable task;
+        private final long period;
+        private final long start = System.nanoTime();
+        private long index = 0;
+        private final AtomicBoolean inFlight = new AtomicBoolean(false);
+        private volatile boolean cancelled = false;
+        private volatile ScheduledFuture<?> future;
+
+        private Ticker(Lane lane, Runnable task, long period) {
+            this.lane = lane;
+            this.task = task;
+            this.period = TimeUnit.MILLISECONDS.toNanos(period);
+        }
+
+        private void scheduleNext() {
+            if (cancelled) {
+                return;
+            }
+            long delay = start + index * period - System.nanoTime();
+            try {
+                future = dispatcher.schedule(this, delay, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // Should not happen, the dispatcher is never shut down
+            }
+        }
+
+        // Called on the dispatcher thread
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            final long due = start + index * period;
+            long late = (System.nanoTime() - due) / period;
+            if (late > 0) {
+                missedTickCount.addAndGet(late);
+            }
+            index += late + 1;
+            if (inFlight.compareAndSet(false, true)) {
+                tickCount.incrementAndGet();
+                lane.execute(new Runnable() {
+                    public void run() {
+                        long lag = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - due);
+                        lastTickLag = lag;
+                        if (lag > maxTickLag) {
+                            maxTickLag = lag;
+                        }
+                        try {
+                            if (!cancelled) {
+                                task.run();
+                            }
+                        } finally {
+                            inFlight.set(false);
+                        }
+                    }
+                });
+            } else {
+                missedTickCount.incrementAndGet();
+            }
+            scheduleNext();
+        }
+
+        public void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> f = future;
+            if (f != null) {
+                f.cancel(false);
+            }
+        }
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public boolean isVirtualThreads() {
+        return taskThreads != null;
+    }
+
+    public int getLaneTasks() {
+        return laneTasks;
+    }
+
+    public synchronized int getRunningCount() {
+        return runningCount;
+    }
+
+    public synchronized int getLaneCount() {
+        return laneCount;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getTaskCount() {
+        return taskCount.get();
+    }
+
+    public long getLastQueueWait() {
+        return lastQueueWait;
+    }
+
+    public long getMaxQueueWait() {
+        return maxQueueWait;
+    }
+
+    public long getTickCount() {
+        return tickCount.get();
+    }
+
+    public long getMissedTickCount() {
+        return missedTickCount.get();
+    }
+
+    public long getRejectedTaskCount() {
+        return rejectedTaskCount.get();
+    }
+
+    public long getLastTickLag() {
+        return lastTickLag;
+    }
+
+    public long getMaxTickLag() {
+        return maxTickLag;
+    }
+
+    public void resetStatistics() {
+        taskCount.set(0L);
+        tickCount.set(0L);
+        missedTickCount.set(0L);
+        rejectedTaskCount.set(0L);
+        lastQueueWait = 0L;
+        maxQueueWait = 0L;
+        lastTickLag = 0L;
+        maxTickLag = 0L;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sun.tools.jconsole;
+
+/**
+ * Management interface of the console-wide {@link UpdateScheduler},
+ * registered in the console's own platform MBeanServer as
+ * <tt>myjconsole:type=UpdateScheduler</tt>.
+ */
+public interface UpdateSchedulerMXBean {
+    /**
+     * Number of pool threads running scheduled work, 0 when every task
+     * runs on a virtual thread of its own.
+     */
+    public int getPoolSize();
+
+    /**
+     * Whether tasks run on virtual threads, one per task.
+     */
+    public boolean isVirtualThreads();
+
+    /**
+     * Maximum number of tasks of a lane running at once.
+     */
+    public int getLaneTasks();
+
+    /**
+     * Number of tasks running.
+     */
+    public int getRunningCount();
+
+    /**
+     * Number of lanes, one per VMPanel.
+     */
+    public int getLaneCount();
+
+    /**
+     * Number of tasks waiting to run.
+     */
+    public int getQueueDepth();
+
+    /**
+     * Number of tasks run since the statistics were reset.
+     */
+    public long getTaskCount();
+
+    /**
+     * Time the last task waited in the queue, in milliseconds.
+     */
+    public long getLastQueueWait();
+
+    /**
+     * Longest time a task waited in the queue, in milliseconds.
+     */
+    public long getMaxQueueWait();
+
+    /**
+     * Number of fixed-rate ticks fired since the statistics were reset.
+     */
+    public long getTickCount();
+
+    /**
+     * Number of fixed-rate ticks skipped since the statistics were reset,
+     * either because the previous tick of the same task was still queued
+     * or running, or because the tick could not be fired on time.
+     */
+    public long getMissedTickCount();
+
+    /**
+     * Number of tasks submitted to a closed lane, and never run, since
+     * the statistics were reset.
+     */
+    public long getRejectedTaskCount();
+
+    /**
+     * Delay between the due time and the firing of the last tick,
+     * in milliseconds.
+     */
+    public long getLastTickLag();
+
+    /**
+     * Longest delay between the due time and the firing of a tick,
+     * in milliseconds.
+     */
+    public long getMaxTickLag();
+
+    public void resetStatistics();
+}
@@ -32,11 +32,14 @@ import java.io.*;
 import java.lang.reflect.*;
 import java.util.*;
 import java.util.List;
-import java.util.Timer;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.*;
+import javax.swing.event.*;
 import javax.swing.plaf.*;
 
+import andrask.sun.tools.jconsole.Settings;
+
 import com.sun.tools.jconsole.JConsolePlugin;
 import com.sun.tools.jconsole.JConsoleContext;
 import static com.sun.tools.jconsole.JConsoleContext.ConnectionState.*;
@@ -47,7 +50,10 @@ import static sun.tools.jconsole.ProxyClient.*;
 public class VMPanel extends JTabbedPane implements PropertyChangeListener {
 
     private ProxyClient proxyClient;
-    private Timer timer;
+    private final UpdateScheduler.Lane updateLane;
+    private PlotHistory plotHistory = null;
+    private boolean plotHistoryChecked = false;
+    private UpdateScheduler.Ticker ticker;
     private int updateInterval;
     private String hostName;
     private int port;
@@ -56,6 +62,11 @@ public class VMPanel extends JTabbedPane implements PropertyChangeListener {
     private String password;
     private String url;
     private VMInternalFrame vmIF = null;
+    private final int backgroundInterval;
+    private volatile Set<Tab> showingTabs = Collections.emptySet();
+    private volatile boolean iconified = false;
+    private final Map<Tab, Long> lastTabUpdate =
+        new ConcurrentHashMap<Tab, Long>();
     private static final String windowsLaF =
             "com.sun.java.swing.plaf.windows.WindowsLookAndFeel";
     private static ArrayList<TabInfo> tabInfos = new ArrayList<TabInfo>();
@@ -72,6 +83,18 @@ public class VMPanel extends JTabbedPane implements PropertyChangeListener {
     //
     private boolean initialUpdate = true;
 
+    // Warm reconnect: when an established connection is lost, reconnect in
+    // the background with exponential backoff, keeping the tabs, the MBean
+    // tree and the plotter histories, instead of asking the user.
+    //
+    private static final long MIN_RECONNECT_DELAY = 1000;
+    private static final long MAX_RECONNECT_DELAY = 60000;
+    private final int reconnectAttempts;
+    private volatile Thread reconnectThread = null;
+    private volatile int reconnectAttempt = 0;
+    // Set when the user disconnects, so that no warm reconnect takes place
+    private boolean disconnectRequested = false;
+
     // Each VMPanel has its own instance of the JConsolePlugin
     // A map of JConsolePlugin to the previous SwingWorker
     private Map<JConsolePlugin, SwingWorker<?, ?>> plugins = null;
@@ -89,6 +112,7 @@ public class VMPanel extends JTabbedPane implements PropertyChangeListener {
         tabInfos.add(new TabInfo(ClassTab.class, ClassTab.getTabName(), true));
         tabInfos.add(new TabInfo(SummaryTab.class, SummaryTab.getTabName(), true));
         tabInfos.add(new TabInfo(MBeansTab.class, MBeansTab.getTabName(), true));
+        tabInfos.add(new TabInfo(ConnectionTab.class, ConnectionTab.getTabName(), true));
     }
 
     public static TabInfo[] getTabInfos() {
@@ -104,6 +128,15 @@ public class VMPanel extends JTabbedPane implements PropertyChangeListener {
         this.userName = proxyClient.getUserName();
         this.password = proxyClient.getPassword();
         this.url = proxyClient.getUrl();
+        this.updateLane =
+            UpdateScheduler.getInstance().newLane(proxyClient.connectionName());
+        this.backgroundInterval =
+            Settings.getInt(Settings.KEY_BACKGROUND_UPDATE_INTERVAL, 30000);
+        this.reconnectAttempts =
+            Settings.getInt(Settings.KEY_RECONNECT_ATTEMPTS, 8);
+        // Values read within one update interval are shared, but expire
+        // before the next tick
+        proxyClient.setSnapshotTtl(updateInterval * 3 / 4);
 
         for (TabInfo tabInfo : tabInfos) {
             if (tabInfo.tabVisible) {
@@ -111,6 +144,13 @@ public class VMPanel extends JTabbedPane implements PropertyChangeListener {
             }
         }
 
+        addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                updateShowingTabs();
+            }
+        });
+        updateShowingTabs();
+
         plugins = new LinkedHashMap<JConsolePlugin, SwingWorker<?, ?>>();
         for (JConsolePlugin p : JConsole.getPlugins()) {
             p.setContext(proxyClient);
@@ -131,9 +171,11 @@ public class VMPanel extends JTabbedPane implements PropertyChangeListener {
                 if (connectedIconBounds != null && (e.getModifiers() & MouseEvent.BUTTON1_MASK) != 0 && connectedIconBounds.contains(e.getPoint())) {
 
                     if (isConnected()) {
+                        disconnectRequested = true;
                         disconnect();
                         wasConnected = false;
                     } else {
+                        stopReconnect();
                         connect();
                     }
                     repaint();
@@ -269,8 +311,16 @@ public class VMPanel extends JTabbedPane implements PropertyChangeListener {
         }
         // Cancel pending update tasks
         //
-        if (timer != null) {
-            timer.cancel();
+        if (ticker != null) {
+            ticker.cancel();
+        }
+        updateLane.close();
+        stopReconnect();
+        // Release the plot history, another window may open it
+        synchronized (this) {
+            if (plotHistory != null) {
+                plotHistory.close();
+            }
         }
         // Stop listening to connection state events
         //
@@ -279,6 +329,7 @@ public class VMPanel extends JTabbedPane implements PropertyChangeListener {
 
     // Call on EDT
     public void connect() {
+        disconnectRequested = false;
         if (isConnected()) {
             // create plugin tabs if not done
             createPluginTabs();
@@ -313,10 +364,13 @@ public class VMPanel extends JTabbedPane implements PropertyChangeListener {
             ConnectionState newState = (ConnectionState) ev.getNewValue();
             switch (newState) {
                 case CONNECTING:
-                    onConnecting();
+                    if (reconnectThread == null) {
+                        onConnecting();
+                    }
                     break;
 
                 case CONNECTED:
+                    reconnectThread = null;
                     if (progressBar != null) {
                         progressBar.setIndeterminate(false);
                         progressBar.setValue(100);
@@ -340,7 +394,17 @@ public class VMPanel extends JTabbedPane implements PropertyChangeListener {
                         progressBar.setValue(0);
                         closeOptionPane();
                     }
-                    vmPanelDied();
+                    if (reconnectThread != null) {
+                        // A warm reconnect attempt failed, keep trying
+                        updateFrameTitle();
+                        break;
+                    }
+                    if (oldState == ConnectionState.CONNECTED &&
+                            !disconnectRequested && reconnectAttempts > 0) {
+                        startReconnect();
+                    } else {
+                        vmPanelDied();
+                    }
                     if (oldState == ConnectionState.CONNECTED) {
                         // Notify tabs
                         fireConnectedChange(false);
@@ -408,7 +472,11 @@ public class VMPanel extends JTabbedPane implements PropertyChangeListener {
         VMInternalFrame vmIF = getFrame();
         if (vmIF != null) {
             String displayName = getDisplayName();
-            if (!proxyClient.isConnected()) {
+            if (reconnectThread != null) {
+                displayName = getText("ConnectionName (reconnecting)",
+                                      displayName, reconnectAttempt,
+                                      reconnectAttempts);
+            } else if (!proxyClient.isConnected()) {
                 displayName = getText("ConnectionName (disconnected)", displayName);
             }
             vmIF.setTitle(displayName);
@@ -439,23 +507,106 @@ public class VMPanel extends JTabbedPane implements PropertyChangeListener {
         return list;
     }
 
+    /**
+     * Returns the charts of all the tabs. Call on the EDT.
+     */
+    List<Plotter> getPlotters() {
+        List<Plotter> plotters = new ArrayList<Plotter>();
+        for (Tab tab : getTabs()) {
+            plotters.addAll(tab.getPlotters());
+        }
+        return plotters;
+    }
+
+    /**
+     * Returns the history of the plotters of this window, or
+     * <tt>null</tt> if it is disabled.
+     */
+    synchronized PlotHistory getPlotHistory() {
+        if (!plotHistoryChecked) {
+            plotHistory = PlotHistory.getInstance(proxyClient.connectionName());
+            plotHistoryChecked = true;
+        }
+        return plotHistory;
+    }
+
+    UpdateScheduler.Lane getUpdateLane() {
+        return updateLane;
+    }
+
     private void startUpdateTimer() {
-        if (timer != null) {
-            timer.cancel();
+        if (ticker != null) {
+            ticker.cancel();
         }
-        TimerTask timerTask = new TimerTask() {
+        ticker = UpdateScheduler.getInstance().scheduleAtFixedRate(updateLane,
+            new Runnable() {
+                public void run() {
+                    update();
+                }
+            }, updateInterval);
+    }
 
+    // Call on EDT
+    private void startReconnect() {
+        Thread t = new Thread("VMPanel.reconnect") {
             public void run() {
-                update();
+                long delay = MIN_RECONNECT_DELAY;
+                for (int i = 1; i <= reconnectAttempts; i++) {
+                    try {
+                        sleep(delay);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    if (reconnectThread != this) {
+                        return;
+                    }
+                    reconnectAttempt = i;
+                    EventQueue.invokeLater(new Runnable() {
+                        public void run() {
+                            updateFrameTitle();
+                        }
+                    });
+                    proxyClient.connect();
+                    if (proxyClient.isConnected()) {
+                        return;
+                    }
+                    delay = Math.min(delay * 2, MAX_RECONNECT_DELAY);
+                }
+                // Give up and let the user decide
+                final Thread self = this;
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() {
+                        if (reconnectThread == self) {
+                            reconnectThread = null;
+                            wasConnected = true;
+                            vmPanelDied();
+                        }
+                    }
+                });
             }
         };
-        String timerName = "Timer-" + getConnectionName();
-        timer = new Timer(timerName, true);
-        timer.schedule(timerTask, 0, updateInterval);
+        t.setDaemon(true);
+        reconnectAttempt = 0;
+        reconnectThread = t;
+        updateFrameTitle();
+        t.start();
+    }
+
+    // Call on EDT
+    private void stopReconnect() {
+        Thread t = reconnectThread;
+        if (t != null) {
+            reconnectThread = null;
+            t.interrupt();
+        }
     }
 
     // Call on EDT
     private void vmPanelDied() {
+        if (reconnectThread != null) {
+            // A warm reconnect is in progress
+            return;
+        }
         disconnect();
 
         final JConsole jc = (JConsole) SwingUtilities.getWindowAncestor(this);
@@ -508,7 +659,73 @@ public class VMPanel extends JTabbedPane implements PropertyChangeListener {
         });
     }
 
-    // Note: This method is called on a TimerTask thread. Any GUI manipulation
+    // Visibility-aware polling:
+    //
+    // The tab that is showing, and the tabs feeding the Overview tab when it
+    // is the one showing, are updated on every tick. Any other tab, and all
+    // tabs of an iconified frame, are only updated once per background
+    // interval. A tab that is shown again is updated right away.
+    //
+    // Call on EDT
+    private void updateShowingTabs() {
+        Set<Tab> tabs = new HashSet<Tab>();
+        Component c = getSelectedComponent();
+        if (c instanceof Tab) {
+            tabs.add((Tab) c);
+            if (c instanceof OverviewTab) {
+                for (Tab tab : getTabs()) {
+                    if (tab.getOverviewPanels() != null) {
+                        tabs.add(tab);
+                    }
+                }
+            }
+        }
+        Set<Tab> shown = new HashSet<Tab>(tabs);
+        shown.removeAll(showingTabs);
+        showingTabs = tabs;
+        if (!iconified) {
+            requestUpdate(shown);
+        }
+    }
+
+    // Call on EDT
+    void setIconified(boolean iconified) {
+        this.iconified = iconified;
+        if (!iconified) {
+            requestUpdate(showingTabs);
+        }
+    }
+
+    // Update the given tabs as soon as possible instead of waiting
+    // for their next background update.
+    private void requestUpdate(Set<Tab> tabs) {
+        if (tabs.isEmpty() || backgroundInterval <= 0) {
+            return;
+        }
+        for (Tab tab : tabs) {
+            lastTabUpdate.remove(tab);
+        }
+        if (ticker != null && isConnected()) {
+            updateLane.execute(new Runnable() {
+                public void run() {
+                    update();
+                }
+            });
+        }
+    }
+
+    private boolean isUpdateDue(Tab tab, long now) {
+        if (backgroundInterval <= 0 || initialUpdate) {
+            return true;
+        }
+        if (!iconified && showingTabs.contains(tab)) {
+            return true;
+        }
+        Long last = lastTabUpdate.get(tab);
+        return last == null || now - last >= backgroundInterval;
+    }
+
+    // Note: This method is called on an UpdateScheduler thread. Any GUI manipulation
     // must be performed with invokeLater() or invokeAndWait().
     private Object lockObject = new Object();
 
@@ -529,16 +746,22 @@ public class VMPanel extends JTabbedPane implements PropertyChangeListener {
                 wasConnected = true;
                 everConnected = true;
             }
-            proxyClient.flush();
+            proxyClient.getPollPlan().newTick();
+            long now = System.currentTimeMillis();
             List<Tab> tabs = getTabs();
             final int n = tabs.size();
             for (int i = 0; i < n; i++) {
                 final int index = i;
                 try {
                     if (!proxyClient.isDead()) {
+                        Tab tab = tabs.get(index);
+                        if (!isUpdateDue(tab, now)) {
+                            continue;
+                        }
                         // Update tab
                         //
-                        tabs.get(index).update();
+                        tab.update();
+                        lastTabUpdate.put(tab, now);
                         // Enable tab on initial update
                         //
                         if (initialUpdate) {
@@ -573,7 +796,7 @@ public class VMPanel extends JTabbedPane implements PropertyChangeListener {
                     if (sw == null || sw.getState() == SwingWorker.StateValue.PENDING) {
                         plugins.put(p, sw);
                         if (sw != null) {
-                            sw.execute();
+                            updateLane.execute(sw);
                         }
                     }
                 }
@@ -26,51 +26,161 @@
 package sun.tools.jconsole;
 
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
-public class Worker extends Thread {
-    ArrayList<Runnable> jobs = new ArrayList<Runnable>();
+/**
+ * Runs the jobs added to it one at a time, in order, on the executor it
+ * was created with, normally the update lane of the owning VMPanel.
+ *
+ * A job may be added with a key. A keyed job replaces a queued job with
+ * the same key, and cancels a running one: a running {@link Job} is told
+ * through {@link Job#isCancelled()}, a running {@link Future} such as a
+ * SwingWorker is cancelled without interrupting it. Unkeyed jobs are
+ * always run.
+ */
+public class Worker implements Runnable {
+    LinkedList<Entry> jobs = new LinkedList<Entry>();
+    private final String name;
+    private final Executor executor;
+    // The state below is guarded by jobs, never by this worker, so that
+    // the lock order is always jobs then a Job
     private boolean stopped = false;
+    // Whether a job of this worker is queued or running on the executor
+    private boolean scheduled = false;
+    // The job running on the executor, if any
+    private Entry running = null;
 
-    public Worker(String name) {
-        super("Worker-"+name);
+    private static class Entry {
+        final Object key;
+        Runnable job;
 
-        setPriority(NORM_PRIORITY - 1);
+        Entry(Object key, Runnable job) {
+            this.key = key;
+            this.job = job;
+        }
     }
 
-    public void run() {
-        while (!isStopped()) {
-            Runnable job;
-            synchronized(jobs) {
-                while (!isStopped() && jobs.size() == 0) {
-                    try {
-                        jobs.wait();
-                    } catch (InterruptedException ex) {
-                    }
+    /**
+     * A job that can find out whether it has been superseded by a newer
+     * job with the same key.
+     */
+    public static abstract class Job implements Runnable {
+        private volatile boolean cancelled = false;
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits for the given time unless the job is cancelled first.
+         *
+         * @return true if the job has not been cancelled.
+         */
+        protected synchronized boolean sleep(long millis) {
+            long end = System.currentTimeMillis() + millis;
+            long remaining = millis;
+            while (!cancelled && remaining > 0) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException ex) {
+                    // Ignore
                 }
+                remaining = end - System.currentTimeMillis();
+            }
+            return !cancelled;
+        }
+    }
 
-                if(isStopped()) break;
+    public Worker(String name, Executor executor) {
+        this.name = "Worker-"+name;
+        this.executor = executor;
+    }
 
-                job = jobs.remove(0);
+    // Runs one job per turn on the executor, so that the jobs of other
+    // workers sharing the executor get their turn in between.
+    public void run() {
+        Entry entry;
+        synchronized(jobs) {
+            if (isStopped() || jobs.size() == 0) {
+                scheduled = false;
+                return;
+            }
+            entry = jobs.removeFirst();
+            running = entry;
+        }
+        try {
+            entry.job.run();
+        } finally {
+            synchronized(jobs) {
+                running = null;
+                if (!isStopped() && jobs.size() > 0) {
+                    executor.execute(this);
+                } else {
+                    scheduled = false;
+                }
             }
-            job.run();
         }
     }
 
-    private synchronized boolean isStopped() {
+    // Called with the jobs lock held
+    private boolean isStopped() {
         return stopped;
     }
 
-    public synchronized void stopWorker() {
-        stopped = true;
+    public void stopWorker() {
         synchronized(jobs) {
-            jobs.notify();
+            stopped = true;
+            jobs.clear();
+            if (running != null) {
+                cancel(running.job);
+            }
         }
     }
 
     public void add(Runnable job) {
+        add(null, job);
+    }
+
+    /**
+     * Adds a job, replacing the queued job and cancelling the running job
+     * having the same key, if any.
+     */
+    public void add(Object key, Runnable job) {
         synchronized(jobs) {
-            jobs.add(job);
-            jobs.notify();
+            if (isStopped()) {
+                return;
+            }
+            if (key != null) {
+                if (running != null && key.equals(running.key)) {
+                    cancel(running.job);
+                }
+                for (Entry e : jobs) {
+                    if (key.equals(e.key)) {
+                        cancel(e.job);
+                        e.job = job;
+                        return;
+                    }
+                }
+            }
+            jobs.addLast(new Entry(key, job));
+            if (!scheduled) {
+                scheduled = true;
+                executor.execute(this);
+            }
+        }
+    }
+
+    private static void cancel(Runnable job) {
+        if (job instanceof Job) {
+            ((Job) job).cancel();
+        } else if (job instanceof Future) {
+            ((Future<?>) job).cancel(false);
         }
     }
 
@@ -79,4 +189,8 @@ public class Worker extends Thread {
             return (jobs.size() > 0);
         }
     }
+
+    public String toString() {
+        return name;
+    }
 }
@@ -29,6 +29,7 @@ import java.io.IOException;
 import javax.management.*;
 import javax.swing.Icon;
 import sun.tools.jconsole.JConsole;
+import sun.tools.jconsole.MBeanInfoCache;
 import sun.tools.jconsole.MBeansTab;
 import sun.tools.jconsole.ProxyClient.SnapshotMBeanServerConnection;
 
@@ -69,9 +70,14 @@ public class XMBean {
         synchronized (broadcasterLock) {
             if (broadcaster == null) {
                 try {
-                    broadcaster = getMBeanServerConnection().isInstanceOf(
-                            getObjectName(),
-                            "javax.management.NotificationBroadcaster");
+                    MBeanInfoCache cache = mbeansTab.getMBeanInfoCache();
+                    broadcaster = cache.isBroadcaster(objectName);
+                    if (broadcaster == null) {
+                        broadcaster = getMBeanServerConnection().isInstanceOf(
+                                getObjectName(),
+                                "javax.management.NotificationBroadcaster");
+                        cache.putBroadcaster(objectName, broadcaster);
+                    }
                 } catch (Exception e) {
                     if (JConsole.isDebug()) {
                         System.err.println("Couldn't check if MBean [" +
@@ -137,7 +143,12 @@ public class XMBean {
             IntrospectionException, ReflectionException, IOException {
         synchronized (mbeanInfoLock) {
             if (mbeanInfo == null) {
-                mbeanInfo = getMBeanServerConnection().getMBeanInfo(objectName);
+                MBeanInfoCache cache = mbeansTab.getMBeanInfoCache();
+                mbeanInfo = cache.getMBeanInfo(objectName);
+                if (mbeanInfo == null) {
+                    mbeanInfo = getMBeanServerConnection().getMBeanInfo(objectName);
+                    cache.putMBeanInfo(objectName, mbeanInfo);
+                }
             }
             return mbeanInfo;
         }
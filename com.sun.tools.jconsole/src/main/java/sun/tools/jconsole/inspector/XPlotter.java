@@ -26,6 +26,7 @@
 package sun.tools.jconsole.inspector;
 
 import sun.tools.jconsole.Plotter;
+import javax.swing.JComponent;
 import javax.swing.JTable;
 import java.awt.Graphics;
 
@@ -37,9 +38,9 @@ public class XPlotter extends Plotter {
         super(unit,0,false);
         this.table = table;
     }
+    // The plotter is painted as a cell renderer of the table
     @Override
-    public void addValues(long time, long... values) {
-        super.addValues(time, values);
-        table.repaint();
+    protected JComponent getRepaintTarget() {
+        return table;
     }
 }
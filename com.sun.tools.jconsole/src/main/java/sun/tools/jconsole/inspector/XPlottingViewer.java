@@ -28,7 +28,6 @@ package sun.tools.jconsole.inspector;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.*;
-import java.util.Timer;
 
 import javax.swing.*;
 
@@ -43,8 +42,8 @@ public class XPlottingViewer extends PlotterPanel implements ActionListener {
     // The plotter cache holds Plotter instances for the various attributes
     private static HashMap<String, XPlottingViewer> plotterCache =
         new HashMap<String, XPlottingViewer>();
-     private static HashMap<String, Timer> timerCache =
-         new HashMap<String, Timer>();
+     private static HashMap<String, UpdateScheduler.Ticker> timerCache =
+         new HashMap<String, UpdateScheduler.Ticker>();
     private JPanel bordered;
     private Number value;
     private MBeansTab tab;
@@ -82,7 +81,7 @@ public class XPlottingViewer extends PlotterPanel implements ActionListener {
         while(it.hasNext()) {
             String key = (String) it.next();
             if(key.startsWith(String.valueOf(tab.hashCode()))) {
-                Timer t = timerCache.get(key);
+                UpdateScheduler.Ticker t = timerCache.get(key);
                 t.cancel();
                 it.remove();
             }
@@ -126,7 +125,7 @@ public class XPlottingViewer extends PlotterPanel implements ActionListener {
     @Override
     public void actionPerformed(ActionEvent evt) {
         plotterCache.remove(key);
-        Timer t = timerCache.remove(key);
+        UpdateScheduler.Ticker t = timerCache.remove(key);
         t.cancel();
         ((XMBeanAttributes) table).collapse(attributeName, this);
     }
@@ -150,34 +149,39 @@ public class XPlottingViewer extends PlotterPanel implements ActionListener {
 
         plotter.createSequence(attributeName, attributeName, null, true);
 
-        TimerTask timerTask = new TimerTask() {
+        Runnable timerTask = new Runnable() {
+                private boolean historySet = false;
+
                 public void run() {
-                    tab.workerAdd(new Runnable() {
-                            public void run() {
-                                try {
-                                    Number n =
-                                        (Number) xmbean.getSnapshotMBeanServerConnection().getAttribute(xmbean.getObjectName(), attributeName);
-                                    long v;
-                                    if (n instanceof Float || n instanceof Double) {
-                                        plotter.setDecimals(PLOTTER_DECIMALS);
-                                        double d = (n instanceof Float) ? (Float)n : (Double)n;
-                                        v = Math.round(d * Math.pow(10.0, PLOTTER_DECIMALS));
-                                    } else {
-                                        v = n.longValue();
-                                    }
-                                    plotter.addValues(System.currentTimeMillis(), v);
-                                } catch (Exception ex) {
-                                    // Should have a trace logged with proper
-                                    // trace mecchanism
-                                }
-                            }
-                        });
+                    if (!historySet) {
+                        plotter.setHistory(tab.getPlotHistory(),
+                                           "mbean." + xmbean.getObjectName() +
+                                           "." + attributeName);
+                        historySet = true;
+                    }
+                    try {
+                        Number n =
+                            (Number) xmbean.getSnapshotMBeanServerConnection().getAttribute(xmbean.getObjectName(), attributeName);
+                        long v;
+                        if (n instanceof Float || n instanceof Double) {
+                            plotter.setDecimals(PLOTTER_DECIMALS);
+                            double d = (n instanceof Float) ? (Float)n : (Double)n;
+                            v = Math.round(d * Math.pow(10.0, PLOTTER_DECIMALS));
+                        } else {
+                            v = n.longValue();
+                        }
+                        plotter.addValues(System.currentTimeMillis(), v);
+                    } catch (Exception ex) {
+                        // Should have a trace logged with proper
+                        // trace mecchanism
+                    }
                 }
             };
 
-        String timerName = "Timer-" + key;
-        Timer timer = new Timer(timerName, true);
-        timer.schedule(timerTask, 0, tab.getUpdateInterval());
+        UpdateScheduler.Ticker timer =
+            UpdateScheduler.getInstance().scheduleAtFixedRate(tab.getUpdateLane(),
+                                                              timerTask,
+                                                              tab.getUpdateInterval());
         timerCache.put(key, timer);
         return plotter;
     }
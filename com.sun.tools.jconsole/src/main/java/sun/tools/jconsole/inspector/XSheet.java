@@ -84,6 +84,10 @@ public class XSheet extends JPanel
     // Reference to MBeans tab
     private MBeansTab mbeansTab;
 
+    // Worker key of the jobs loading the selected node: selecting another
+    // node supersedes the load still pending or running for the previous one
+    private static final String DISPLAY_NODE_KEY = "XSheet.displayNode";
+
     public XSheet(MBeansTab mbeansTab) {
         this.mbeansTab = mbeansTab;
         setupScreen();
@@ -215,6 +219,10 @@ public class XSheet extends JPanel
             }
             @Override
             protected void done() {
+                if (isCancelled()) {
+                    // Superseded by the display of another node
+                    return;
+                }
                 try {
                     MBeanInfo mbi = get();
                     if (mbi != null) {
@@ -242,7 +250,7 @@ public class XSheet extends JPanel
                 }
             }
         };
-        sw.execute();
+        mbeansTab.workerAdd(DISPLAY_NODE_KEY, sw);
     }
 
     // Call on EDT
@@ -266,6 +274,10 @@ public class XSheet extends JPanel
                             }
                             @Override
                             protected void done() {
+                                if (isCancelled()) {
+                                    // Superseded by the display of another node
+                                    return;
+                                }
                                 try {
                                     MBeanAttributeInfo mbai = get();
                                     if (!isSelectedNode(node, currentNode)) {
@@ -318,7 +330,7 @@ public class XSheet extends JPanel
                                 }
                             }
                         };
-                sw.execute();
+                mbeansTab.workerAdd(DISPLAY_NODE_KEY, sw);
                 break;
             case OPERATION:
                 Object operData = uo.getData();
@@ -375,6 +387,10 @@ public class XSheet extends JPanel
             }
             @Override
             protected void done() {
+                if (isCancelled()) {
+                    // Superseded by the display of another node
+                    return;
+                }
                 try {
                     MBeanInfo mbi = get();
                     if (mbi != null && mbi.getAttributes() != null &&
@@ -413,7 +429,7 @@ public class XSheet extends JPanel
                 }
             }
         };
-        sw.execute();
+        mbeansTab.workerAdd(DISPLAY_NODE_KEY, sw);
     }
 
     // Call on EDT
@@ -431,6 +447,10 @@ public class XSheet extends JPanel
             }
             @Override
             protected void done() {
+                if (isCancelled()) {
+                    // Superseded by the display of another node
+                    return;
+                }
                 try {
                     MBeanInfo mbi = get();
                     if (mbi != null) {
@@ -463,7 +483,7 @@ public class XSheet extends JPanel
                 }
             }
         };
-        sw.execute();
+        mbeansTab.workerAdd(DISPLAY_NODE_KEY, sw);
     }
 
     // Call on EDT
@@ -25,18 +25,24 @@
 
 package sun.tools.jconsole.inspector;
 
+import java.awt.EventQueue;
+import java.awt.Rectangle;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 import javax.management.*;
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeExpansionListener;
 import javax.swing.tree.*;
 
 import sun.tools.jconsole.JConsole;
+import sun.tools.jconsole.MBeanInfoPrefetcher;
 import sun.tools.jconsole.MBeansTab;
 import sun.tools.jconsole.Resources;
 import sun.tools.jconsole.inspector.XNodeInfo;
@@ -64,6 +70,11 @@ public class XTree extends JTree {
     private MBeansTab mbeansTab;
     private Map<String, DefaultMutableTreeNode> nodes = new HashMap<String, DefaultMutableTreeNode>();
     private Map<String, DefaultMutableTreeNode> xmbeans = new HashMap<String, DefaultMutableTreeNode>();
+    // Metadata requests of the MBean nodes being expanded, updated on EDT
+    private final Map<Object, MBeanInfoPrefetcher.Request<Object[]>> pendingMetadata =
+        new HashMap<Object, MBeanInfoPrefetcher.Request<Object[]>>();
+    private MBeanInfoPrefetcher.Batch metadataBatch;
+    private ChangeListener viewportListener;
     
 	public synchronized Map<String, DefaultMutableTreeNode> getXmbeans() {
 		return new HashMap<String, DefaultMutableTreeNode>(xmbeans);
@@ -91,6 +102,9 @@ public class XTree extends JTree {
 			}
 			
 			public void keyPressed(KeyEvent e) {
+				if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+					cancelMetadataRequests();
+				}
 			}
 		});
         addTreeExpansionListener(new TreeExpansionListener() {
@@ -207,6 +221,7 @@ public class XTree extends JTree {
         DefaultMutableTreeNode root = (DefaultMutableTreeNode) model.getRoot();
         root.removeAllChildren();
         model.nodeStructureChanged(root);
+        cancelMetadataRequests();
         nodes.clear();
         xmbeans.clear();
     }
@@ -594,63 +609,142 @@ public class XTree extends JTree {
     }
 
     // Call on EDT
-    public void addMetadataNodes(DefaultMutableTreeNode node) {
-        XMBean mbean = (XMBean) ((XNodeInfo) node.getUserObject()).getData();
-        DefaultTreeModel model = (DefaultTreeModel) getModel();
-        MBeanInfoNodesSwingWorker sw =
-                new MBeanInfoNodesSwingWorker(model, node, mbean);
-        if (sw != null) {
-            sw.execute();
+    public void addMetadataNodes(final DefaultMutableTreeNode node) {
+        if (pendingMetadata.containsKey(node)) {
+            return;
         }
+        final XMBean mbean = (XMBean) ((XNodeInfo) node.getUserObject()).getData();
+        final DefaultTreeModel model = (DefaultTreeModel) getModel();
+        if (metadataBatch == null || metadataBatch.isCompleted() ||
+                metadataBatch.isCancelled()) {
+            metadataBatch = mbeansTab.newMetadataBatch();
+        }
+        MBeanInfoPrefetcher.Request<Object[]> request =
+            mbeansTab.getMBeanInfoPrefetcher().submit(
+                new Callable<Object[]>() {
+                    public Object[] call() throws Exception {
+                        Object result[] = new Object[2];
+                        // Retrieve MBeanInfo for this MBean
+                        result[0] = mbean.getMBeanInfo();
+                        // Check if this MBean is a notification emitter
+                        result[1] = mbean.isBroadcaster();
+                        return result;
+                    }
+                },
+                isNodeVisible(node), metadataBatch,
+                new MBeanInfoPrefetcher.Callback<Object[]>() {
+                    public void done(
+                            final MBeanInfoPrefetcher.Request<Object[]> r) {
+                        EventQueue.invokeLater(new Runnable() {
+                            public void run() {
+                                metadataDone(model, node, mbean, r);
+                            }
+                        });
+                    }
+                });
+        pendingMetadata.put(node, request);
     }
 
-    private static class MBeanInfoNodesSwingWorker
-            extends SwingWorker<Object[], Void> {
-
-        private final DefaultTreeModel model;
-        private final DefaultMutableTreeNode node;
-        private final XMBean mbean;
-
-        public MBeanInfoNodesSwingWorker(
-                DefaultTreeModel model,
-                DefaultMutableTreeNode node,
-                XMBean mbean) {
-            this.model = model;
-            this.node = node;
-            this.mbean = mbean;
+    // Call on EDT
+    private void metadataDone(DefaultTreeModel model,
+                              DefaultMutableTreeNode node, XMBean mbean,
+                              MBeanInfoPrefetcher.Request<Object[]> request) {
+        pendingMetadata.remove(node);
+        if (request.isCancelled()) {
+            // Collapse, so that expanding again fetches the metadata
+            collapsePath(new TreePath(node.getPath()));
+            return;
         }
+        try {
+            Object result[] = request.get();
+            MBeanInfo mbeanInfo = (MBeanInfo) result[0];
+            Boolean isBroadcaster = (Boolean) result[1];
+            if (mbeanInfo != null && node.getParent() != null &&
+                    !hasMetadataNodes(node)) {
+                addMBeanInfoNodes(model, node, mbean, mbeanInfo, isBroadcaster);
+            }
+        } catch (Exception e) {
+            Throwable t = Utils.getActualException(e);
+            if (JConsole.isDebug()) {
+                t.printStackTrace();
+            }
+        }
+    }
 
-        @Override
-        public Object[] doInBackground() throws InstanceNotFoundException,
-                IntrospectionException, ReflectionException, IOException {
-            Object result[] = new Object[2];
-            // Retrieve MBeanInfo for this MBean
-            result[0] = mbean.getMBeanInfo();
-            // Check if this MBean is a notification emitter
-            result[1] = mbean.isBroadcaster();
-            return result;
+    /**
+     * Cancels the metadata requests not sent yet.
+     */
+    // Call on EDT
+    public void cancelMetadataRequests() {
+        if (metadataBatch != null) {
+            metadataBatch.cancel();
         }
+    }
 
-        @Override
-        protected void done() {
-            try {
-                Object result[] = get();
-                MBeanInfo mbeanInfo = (MBeanInfo) result[0];
-                Boolean isBroadcaster = (Boolean) result[1];
-                if (mbeanInfo != null) {
-                    addMBeanInfoNodes(model, node, mbean, mbeanInfo, isBroadcaster);
-                }
-            } catch (Exception e) {
-                Throwable t = Utils.getActualException(e);
-                if (JConsole.isDebug()) {
-                    t.printStackTrace();
+    // Whether the row of a node is within the visible part of the tree
+    private boolean isNodeVisible(DefaultMutableTreeNode node) {
+        Rectangle bounds = getPathBounds(new TreePath(node.getPath()));
+        return bounds != null && getVisibleRect().intersects(bounds);
+    }
+
+    // Moves the pending requests of the rows scrolled into view ahead of
+    // the others
+    // Call on EDT
+    private void promoteVisibleRequests() {
+        if (pendingMetadata.isEmpty()) {
+            return;
+        }
+        Rectangle visible = getVisibleRect();
+        int first = getClosestRowForLocation(visible.x, visible.y);
+        int last = getClosestRowForLocation(visible.x,
+                                            visible.y + visible.height);
+        if (first < 0) {
+            return;
+        }
+        MBeanInfoPrefetcher prefetcher = mbeansTab.getMBeanInfoPrefetcher();
+        for (int row = first; row <= last; row++) {
+            TreePath path = getPathForRow(row);
+            if (path != null) {
+                MBeanInfoPrefetcher.Request<Object[]> r =
+                    pendingMetadata.get(path.getLastPathComponent());
+                if (r != null) {
+                    prefetcher.promote(r);
                 }
             }
         }
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (getParent() instanceof JViewport && viewportListener == null) {
+            viewportListener = new ChangeListener() {
+                public void stateChanged(ChangeEvent e) {
+                    promoteVisibleRequests();
+                }
+            };
+            ((JViewport) getParent()).addChangeListener(viewportListener);
+        }
+    }
+
+    // Call on EDT
+    private static void addMBeanInfoNodes(
+            DefaultTreeModel model, DefaultMutableTreeNode node,
+            XMBean mbean, MBeanInfo mbeanInfo, Boolean isBroadcaster) {
+        new MBeanInfoNodes(model).addMBeanInfoNodes(node, mbean, mbeanInfo,
+                                                    isBroadcaster);
+    }
+
+    private static class MBeanInfoNodes {
+
+        private final DefaultTreeModel model;
+
+        MBeanInfoNodes(DefaultTreeModel model) {
+            this.model = model;
+        }
 
         // Call on EDT
-        private void addMBeanInfoNodes(
-                DefaultTreeModel tree, DefaultMutableTreeNode node,
+        void addMBeanInfoNodes(DefaultMutableTreeNode node,
                 XMBean mbean, MBeanInfo mbeanInfo, Boolean isBroadcaster) {
             MBeanAttributeInfo[] ai = mbeanInfo.getAttributes();
             MBeanOperationInfo[] oi = mbeanInfo.getOperations();
@@ -136,6 +136,28 @@ public class JConsoleResources extends ListResourceBundle {
         {"Connection.mnemonic", 'C'},
         {"Connection name", "Connection name"},
         {"ConnectionName (disconnected)","{0} (disconnected)"},
+        {"ConnectionName (reconnecting)","{0} (reconnecting, attempt {1} of {2})"},
+        {"ConnectionTab.byMBean", "Round trips by MBean"},
+        {"ConnectionTab.byOperation", "Round trips by operation"},
+        {"ConnectionTab.cache", "Attribute cache: {0} hits, {1} misses, {2} shared misses, {3} evictions, {4} MBeans cached"},
+        {"ConnectionTab.column.avg", "Avg (ms)"},
+        {"ConnectionTab.column.calls", "Calls"},
+        {"ConnectionTab.column.errors", "Errors"},
+        {"ConnectionTab.column.max", "Max (ms)"},
+        {"ConnectionTab.column.p50", "50% (ms)"},
+        {"ConnectionTab.column.p90", "90% (ms)"},
+        {"ConnectionTab.column.p99", "99% (ms)"},
+        {"ConnectionTab.column.payload", "Avg payload (bytes)"},
+        {"ConnectionTab.column.total", "Total (ms)"},
+        {"ConnectionTab.resetButton", "Reset"},
+        {"ConnectionTab.resetButton.mnemonic", 'R'},
+        {"ConnectionTab.resetButton.toolTip", "Reset the round-trip statistics"},
+        {"ConnectionTab.saveButton", "Save as..."},
+        {"ConnectionTab.saveButton.mnemonic", 'S'},
+        {"ConnectionTab.saveButton.toolTip", "Save the round-trip statistics to a CSV file"},
+        {"ConnectionTab.scheduler", "Update scheduler: {0} threads, {1} queued tasks, tick lag {2} ms (max {3} ms), {4} missed ticks"},
+        {"ConnectionTab.summary", "{0} round trips taking {1} ms since {2}"},
+        {"ConnectionTab.tabName", "Connection"},
         {"Constructor","Constructor"},
         {"Current classes loaded", "Current classes loaded"},
         {"Current heap size","Current heap size"},
@@ -180,6 +202,8 @@ public class JConsoleResources extends ListResourceBundle {
         {"FileChooser.savedFile", "<html>Saved to file:<br>{0}<br>({1} bytes)"},
         {"FileChooser.saveFailed.message", "<html><center>Save to file failed:<br>{0}<br>{1}"},
         {"FileChooser.saveFailed.title", "Save Failed"},
+        {"FlameGraph.all", "all"},
+        {"FlameGraph.toolTip", "{0}: {1} samples ({2}%), {3} on top"},
         {"Free physical memory","Free physical memory"},
         {"Free swap space","Free swap space"},
         {"Garbage collector","Garbage collector"},
@@ -240,6 +264,7 @@ public class JConsoleResources extends ListResourceBundle {
         {"MBeansTab.clearNotificationsButton.toolTip", "Clear notifications"},
         {"MBeansTab.compositeNavigationMultiple", "Composite Navigation {0}/{1}"},
         {"MBeansTab.compositeNavigationSingle", "Composite Navigation"},
+        {"MBeansTab.metadataProgress", "Loading MBean info {0} of {1} (Esc to cancel)"},
         {"MBeansTab.refreshAttributesButton", "Refresh"},
         {"MBeansTab.refreshAttributesButton.mnemonic", 'R'},
         {"MBeansTab.refreshAttributesButton.toolTip", "Refresh attributes"},
@@ -317,9 +342,12 @@ public class JConsoleResources extends ListResourceBundle {
         {"Perform GC", "Perform GC"},
         {"Perform GC.mnemonic", 'G'},
         {"Perform GC.toolTip", "Request Garbage Collection"},
+        {"PlotExporter.message", "Saving chart data to {0}"},
         {"Plotter.accessibleName", "Chart"},
         {"Plotter.accessibleName.keyAndValue", "{0}={1}\n"},
         {"Plotter.accessibleName.noData", "No data plotted."},
+        {"Plotter.saveAllMenuItem", "Save data of all charts as..."},
+        {"Plotter.saveAllMenuItem.mnemonic", 'l'},
         {"Plotter.saveAsMenuItem", "Save data as..."},
         {"Plotter.saveAsMenuItem.mnemonic", 'a'},
         {"Plotter.timeRangeMenu", "Time Range"},
@@ -350,6 +378,22 @@ public class JConsoleResources extends ListResourceBundle {
         {"Source","Source"},
         {"Stack trace",
               "\nStack trace: \n"},
+        {"StackGroups.bySize", "By size"},
+        {"StackGroups.byState", "By state"},
+        {"StackGroups.group", "Group identical stacks"},
+        {"StackGroups.group.toolTip", "Show each distinct stack once, with the number and the names of its threads"},
+        {"StackGroups.header", "{0,choice,1#1 thread|1<{0,number,integer} threads} {1}"},
+        {"StackGroups.summary", "{0,number,integer} threads, {1,number,integer} distinct stacks"},
+        {"StackProfiler.export", "Export..."},
+        {"StackProfiler.export.toolTip", "Save the sampled stacks as collapsed stack text for flame graph tools"},
+        {"StackProfiler.fileType", "Collapsed stacks"},
+        {"StackProfiler.filter", "Thread name filter"},
+        {"StackProfiler.interval", "Interval (ms):"},
+        {"StackProfiler.reset", "Reset"},
+        {"StackProfiler.start", "Start"},
+        {"StackProfiler.status", "{0} thread dumps, {1} runnable stacks, {2} call paths"},
+        {"StackProfiler.stop", "Stop"},
+        {"StackProfiler.tabName", "Profiler"},
         {"Success:","Success:"},
         // Note: SummaryTab.headerDateTimeFormat can be one the following:
         // 1. A combination of two styles for date and time, using the
@@ -375,6 +419,21 @@ public class JConsoleResources extends ListResourceBundle {
         {"Time Range:.mnemonic", 'T'},
         {"Time", "Time"},
         {"TimeStamp","TimeStamp"},
+        {"TopThreads.allocationPlotter.accessibleName", "Chart for the allocation rates of the thread pools."},
+        {"TopThreads.allocationPlotter.title", "Allocation rate by thread pool (KB/s)"},
+        {"TopThreads.allocationTabName", "Allocation"},
+        {"TopThreads.column.allocated", "Allocated (MB)"},
+        {"TopThreads.column.allocationRate", "Allocation rate (KB/s)"},
+        {"TopThreads.column.cpu", "CPU %"},
+        {"TopThreads.column.cpuTime", "CPU time (s)"},
+        {"TopThreads.column.history", "CPU history"},
+        {"TopThreads.column.id", "ID"},
+        {"TopThreads.column.name", "Name"},
+        {"TopThreads.column.pool", "Pool"},
+        {"TopThreads.column.user", "User %"},
+        {"TopThreads.otherPools", "Other pools"},
+        {"TopThreads.table.accessibleName", "CPU usage of the threads"},
+        {"TopThreads.tabName", "Top"},
         {"Total Loaded", "Total Loaded"},
         {"Total classes loaded","Total classes loaded"},
         {"Total classes unloaded","Total classes unloaded"},
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2004, 2008, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package sun.tools.jconsole;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+//
+// Sample column test:
+//
+// Round trips of values through the bit codec of SampleColumn, checked
+// against a plain long[] through get, get over a range and find, with
+// and without dropped values.
+//
+public class SampleColumnTest extends TestCase {
+
+    private static final int N = SampleColumn.CHUNK_LENGTH;
+
+    private final Random random = new Random(20131018L);
+
+    public void testEmpty() {
+        SampleColumn.View v = new SampleColumn(N, true).view();
+        assertEquals(0, v.size());
+        assertEquals(0, v.find(42L));
+    }
+
+    public void testChunkBoundaries() {
+        int[] sizes = { 1, N - 1, N, N + 1, 2 * N, 3 * N + 7 };
+        for (int size : sizes) {
+            long[] values = ascending(size);
+            check(values, size, true);
+            check(values, size, false);
+        }
+    }
+
+    public void testRandomValues() {
+        for (int round = 0; round < 20; round++) {
+            long[] values = new long[5 * N + random.nextInt(N)];
+            long v = random.nextLong();
+            for (int i = 0; i < values.length; i++) {
+                switch (random.nextInt(6)) {
+                case 0:
+                    // Unchanged
+                    break;
+                case 1:
+                    v += random.nextInt(128) - 64;
+                    break;
+                case 2:
+                    v += random.nextInt(1 << 16) - (1 << 15);
+                    break;
+                case 3:
+                    v += random.nextInt();
+                    break;
+                default:
+                    v = random.nextLong();
+                    break;
+                }
+                values[i] = v;
+            }
+            check(values, values.length, true);
+            check(values, values.length, false);
+        }
+    }
+
+    public void testEdgeValues() {
+        long[] edges = {
+            Long.MIN_VALUE, Long.MAX_VALUE, 0L, -1L, 1L,
+            Long.MIN_VALUE + 1, Long.MAX_VALUE - 1,
+            Integer.MIN_VALUE, Integer.MAX_VALUE,
+            63L, 64L, -64L, -65L, 1L << 15, -(1L << 15) - 1,
+            1L << 31, -(1L << 31) - 1
+        };
+        long[] values = new long[4 * N];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = edges[random.nextInt(edges.length)];
+        }
+        check(values, values.length, true);
+        check(values, values.length, false);
+
+        // Alternating extremes, the largest differences
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (i % 2 == 0) ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        check(values, values.length, true);
+        check(values, values.length, false);
+    }
+
+    public void testGaps() {
+        // Values with Long.MIN_VALUE for the samples missing in between
+        long[] values = new long[4 * N + 3];
+        long v = 100L << 20;
+        for (int i = 0; i < values.length; i++) {
+            v += random.nextInt(1 << 20) - (1 << 19);
+            values[i] = (random.nextInt(10) == 0) ? Long.MIN_VALUE : v;
+        }
+        check(values, values.length, true);
+        check(values, values.length, false);
+    }
+
+    public void testLargeJumps() {
+        // Time stamps with a jitter and a few suspensions of the target
+        long[] values = ascending(6 * N);
+        for (int k = 0; k < 5; k++) {
+            int from = random.nextInt(values.length);
+            long jump = (k == 0) ? Integer.MAX_VALUE + 1L
+                                 : (long)random.nextInt(Integer.MAX_VALUE) << 8;
+            for (int i = from; i < values.length; i++) {
+                values[i] += jump;
+            }
+        }
+        check(values, values.length, true);
+        check(values, values.length, false);
+    }
+
+    public void testDroppedValues() {
+        // Capacities not aligned on chunks, so that the oldest sealed
+        // chunk is partly dropped
+        int[] capacities = { N, N + 1, 2 * N + 37, 3 * N - 1 };
+        for (int capacity : capacities) {
+            for (int extra = 1; extra <= 3 * N; extra += 17) {
+                long[] values = ascending(capacity + extra);
+                check(values, capacity, true);
+                check(values, capacity, false);
+            }
+        }
+    }
+
+    // Ascending time stamps, one per second with a jitter
+    private long[] ascending(int n) {
+        long[] values = new long[n];
+        long t = 1300000000000L;
+        for (int i = 0; i < n; i++) {
+            t += 1000 + random.nextInt(50) - 10;
+            values[i] = t;
+        }
+        return values;
+    }
+
+    // Adds the values to a column keeping capacity of them, and checks the
+    // ones kept, and find if the values are ascending
+    private void check(long[] values, int capacity, boolean timeStamps) {
+        SampleColumn column = new SampleColumn(capacity, timeStamps);
+        for (long value : values) {
+            column.add(value);
+        }
+        SampleColumn.View view = column.view();
+        int size = Math.min(values.length, capacity);
+        int first = values.length - size;
+        assertEquals(size, view.size());
+        assertEquals(first, view.first());
+
+        long[] expected = new long[size];
+        System.arraycopy(values, first, expected, 0, size);
+
+        for (int i = 0; i < size; i++) {
+            assertEquals("get(" + i + ")", expected[i], view.get(i));
+        }
+
+        long[] all = new long[size + 2];
+        view.get(0, size, all, 1);
+        for (int i = 0; i < size; i++) {
+            assertEquals("get(0, " + size + ")[" + i + "]",
+                         expected[i], all[i + 1]);
+        }
+        for (int k = 0; k < 50; k++) {
+            int from = random.nextInt(size + 1);
+            int to = from + random.nextInt(size - from + 1);
+            long[] range = new long[to - from];
+            view.get(from, to, range, 0);
+            for (int i = from; i < to; i++) {
+                assertEquals("get(" + from + ", " + to + ")[" + i + "]",
+                             expected[i], range[i - from]);
+            }
+        }
+
+        if (isAscending(values)) {
+            // Including the dropped values and values between samples
+            for (int i = 0; i < values.length; i++) {
+                checkFind(view, expected, values[i]);
+                checkFind(view, expected, values[i] - 1);
+                checkFind(view, expected, values[i] + 1);
+            }
+            checkFind(view, expected, Long.MIN_VALUE);
+            checkFind(view, expected, Long.MAX_VALUE);
+        }
+    }
+
+    private static void checkFind(SampleColumn.View view, long[] expected,
+                                  long value) {
+        int index = expected.length - 1;
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] >= value) {
+                index = i;
+                break;
+            }
+        }
+        assertEquals("find(" + value + ")", index, view.find(value));
+    }
+
+    private static boolean isAscending(long[] values) {
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] < values[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}